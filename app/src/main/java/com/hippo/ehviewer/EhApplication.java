@@ -52,6 +52,8 @@ import com.hippo.ehviewer.spider.SpiderDen;
 import com.hippo.ehviewer.ui.CommonOperations;
 import com.hippo.image.Image;
 import com.hippo.image.ImageBitmap;
+import com.hippo.network.HostLimiter;
+import com.hippo.network.HostTrafficStats;
 import com.hippo.network.StatusCodeException;
 import com.hippo.text.Html;
 import com.hippo.unifile.UniFile;
@@ -81,6 +83,7 @@ import javax.net.ssl.X509TrustManager;
 
 import okhttp3.Cache;
 import okhttp3.Call;
+import okhttp3.ConnectionPool;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -95,6 +98,9 @@ public class EhApplication extends RecordingApplication {
     private static final boolean DEBUG_PRINT_IMAGE_COUNT = false;
     private static final long DEBUG_PRINT_INTERVAL = 3000L;
 
+    private static final int IMAGE_MAX_IDLE_CONNECTIONS = 16;
+    private static final int IMAGE_MAX_REQUESTS_PER_HOST = 8;
+
     private static EhApplication instance;
 
     private final IntIdGenerator mIdGenerator = new IntIdGenerator();
@@ -104,11 +110,15 @@ public class EhApplication extends RecordingApplication {
     private EhClient mEhClient;
     private EhProxySelector mEhProxySelector;
     private OkHttpClient mOkHttpClient;
+    private OkHttpClient mImageOkHttpClient;
+    private HostLimiter mImageHostLimiter;
+    private HostTrafficStats mImageTrafficStats;
     private Cache mOkHttpCache;
     private ImageBitmapHelper mImageBitmapHelper;
     private Conaco<ImageBitmap> mConaco;
     private LruCache<Long, GalleryDetail> mGalleryDetailCache;
     private SimpleDiskCache mSpiderInfoCache;
+    private SimpleDiskCache mArchiveCache;
     private DownloadManager mDownloadManager;
     private Hosts mHosts;
     private FavouriteStatusRouter mFavouriteStatusRouter;
@@ -186,6 +196,50 @@ public class EhApplication extends RecordingApplication {
         return application.mOkHttpClient;
     }
 
+    /**
+     * Client for image transfers, kept apart from html and api calls.
+     * It has no call timeout and no http cache, images are stored by spider.
+     */
+    @NonNull
+    public static OkHttpClient getImageOkHttpClient(@NonNull Context context) {
+        EhApplication application = ((EhApplication) context.getApplicationContext());
+        if (application.mImageOkHttpClient == null) {
+            application.mImageOkHttpClient = getOkHttpClient(application).newBuilder()
+                    .callTimeout(0, TimeUnit.SECONDS)
+                    .cache(null)
+                    .connectionPool(new ConnectionPool(IMAGE_MAX_IDLE_CONNECTIONS, 5, TimeUnit.MINUTES))
+                    .eventListenerFactory(getImageTrafficStats(application))
+                    .build();
+        }
+        return application.mImageOkHttpClient;
+    }
+
+    /**
+     * Caps the image requests to a host of all spiders,
+     * calls of {@link #getImageOkHttpClient(Context)} are synchronous.
+     */
+    @NonNull
+    public static HostLimiter getImageHostLimiter(@NonNull Context context) {
+        EhApplication application = ((EhApplication) context.getApplicationContext());
+        if (application.mImageHostLimiter == null) {
+            application.mImageHostLimiter = new HostLimiter(IMAGE_MAX_REQUESTS_PER_HOST);
+        }
+        return application.mImageHostLimiter;
+    }
+
+    /**
+     * Traffic of {@link #getImageOkHttpClient(Context)} per host,
+     * html and api calls are not counted.
+     */
+    @NonNull
+    public static HostTrafficStats getImageTrafficStats(@NonNull Context context) {
+        EhApplication application = ((EhApplication) context.getApplicationContext());
+        if (application.mImageTrafficStats == null) {
+            application.mImageTrafficStats = new HostTrafficStats();
+        }
+        return application.mImageTrafficStats;
+    }
+
     @NonNull
     public static Cache getOkHttpCache(@NonNull Context context) {
         EhApplication application = ((EhApplication) context.getApplicationContext());
@@ -252,6 +306,16 @@ public class EhApplication extends RecordingApplication {
         return application.mSpiderInfoCache;
     }
 
+    @NonNull
+    public static SimpleDiskCache getArchiveCache(@NonNull Context context) {
+        EhApplication application = ((EhApplication) context.getApplicationContext());
+        if (null == application.mArchiveCache) {
+            application.mArchiveCache = new SimpleDiskCache(
+                    new File(context.getCacheDir(), "archive"), 200 * 1024 * 1024); // 200M
+        }
+        return application.mArchiveCache;
+    }
+
     @NonNull
     public static DownloadManager getDownloadManager() {
         return getDownloadManager(instance);
@@ -36,7 +36,10 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Hosts {
 
@@ -48,6 +51,9 @@ public class Hosts {
     private static final int DB_VERSION = VERSION_1;
 
     private final SQLiteDatabase db;
+    // Copy of the table, null for not loaded. Never modified, replaced on put and delete
+    @Nullable
+    private volatile Map<String, List<InetAddress>> snapshot;
 
     public Hosts(Context context, String name) {
         SQLiteOpenHelper helper = new MSQLiteBuilder()
@@ -278,18 +284,41 @@ public class Hosts {
         if (!isValidHost(host)) {
             return null;
         }
-        try (Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_HOSTS + " WHERE " + COLUMN_HOST + " = ?;", new String[]{host})) {
-            if (cursor.moveToNext()) {
-                String[] ips = SqlUtils.getString(cursor, COLUMN_IP, null).split("\\+");
-                List<InetAddress> addresses = new ArrayList<>();
-                for (String ip : ips) {
-                    addresses.add(toInetAddress(host, ip));
+        return getSnapshot().get(host);
+    }
+
+    private Map<String, List<InetAddress>> getSnapshot() {
+        Map<String, List<InetAddress>> map = snapshot;
+        if (map == null) {
+            synchronized (this) {
+                map = snapshot;
+                if (map == null) {
+                    map = loadSnapshot();
+                    snapshot = map;
                 }
-                return addresses;
-            } else {
-                return null;
             }
         }
+        return map;
+    }
+
+    private Map<String, List<InetAddress>> loadSnapshot() {
+        Map<String, List<InetAddress>> map = new HashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_HOSTS + ";", null)) {
+            while (cursor.moveToNext()) {
+                String host = SqlUtils.getString(cursor, COLUMN_HOST, null);
+                String ip = SqlUtils.getString(cursor, COLUMN_IP, null);
+                if (host == null || ip == null) {
+                    continue;
+                }
+                String[] ips = ip.split("\\+");
+                List<InetAddress> addresses = new ArrayList<>(ips.length);
+                for (String i : ips) {
+                    addresses.add(toInetAddress(host, i));
+                }
+                map.put(host, Collections.unmodifiableList(addresses));
+            }
+        }
+        return map;
     }
 
     private boolean contains(String host) {
@@ -310,10 +339,13 @@ public class Hosts {
         values.put(COLUMN_HOST, host);
         values.put(COLUMN_IP, ip);
 
-        if (contains(host)) {
-            db.update(TABLE_HOSTS, values, COLUMN_HOST + " = ?", new String[]{host});
-        } else {
-            db.insert(TABLE_HOSTS, null, values);
+        synchronized (this) {
+            if (contains(host)) {
+                db.update(TABLE_HOSTS, values, COLUMN_HOST + " = ?", new String[]{host});
+            } else {
+                db.insert(TABLE_HOSTS, null, values);
+            }
+            snapshot = null;
         }
 
         return true;
@@ -323,7 +355,10 @@ public class Hosts {
      * Puts delete the entry with the host.
      */
     public void delete(String host) {
-        db.delete(TABLE_HOSTS, COLUMN_HOST + " = ?", new String[]{host});
+        synchronized (this) {
+            db.delete(TABLE_HOSTS, COLUMN_HOST + " = ?", new String[]{host});
+            snapshot = null;
+        }
     }
 
     /**
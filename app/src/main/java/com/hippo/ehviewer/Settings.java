@@ -158,6 +158,8 @@ public class Settings {
     private static final boolean DEFAULT_VOLUME_PAGE = false;
     private static final String KEY_READING_FULLSCREEN = "reading_fullscreen";
     private static final boolean VALUE_READING_FULLSCREEN = true;
+    private static final String KEY_HARDWARE_BITMAP = "hardware_bitmap";
+    private static final boolean DEFAULT_HARDWARE_BITMAP = true;
     private static final String KEY_CUSTOM_SCREEN_LIGHTNESS = "custom_screen_lightness";
     private static final boolean DEFAULT_CUSTOM_SCREEN_LIGHTNESS = false;
     private static final String KEY_SCREEN_LIGHTNESS = "screen_lightness";
@@ -171,8 +173,17 @@ public class Settings {
     private static final String DEFAULT_DOWNLOAD_LABEL = null;
     private static final String KEY_MULTI_THREAD_DOWNLOAD = "download_thread";
     private static final int DEFAULT_MULTI_THREAD_DOWNLOAD = 3;
+    private static final String KEY_CONCURRENT_DOWNLOAD = "concurrent_download";
+    private static final int DEFAULT_CONCURRENT_DOWNLOAD = 1;
+    private static final String KEY_DOWNLOAD_MAX_CONNECTIONS = "download_max_connections";
+    private static final int DEFAULT_DOWNLOAD_MAX_CONNECTIONS = 10;
+    private static final String KEY_DOWNLOAD_SPEED_LIMIT = "download_speed_limit";
+    private static final int DEFAULT_DOWNLOAD_SPEED_LIMIT = 0;
     private static final String KEY_PRELOAD_IMAGE = "preload_image";
     private static final int DEFAULT_PRELOAD_IMAGE = 5;
+    public static final int DECODE_THREAD_AUTO = 0;
+    private static final String KEY_DECODE_THREAD = "decode_thread";
+    private static final int DEFAULT_DECODE_THREAD = DECODE_THREAD_AUTO;
     private static final String KEY_DOWNLOAD_ORIGIN_IMAGE = "download_origin_image";
     private static final boolean DEFAULT_DOWNLOAD_ORIGIN_IMAGE = false;
     private static final String KEY_READ_THEME = "read_theme";
@@ -691,6 +702,14 @@ public class Settings {
         putBoolean(KEY_READING_FULLSCREEN, value);
     }
 
+    public static boolean getHardwareBitmap() {
+        return getBoolean(KEY_HARDWARE_BITMAP, DEFAULT_HARDWARE_BITMAP);
+    }
+
+    public static void putHardwareBitmap(boolean value) {
+        putBoolean(KEY_HARDWARE_BITMAP, value);
+    }
+
     public static boolean getCustomScreenLightness() {
         return getBoolean(KEY_CUSTOM_SCREEN_LIGHTNESS, DEFAULT_CUSTOM_SCREEN_LIGHTNESS);
     }
@@ -800,6 +819,36 @@ public class Settings {
         putIntToStr(KEY_MULTI_THREAD_DOWNLOAD, value);
     }
 
+    public static int getConcurrentDownload() {
+        return getIntFromStr(KEY_CONCURRENT_DOWNLOAD, DEFAULT_CONCURRENT_DOWNLOAD);
+    }
+
+    public static void putConcurrentDownload(int value) {
+        putIntToStr(KEY_CONCURRENT_DOWNLOAD, value);
+    }
+
+    /**
+     * Image connections of all downloading galleries
+     */
+    public static int getDownloadMaxConnections() {
+        return getIntFromStr(KEY_DOWNLOAD_MAX_CONNECTIONS, DEFAULT_DOWNLOAD_MAX_CONNECTIONS);
+    }
+
+    public static void putDownloadMaxConnections(int value) {
+        putIntToStr(KEY_DOWNLOAD_MAX_CONNECTIONS, value);
+    }
+
+    /**
+     * @return KB/s of all downloading galleries, 0 for no limit
+     */
+    public static int getDownloadSpeedLimit() {
+        return getIntFromStr(KEY_DOWNLOAD_SPEED_LIMIT, DEFAULT_DOWNLOAD_SPEED_LIMIT);
+    }
+
+    public static void putDownloadSpeedLimit(int value) {
+        putIntToStr(KEY_DOWNLOAD_SPEED_LIMIT, value);
+    }
+
     public static int getDownloadDelay() {
         return getIntFromStr(KEY_DOWNLOAD_DELAY, DEFAULT_DOWNLOAD_DELAY);
     }
@@ -816,6 +865,17 @@ public class Settings {
         putIntToStr(KEY_PRELOAD_IMAGE, value);
     }
 
+    /**
+     * @return {@link #DECODE_THREAD_AUTO} for one thread per core
+     */
+    public static int getDecodeThread() {
+        return getIntFromStr(KEY_DECODE_THREAD, DEFAULT_DECODE_THREAD);
+    }
+
+    public static void putDecodeThread(int value) {
+        putIntToStr(KEY_DECODE_THREAD, value);
+    }
+
     public static String getImageResolution() {
         return getString(KEY_IMAGE_RESOLUTION, DEFAULT_IMAGE_RESOLUTION);
     }
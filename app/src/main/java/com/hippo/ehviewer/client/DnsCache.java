@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.hippo.util.IoThreadPoolExecutor;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Dns;
+
+/**
+ * Caches answers of a slow {@link Dns}, failures included.
+ * <p>
+ * An answer close to expiring is still returned, while a fresh one is
+ * looked up in background, so only the first lookup of a host waits.
+ */
+class DnsCache implements Dns {
+
+    private final Dns mDns;
+    private final long mTtl;
+    private final long mNegativeTtl;
+    private final ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttl         milliseconds to keep an answer
+     * @param negativeTtl milliseconds to keep a failure
+     */
+    DnsCache(@NonNull Dns dns, long ttl, long negativeTtl) {
+        mDns = dns;
+        mTtl = ttl;
+        mNegativeTtl = negativeTtl;
+    }
+
+    @NonNull
+    @Override
+    public List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+        long now = SystemClock.elapsedRealtime();
+        Entry entry = mEntries.get(hostname);
+        if (entry != null && now < entry.expireTime) {
+            if (entry.addresses == null) {
+                throw new UnknownHostException(hostname);
+            }
+            // Refresh in the last quarter of ttl
+            if (now > entry.expireTime - mTtl / 4 && entry.refreshing.compareAndSet(false, true)) {
+                IoThreadPoolExecutor.getInstance().execute(() -> {
+                    try {
+                        fetch(hostname);
+                    } catch (UnknownHostException e) {
+                        // Keep the old answer until it expires
+                    }
+                });
+            }
+            return entry.addresses;
+        }
+        return fetch(hostname);
+    }
+
+    private List<InetAddress> fetch(String hostname) throws UnknownHostException {
+        List<InetAddress> addresses;
+        try {
+            addresses = mDns.lookup(hostname);
+        } catch (UnknownHostException e) {
+            Entry old = mEntries.get(hostname);
+            if (old == null || old.addresses == null || SystemClock.elapsedRealtime() >= old.expireTime) {
+                mEntries.put(hostname, new Entry(null, SystemClock.elapsedRealtime() + mNegativeTtl));
+            }
+            throw e;
+        }
+        if (addresses.isEmpty()) {
+            return addresses;
+        }
+        addresses = Collections.unmodifiableList(addresses);
+        mEntries.put(hostname, new Entry(addresses, SystemClock.elapsedRealtime() + mTtl));
+        return addresses;
+    }
+
+    private static class Entry {
+
+        // null for failure
+        final List<InetAddress> addresses;
+        final long expireTime;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(List<InetAddress> addresses, long expireTime) {
+            this.addresses = addresses;
+            this.expireTime = expireTime;
+        }
+    }
+}
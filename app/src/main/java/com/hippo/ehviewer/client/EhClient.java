@@ -26,6 +26,8 @@ import com.hippo.util.IoThreadPoolExecutor;
 import com.hippo.yorozuya.SimpleHandler;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -83,11 +85,21 @@ public class EhClient {
         void onCancel();
     }
 
-    public class Task extends AsyncTask<Object, Void, Object> {
+    /**
+     * Also gets parts of the result before it is complete.
+     */
+    public interface ProgressCallback<E, P> extends Callback<E> {
+
+        void onProgress(P progress);
+    }
+
+    public class Task extends AsyncTask<Object, Object, Object> {
 
         private final int mMethod;
         private final AtomicReference<Call> mCall = new AtomicReference<>();
         private final AtomicBoolean mStop = new AtomicBoolean();
+        // Calls sent side by side, all of them are cancelled on stop
+        private final List<Call> mParallelCalls = new ArrayList<>();
         private Callback mCallback;
         private EhConfig mEhConfig;
 
@@ -107,10 +119,36 @@ public class EhClient {
             }
         }
 
+        // Called in any thread working for the task
+        public void addParallelCall(Call call) throws CancelledException {
+            synchronized (mParallelCalls) {
+                if (mStop.get()) {
+                    throw new CancelledException();
+                }
+                mParallelCalls.add(call);
+            }
+        }
+
+        public boolean isStopped() {
+            return mStop.get();
+        }
+
         public EhConfig getEhConfig() {
             return mEhConfig;
         }
 
+        // Called in Job thread
+        public boolean needProgress() {
+            return mCallback instanceof ProgressCallback;
+        }
+
+        // Called in Job thread
+        public void publish(Object progress) {
+            if (!mStop.get()) {
+                publishProgress(progress);
+            }
+        }
+
         public void stop() {
             if (!mStop.get()) {
                 mStop.lazySet(true);
@@ -130,6 +168,12 @@ public class EhClient {
                         call.cancel();
                     }
                 }
+                synchronized (mParallelCalls) {
+                    for (Call call : mParallelCalls) {
+                        call.cancel();
+                    }
+                    mParallelCalls.clear();
+                }
 
                 // Clear
                 mCallback = null;
@@ -187,6 +231,17 @@ public class EhClient {
             }
         }
 
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void onProgressUpdate(Object... values) {
+            if (mCallback instanceof ProgressCallback) {
+                ProgressCallback callback = (ProgressCallback) mCallback;
+                for (Object value : values) {
+                    callback.onProgress(value);
+                }
+            }
+        }
+
         @SuppressWarnings("unchecked")
         @Override
         protected void onPostExecute(Object result) {
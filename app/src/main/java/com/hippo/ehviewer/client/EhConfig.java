@@ -102,6 +102,7 @@ public class EhConfig implements Cloneable {
     public static final int NON_H = 0x100;
     public static final int WESTERN = 0x200;
     public static final int ALL_CATEGORY = 0x3ff;
+    public static final int UNKNOWN = 0x400;
     public static final int NAMESPACES_RECLASS = 0x1;
     public static final int NAMESPACES_LANGUAGE = 0x2;
     public static final int NAMESPACES_PARODY = 0x4;
@@ -748,6 +749,53 @@ public class EhConfig implements Cloneable {
 
     private boolean mDirty = true;
 
+    private static final int[] CATEGORY_VALUES = {
+            MISC,
+            DOUJINSHI,
+            MANGA,
+            ARTIST_CG,
+            GAME_CG,
+            IMAGE_SET,
+            COSPLAY,
+            ASIAN_PORN,
+            NON_H,
+            WESTERN,
+            UNKNOWN};
+
+    private static final String[][] CATEGORY_STRINGS = {
+            new String[]{"misc"},
+            new String[]{"doujinshi"},
+            new String[]{"manga"},
+            new String[]{"artistcg", "Artist CG Sets", "Artist CG"},
+            new String[]{"gamecg", "Game CG Sets", "Game CG"},
+            new String[]{"imageset", "Image Sets", "Image Set"},
+            new String[]{"cosplay"},
+            new String[]{"asianporn", "Asian Porn"},
+            new String[]{"non-h"},
+            new String[]{"western"},
+            new String[]{"unknown"}
+    };
+
+    public static int getCategory(String type) {
+        int i;
+        for (i = 0; i < CATEGORY_STRINGS.length - 1; i++) {
+            for (String str : CATEGORY_STRINGS[i])
+                if (str.equalsIgnoreCase(type))
+                    return CATEGORY_VALUES[i];
+        }
+
+        return CATEGORY_VALUES[i];
+    }
+
+    public static String getCategory(int type) {
+        int i;
+        for (i = 0; i < CATEGORY_VALUES.length - 1; i++) {
+            if (CATEGORY_VALUES[i] == type)
+                break;
+        }
+        return CATEGORY_STRINGS[i][0];
+    }
+
     @Override
     public EhConfig clone() {
         try {
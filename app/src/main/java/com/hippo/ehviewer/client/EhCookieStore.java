@@ -44,6 +44,9 @@ public class EhCookieStore extends CookieRepository {
                     .expiresAt(Long.MAX_VALUE)
                     .build();
 
+    // The last cookies from super and the result made from them
+    private volatile TipsCookies mLastTipsCookies;
+
     public EhCookieStore(Context context) {
         super(context, "okhttp3-cookie.db");
     }
@@ -94,6 +97,12 @@ public class EhCookieStore extends CookieRepository {
         boolean checkTips = domainMatch(url, EhUrl.DOMAIN_E);
 
         if (checkTips) {
+            // Cookies from super are cached, reuse the result for the same ones
+            TipsCookies last = mLastTipsCookies;
+            if (last != null && last.source == cookies) {
+                return last.result;
+            }
+
             List<Cookie> result = new ArrayList<>(cookies.size() + 1);
             // Add all but skip some
             for (Cookie cookie : cookies) {
@@ -108,9 +117,22 @@ public class EhCookieStore extends CookieRepository {
             }
             // Add some
             result.add(sTipsCookie);
-            return Collections.unmodifiableList(result);
+            List<Cookie> unmodifiableResult = Collections.unmodifiableList(result);
+            mLastTipsCookies = new TipsCookies(cookies, unmodifiableResult);
+            return unmodifiableResult;
         } else {
             return cookies;
         }
     }
+
+    private static class TipsCookies {
+
+        final List<Cookie> source;
+        final List<Cookie> result;
+
+        TipsCookies(List<Cookie> source, List<Cookie> result) {
+            this.source = source;
+            this.result = result;
+        }
+    }
 }
@@ -42,6 +42,10 @@ import okhttp3.dnsoverhttps.DnsOverHttps;
 
 public class EhDns implements Dns {
 
+    // DnsOverHttps doesn't expose record ttl, keep answers for a few minutes
+    private static final long DOH_CACHE_TTL = 10 * 60 * 1000;
+    private static final long DOH_CACHE_NEGATIVE_TTL = 30 * 1000;
+
     private static final Map<String, List<InetAddress>> builtInHosts;
 
     static {
@@ -67,7 +71,7 @@ public class EhDns implements Dns {
     }
 
     private final Hosts hosts;
-    private static DnsOverHttps dnsOverHttps;
+    private static Dns dnsOverHttps;
 
     public EhDns(Context context) {
         hosts = EhApplication.getHosts(context);
@@ -87,7 +91,7 @@ public class EhDns implements Dns {
         } catch (UnknownHostException e) {
             e.printStackTrace();
         }
-        dnsOverHttps = builder.post(true).build();
+        dnsOverHttps = new DnsCache(builder.post(true).build(), DOH_CACHE_TTL, DOH_CACHE_NEGATIVE_TTL);
     }
 
     private static void put(Map<String, List<InetAddress>> map, String host, String... ips) {
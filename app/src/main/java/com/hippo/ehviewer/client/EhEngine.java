@@ -16,6 +16,7 @@
 
 package com.hippo.ehviewer.client;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
@@ -40,6 +41,7 @@ import com.hippo.ehviewer.client.parser.ForumsParser;
 import com.hippo.ehviewer.client.parser.GalleryApiParser;
 import com.hippo.ehviewer.client.parser.GalleryDetailParser;
 import com.hippo.ehviewer.client.parser.GalleryListParser;
+import com.hippo.ehviewer.client.parser.GalleryListStreamParser;
 import com.hippo.ehviewer.client.parser.GalleryNotAvailableParser;
 import com.hippo.ehviewer.client.parser.GalleryPageApiParser;
 import com.hippo.ehviewer.client.parser.GalleryPageParser;
@@ -53,6 +55,7 @@ import com.hippo.ehviewer.client.parser.VoteTagParser;
 import com.hippo.network.StatusCodeException;
 import com.hippo.util.ExceptionUtils;
 import com.hippo.yorozuya.AssertUtils;
+import com.hippo.yorozuya.thread.PriorityThreadFactory;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -62,7 +65,12 @@ import org.jsoup.select.Elements;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -75,6 +83,7 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 public class EhEngine {
 
@@ -86,6 +95,14 @@ public class EhEngine {
     private static final String KOKOMADE_URL = "https://exhentai.org/img/kokomade.jpg";
     private static final MediaType MEDIA_TYPE_JPEG = MediaType.parse("image/jpeg");
 
+    // We can only request 25 items one time at most
+    private static final int MAX_API_REQUEST_SIZE = 25;
+    private static final int MAX_API_REQUEST_CONCURRENCY = 4;
+    // Callers wait for the batches on the io pool, the batches mustn't queue behind them there
+    private static final ThreadPoolExecutor sApiRequestExecutor = newApiRequestExecutor();
+
+    private static final GalleryApiCache sGalleryApiCache = new GalleryApiCache();
+
     private static final Pattern PATTERN_NEED_HATH_CLIENT = Pattern.compile("(You must have a H@H client assigned to your account to use this feature\\.)");
 
     public static EhFilter sEhFilter;
@@ -94,6 +111,14 @@ public class EhEngine {
         sEhFilter = EhFilter.getInstance();
     }
 
+    private static ThreadPoolExecutor newApiRequestExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_API_REQUEST_CONCURRENCY, MAX_API_REQUEST_CONCURRENCY,
+                10L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new PriorityThreadFactory("ApiRequest", android.os.Process.THREAD_PRIORITY_BACKGROUND));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private static void doThrowException(Call call, int code, @Nullable Headers headers,
                                          @Nullable String body, Throwable e) throws Throwable {
         if (call.isCanceled()) {
@@ -251,6 +276,27 @@ public class EhEngine {
         }
     }
 
+    /**
+     * Publishes the galleries which the filters can't drop later while the page is still read.
+     */
+    @Nullable
+    private static GalleryListStreamParser.Listener newGalleryListListener(@Nullable EhClient.Task task) {
+        if (null == task || !task.needProgress()) {
+            return null;
+        }
+        boolean fixThumbUrl = Settings.getFixThumbUrl();
+        return info -> {
+            if (sEhFilter.filterBeforeApi(info)) {
+                // The page is still filled on this thread
+                GalleryInfo copy = info.copy();
+                if (fixThumbUrl) {
+                    copy.thumb = EhUrl.getFixedPreviewThumbUrl(copy.thumb);
+                }
+                task.publish(copy);
+            }
+        };
+    }
+
     public static GalleryListParser.Result getGalleryList(@Nullable EhClient.Task task, OkHttpClient okHttpClient,
                                                           String url) throws Throwable {
         String referer = EhUrl.getReferer();
@@ -271,10 +317,15 @@ public class EhEngine {
             Response response = call.execute();
             code = response.code();
             headers = response.headers();
-            body = response.body().string();
-            result = GalleryListParser.parse(body);
+            // Parse while reading, the body is only kept for errors
+            try (ResponseBody responseBody = response.body()) {
+                result = GalleryListStreamParser.parse(responseBody.charStream(), newGalleryListListener(task));
+            }
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
+            if (e instanceof ParseException) {
+                body = ((ParseException) e).getBody();
+            }
             throwException(call, code, headers, body, e);
             throw e;
         }
@@ -287,21 +338,82 @@ public class EhEngine {
     // At least, GalleryInfo contain valid gid and token
     public static List<GalleryInfo> fillGalleryListByApi(@Nullable EhClient.Task task, OkHttpClient okHttpClient,
                                                          List<GalleryInfo> galleryInfoList, String referer) throws Throwable {
-        // We can only request 25 items one time at most
-        final int MAX_REQUEST_SIZE = 25;
-        List<GalleryInfo> requestItems = new ArrayList<>(MAX_REQUEST_SIZE);
-        for (int i = 0, size = galleryInfoList.size(); i < size; i++) {
-            requestItems.add(galleryInfoList.get(i));
-            if (requestItems.size() == MAX_REQUEST_SIZE || i == size - 1) {
-                doFillGalleryListByApi(task, okHttpClient, requestItems, referer);
-                requestItems.clear();
+        long startTime = SystemClock.elapsedRealtime();
+
+        // Skip cached items
+        List<GalleryInfo> uncachedItems = new ArrayList<>(galleryInfoList.size());
+        for (GalleryInfo gi : galleryInfoList) {
+            if (!sGalleryApiCache.fill(gi)) {
+                uncachedItems.add(gi);
             }
         }
+
+        // Split into batches
+        List<List<GalleryInfo>> batches = new ArrayList<>();
+        for (int i = 0, size = uncachedItems.size(); i < size; i += MAX_API_REQUEST_SIZE) {
+            batches.add(uncachedItems.subList(i, Math.min(i + MAX_API_REQUEST_SIZE, size)));
+        }
+
+        if (batches.size() == 1) {
+            doFillGalleryListByApi(task, okHttpClient, batches.get(0), referer, null);
+        } else if (batches.size() > 1) {
+            // Send batches concurrently, but not too many at once
+            List<Call> calls = new ArrayList<>(batches.size());
+            LinkedList<Future<Throwable>> futures = new LinkedList<>();
+            try {
+                for (List<GalleryInfo> batch : batches) {
+                    if (futures.size() >= MAX_API_REQUEST_CONCURRENCY) {
+                        waitForApiRequest(futures.removeFirst());
+                    }
+                    if (task != null && task.isStopped()) {
+                        throw new CancelledException();
+                    }
+                    futures.add(sApiRequestExecutor.submit(() -> {
+                        try {
+                            doFillGalleryListByApi(task, okHttpClient, batch, referer, calls);
+                            return null;
+                        } catch (Throwable e) {
+                            return e;
+                        }
+                    }));
+                }
+                while (!futures.isEmpty()) {
+                    waitForApiRequest(futures.removeFirst());
+                }
+            } catch (Throwable e) {
+                // Stop other batches
+                for (Future<Throwable> future : futures) {
+                    future.cancel(false);
+                }
+                synchronized (calls) {
+                    for (Call call : calls) {
+                        call.cancel();
+                    }
+                }
+                throw e;
+            }
+        }
+
+        Log.d(TAG, "Fill " + galleryInfoList.size() + " galleries by api, " +
+                (galleryInfoList.size() - uncachedItems.size()) + " cached, " +
+                batches.size() + " requests, " + (SystemClock.elapsedRealtime() - startTime) + "ms");
         return galleryInfoList;
     }
 
+    private static void waitForApiRequest(Future<Throwable> future) throws Throwable {
+        Throwable e = future.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * @param calls collects the call to cancel it later, null for not collecting.
+     *              The call runs beside others then, so it is not set as the call of the task.
+     */
     private static void doFillGalleryListByApi(@Nullable EhClient.Task task, OkHttpClient okHttpClient,
-                                               List<GalleryInfo> galleryInfoList, String referer) throws Throwable {
+                                               List<GalleryInfo> galleryInfoList, String referer,
+                                               @Nullable List<Call> calls) throws Throwable {
         JSONObject json = new JSONObject();
         json.put("method", "gdata");
         JSONArray ja = new JSONArray();
@@ -323,7 +435,15 @@ public class EhEngine {
         Call call = okHttpClient.newCall(request);
 
         // Put call
-        if (null != task) {
+        if (null != calls) {
+            if (null != task) {
+                // Stopping the task cancels every batch
+                task.addParallelCall(call);
+            }
+            synchronized (calls) {
+                calls.add(call);
+            }
+        } else if (null != task) {
             task.setCall(call);
         }
 
@@ -335,7 +455,9 @@ public class EhEngine {
             code = response.code();
             headers = response.headers();
             body = response.body().string();
-            GalleryApiParser.parse(body, galleryInfoList);
+            for (GalleryInfo gi : GalleryApiParser.parse(body, galleryInfoList)) {
+                sGalleryApiCache.put(gi);
+            }
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
             throwException(call, code, headers, body, e);
@@ -969,10 +1091,15 @@ public class EhEngine {
 
             code = response.code();
             headers = response.headers();
-            body = response.body().string();
-            result = GalleryListParser.parse(body);
+            // Parse while reading, the body is only kept for errors
+            try (ResponseBody responseBody = response.body()) {
+                result = GalleryListStreamParser.parse(responseBody.charStream(), newGalleryListListener(task));
+            }
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
+            if (e instanceof ParseException) {
+                body = ((ParseException) e).getBody();
+            }
             throwException(call, code, headers, body, e);
             throw e;
         }
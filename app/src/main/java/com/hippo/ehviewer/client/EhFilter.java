@@ -37,6 +37,8 @@ public final class EhFilter {
     private final List<Filter> mUploaderFilterList = new ArrayList<>();
     private final List<Filter> mTagFilterList = new ArrayList<>();
     private final List<Filter> mTagNamespaceFilterList = new ArrayList<>();
+    // Compiled from enabled filters, replaced on any change
+    private volatile FilterMatcher mMatcher = FilterMatcher.EMPTY;
 
     private EhFilter() {
         List<Filter> list = EhDB.getAllFilter();
@@ -63,6 +65,7 @@ public final class EhFilter {
                     break;
             }
         }
+        updateMatcher();
     }
 
     public static EhFilter getInstance() {
@@ -113,11 +116,13 @@ public final class EhFilter {
                 Log.d(TAG, "Unknown mode: " + filter.mode);
                 break;
         }
+        updateMatcher();
         return true;
     }
 
     public synchronized void triggerFilter(Filter filter) {
         EhDB.triggerFilter(filter);
+        updateMatcher();
     }
 
     public synchronized void deleteFilter(Filter filter) {
@@ -140,136 +145,80 @@ public final class EhFilter {
                 Log.d(TAG, "Unknown mode: " + filter.mode);
                 break;
         }
+        updateMatcher();
     }
 
-    public synchronized boolean needTags() {
-        return 0 != mTagFilterList.size() || 0 != mTagNamespaceFilterList.size();
-    }
-
-    public synchronized boolean filterTitle(GalleryInfo info) {
-        if (null == info) {
-            return false;
-        }
-
-        // Title
-        String title = info.title;
-        List<Filter> filters = mTitleFilterList;
-        if (null != title && filters.size() > 0) {
-            for (int i = 0, n = filters.size(); i < n; i++) {
-                if (filters.get(i).enable && title.toLowerCase().contains(filters.get(i).text)) {
-                    return false;
-                }
+    private static List<String> getEnabledTexts(List<Filter> filters) {
+        List<String> texts = new ArrayList<>(filters.size());
+        for (int i = 0, n = filters.size(); i < n; i++) {
+            Filter filter = filters.get(i);
+            if (filter.enable && null != filter.text) {
+                texts.add(filter.text);
             }
         }
-
-        return true;
+        return texts;
     }
 
-    public synchronized boolean filterUploader(GalleryInfo info) {
-        if (null == info) {
-            return false;
-        }
-
-        // Uploader
-        String uploader = info.uploader;
-        List<Filter> filters = mUploaderFilterList;
-        if (null != uploader && filters.size() > 0) {
-            for (int i = 0, n = filters.size(); i < n; i++) {
-                if (filters.get(i).enable && uploader.equals(filters.get(i).text)) {
-                    return false;
-                }
-            }
-        }
+    private synchronized void updateMatcher() {
+        mMatcher = new FilterMatcher(getEnabledTexts(mTitleFilterList), getEnabledTexts(mUploaderFilterList),
+                getEnabledTexts(mTagFilterList), getEnabledTexts(mTagNamespaceFilterList));
+    }
 
-        return true;
+    public boolean needTags() {
+        return mMatcher.hasTagFilters();
     }
 
-    private boolean matchTag(String tag, String filter) {
-        if (null == tag || null == filter) {
+    /**
+     * Whether the gallery info is kept whatever the api fills in later.
+     * Unknown uploader or tags keep it only if no filter looks at them.
+     */
+    public boolean filterBeforeApi(GalleryInfo info) {
+        if (!filterTitle(info) || !filterUploader(info)) {
             return false;
         }
-
-        String tagNamespace;
-        String tagName;
-        String filterNamespace;
-        String filterName;
-        int index = tag.indexOf(':');
-        if (index < 0) {
-            tagNamespace = null;
-            tagName = tag;
-        } else {
-            tagNamespace = tag.substring(0, index);
-            tagName = tag.substring(index + 1);
+        FilterMatcher matcher = mMatcher;
+        if (info.uploader == null && matcher.hasUploaderFilters()) {
+            return false;
         }
-        index = filter.indexOf(':');
-        if (index < 0) {
-            filterNamespace = null;
-            filterName = filter;
-        } else {
-            filterNamespace = filter.substring(0, index);
-            filterName = filter.substring(index + 1);
+        if (info.simpleTags == null) {
+            return !matcher.hasTagFilters();
         }
+        return filterTag(info) && filterTagNamespace(info);
+    }
 
-        if (null != tagNamespace && null != filterNamespace &&
-                !tagNamespace.equals(filterNamespace)) {
+    public boolean filterTitle(GalleryInfo info) {
+        if (null == info) {
             return false;
         }
-        return tagName.equals(filterName);
+
+        // Title
+        String title = info.title;
+        return null == title || !mMatcher.matchTitle(title.toLowerCase());
     }
 
-    public synchronized boolean filterTag(GalleryInfo info) {
+    public boolean filterUploader(GalleryInfo info) {
         if (null == info) {
             return false;
         }
 
-        // Tag
-        String[] tags = info.simpleTags;
-        List<Filter> filters = mTagFilterList;
-        if (null != tags && filters.size() > 0) {
-            for (String tag : tags) {
-                for (int i = 0, n = filters.size(); i < n; i++) {
-                    if (filters.get(i).enable && matchTag(tag, filters.get(i).text)) {
-                        return false;
-                    }
-                }
-            }
-        }
-
-        return true;
+        // Uploader
+        return !mMatcher.matchUploader(info.uploader);
     }
 
-    private boolean matchTagNamespace(String tag, String filter) {
-        if (null == tag || null == filter) {
+    public boolean filterTag(GalleryInfo info) {
+        if (null == info) {
             return false;
         }
 
-        String tagNamespace;
-        int index = tag.indexOf(':');
-        if (index >= 0) {
-            tagNamespace = tag.substring(0, index);
-            return tagNamespace.equals(filter);
-        } else {
-            return false;
-        }
+        // Tag
+        return !mMatcher.matchTags(info.simpleTags);
     }
 
-    public synchronized boolean filterTagNamespace(GalleryInfo info) {
+    public boolean filterTagNamespace(GalleryInfo info) {
         if (null == info) {
             return false;
         }
 
-        String[] tags = info.simpleTags;
-        List<Filter> filters = mTagNamespaceFilterList;
-        if (null != tags && filters.size() > 0) {
-            for (String tag : tags) {
-                for (int i = 0, n = filters.size(); i < n; i++) {
-                    if (filters.get(i).enable && matchTagNamespace(tag, filters.get(i).text)) {
-                        return false;
-                    }
-                }
-            }
-        }
-
-        return true;
+        return !mMatcher.matchTagNamespaces(info.simpleTags);
     }
 }
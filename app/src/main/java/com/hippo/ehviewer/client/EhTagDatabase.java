@@ -16,50 +16,26 @@
 
 package com.hippo.ehviewer.client;
 
-import android.content.Context;
-import android.util.Base64;
-
 import androidx.annotation.Nullable;
 import androidx.core.util.Pair;
 
-import com.hippo.ehviewer.AppConfig;
-import com.hippo.ehviewer.EhApplication;
-import com.hippo.ehviewer.R;
-import com.hippo.util.ExceptionUtils;
-import com.hippo.util.IoThreadPoolExecutor;
-import com.hippo.yorozuya.FileUtils;
-import com.hippo.yorozuya.IOUtils;
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
-import okhttp3.Call;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
 import okio.BufferedSource;
-import okio.Okio;
 
+/**
+ * Tag translations in memory. {@link EhTagDatabaseManager} downloads and loads them.
+ */
 public class EhTagDatabase {
 
     private static final Map<String, String> NAMESPACE_TO_PREFIX = new HashMap<>();
-    private static volatile EhTagDatabase instance;
-    // TODO more lock for different language
-    private static final Lock lock = new ReentrantLock();
-    private static final OkHttpClient client = new OkHttpClient.Builder().build();
+    private static final int MAX_SUGGESTIONS = 20;
 
     static {
         NAMESPACE_TO_PREFIX.put("artist", "a:");
@@ -74,362 +50,176 @@ public class EhTagDatabase {
     }
 
     private final String name;
+    private final int count;
+    // "tag\rtranslation\n" of all entries, sorted by tag
     private final byte[] tags;
+    // Offset of the tag, the translation and the end of each entry in tags
+    private final int[] tagStarts;
+    private final int[] hintStarts;
+    private final int[] entryEnds;
+    // "tag\rtranslation\n" of all entries without spaces, for substring search
+    private final String searchText;
+    // Offset of the tag, the tag without namespace and the translation of each entry in searchText
+    private final int[] searchTagStarts;
+    private final int[] searchBodyStarts;
+    private final int[] searchHintStarts;
 
     public EhTagDatabase(String name, BufferedSource source) throws IOException {
         this.name = name;
-        String[] tmp;
-        StringBuilder buffer = new StringBuilder();
         source.readInt();
-        for (String i : source.readUtf8().split("\n")) {
-            tmp = i.split("\r", 2);
-            buffer.append(tmp[0]);
-            buffer.append("\r");
+        String[] lines = source.readUtf8().split("\n");
+
+        int count = 0;
+        tagStarts = new int[lines.length];
+        hintStarts = new int[lines.length];
+        entryEnds = new int[lines.length];
+        searchTagStarts = new int[lines.length];
+        searchBodyStarts = new int[lines.length];
+        searchHintStarts = new int[lines.length];
+        ByteArrayOutputStream tagsBuffer = new ByteArrayOutputStream();
+        StringBuilder searchBuffer = new StringBuilder();
+        for (String line : lines) {
+            String[] tmp = line.split("\r", 2);
+            if (tmp.length != 2) {
+                continue;
+            }
+            String tag = tmp[0];
+            String hint;
             try {
-                buffer.append(new String(Base64.decode(tmp[1], Base64.DEFAULT), StandardCharsets.UTF_8));
+                hint = new String(Base64.getMimeDecoder().decode(tmp[1]), StandardCharsets.UTF_8);
             } catch (Exception e) {
-                buffer.append(tmp[1]);
+                hint = tmp[1];
             }
-            buffer.append("\n");
-        }
-        byte[] b = buffer.toString().getBytes(StandardCharsets.UTF_8);
-        int totalBytes = b.length;
-        tags = new byte[totalBytes];
-        System.arraycopy(b, 0, tags, 0, totalBytes);
-    }
 
-    @Nullable
-    public static EhTagDatabase getInstance(Context context) {
-        if (isPossible(context)) {
-            return instance;
-        } else {
-            instance = null;
-            return null;
-        }
-    }
+            byte[] tagBytes = tag.getBytes(StandardCharsets.UTF_8);
+            byte[] hintBytes = hint.getBytes(StandardCharsets.UTF_8);
+            tagStarts[count] = tagsBuffer.size();
+            tagsBuffer.write(tagBytes, 0, tagBytes.length);
+            tagsBuffer.write('\r');
+            hintStarts[count] = tagsBuffer.size();
+            tagsBuffer.write(hintBytes, 0, hintBytes.length);
+            entryEnds[count] = tagsBuffer.size();
+            tagsBuffer.write('\n');
 
-    @Nullable
-    public static String namespaceToPrefix(String namespace) {
-        return NAMESPACE_TO_PREFIX.get(namespace);
-    }
+            String searchTag = removeSpace(tag);
+            int index = searchTag.indexOf(':');
+            searchTagStarts[count] = searchBuffer.length();
+            searchBodyStarts[count] = index == -1 || index >= searchTag.length() - 1 ?
+                    searchTagStarts[count] : searchTagStarts[count] + index + 1;
+            searchBuffer.append(searchTag).append('\r');
+            searchHintStarts[count] = searchBuffer.length();
+            searchBuffer.append(removeSpace(hint)).append('\n');
 
-    private static String[] getMetadata(Context context) {
-        String[] metadata = context.getResources().getStringArray(R.array.tag_translation_metadata);
-        if (metadata.length == 4) {
-            return metadata;
-        } else {
-            return null;
+            count++;
         }
+
+        tags = tagsBuffer.toByteArray();
+        searchText = searchBuffer.toString();
+        this.count = count;
     }
 
-    public static boolean isPossible(Context context) {
-        return getMetadata(context) != null;
+    public String getName() {
+        return name;
     }
 
     @Nullable
-    private static byte[] getFileContent(File file, int length) {
-        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
-            byte[] content = new byte[length];
-            source.readFully(content);
-            return content;
-        } catch (IOException e) {
-            return null;
-        }
+    public static String namespaceToPrefix(String namespace) {
+        return NAMESPACE_TO_PREFIX.get(namespace);
     }
 
     @Nullable
-    private static byte[] getFileSha1(File file) {
-        try (InputStream is = new FileInputStream(file)) {
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            int n;
-            byte[] buffer = new byte[4 * 1024];
-            while ((n = is.read(buffer)) != -1) {
-                digest.update(buffer, 0, n);
+    public String getTranslation(String tag) {
+        byte[] key = tag.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = compareTag(mid, key);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return getHint(mid);
             }
-            return digest.digest();
-        } catch (IOException | NoSuchAlgorithmException e) {
-            return null;
         }
+        return null;
     }
 
-    private static boolean equals(byte[] b1, byte[] b2) {
-        if (b1 == null && b2 == null) {
-            return true;
-        }
-        if (b1 == null || b2 == null) {
-            return false;
-        }
-
-        if (b1.length != b2.length) {
-            return false;
-        }
-
-        for (int i = 0; i < b1.length; i++) {
-            if (b1[i] != b2[i]) {
-                return false;
+    /**
+     * Compares the tag of the entry with the key as unsigned bytes.
+     */
+    private int compareTag(int entry, byte[] key) {
+        int start = tagStarts[entry];
+        int length = hintStarts[entry] - 1 - start;
+        for (int i = 0, n = Math.min(length, key.length); i < n; i++) {
+            int compare = (tags[start + i] & 0xff) - (key[i] & 0xff);
+            if (compare != 0) {
+                return compare;
             }
         }
-
-        return true;
+        return length - key.length;
     }
 
-    private static boolean checkData(File sha1File, File dataFile) {
-        byte[] s1 = getFileContent(sha1File, 20);
-        if (s1 == null) {
-            return false;
-        }
-
-        byte[] s2 = getFileSha1(dataFile);
-        if (s2 == null) {
-            return false;
-        }
+    private String getTag(int entry) {
+        int start = tagStarts[entry];
+        return new String(tags, start, hintStarts[entry] - 1 - start, StandardCharsets.UTF_8);
+    }
 
-        return equals(s1, s2);
+    private String getHint(int entry) {
+        int start = hintStarts[entry];
+        return new String(tags, start, entryEnds[entry] - start, StandardCharsets.UTF_8);
     }
 
-    private static boolean save(String url, File file) {
-        Request request = new Request.Builder().url(url).build();
-        Call call = client.newCall(request);
-        try (Response response = call.execute()) {
-            if (!response.isSuccessful()) {
-                return false;
+    /**
+     * Finds tags whose tag or translation contains the keyword, spaces ignored.
+     * Short keywords are not matched against namespaces.
+     */
+    public ArrayList<Pair<String, String>> suggest(String keyword) {
+        ArrayList<Pair<String, String>> searchHints = new ArrayList<>();
+        String key = removeSpace(keyword);
+        boolean matchNamespace = keyword.length() > 2;
+        int from = 0;
+        while (from < searchText.length() && searchHints.size() <= MAX_SUGGESTIONS) {
+            int position = searchText.indexOf(key, from);
+            if (position == -1) {
+                break;
             }
-            ResponseBody body = response.body();
-            if (body == null) {
-                return false;
+            int entry = findSearchEntry(position);
+            if (position < searchHintStarts[entry] && !matchNamespace &&
+                    position < searchBodyStarts[entry]) {
+                // Only namespace matches, the rest might match
+                from = position + 1;
+                continue;
             }
 
-            try (InputStream is = body.byteStream(); OutputStream os = new FileOutputStream(file)) {
-                IOUtils.copy(is, os);
+            Pair<String, String> pair = new Pair<>(getHint(entry), getTag(entry));
+            if (!searchHints.contains(pair)) {
+                searchHints.add(pair);
             }
-
-            return true;
-        } catch (Throwable t) {
-            t.printStackTrace();
-            ExceptionUtils.throwIfFatal(t);
-            return false;
+            from = entry + 1 < count ? searchTagStarts[entry + 1] : searchText.length();
         }
+        return searchHints;
     }
 
-    public static void update(Context context) {
-        String[] urls = getMetadata(context);
-        if (urls == null || urls.length != 4) {
-            // Clear tags if it's not possible
-            instance = null;
-            return;
-        }
-
-        String sha1Name = urls[0];
-        String sha1Url = urls[1];
-        String dataName = urls[2];
-        String dataUrl = urls[3];
-
-        // Clear tags if name if different
-        EhTagDatabase tmp = instance;
-        if (tmp != null && !tmp.name.equals(dataName)) {
-            instance = null;
-        }
-
-        IoThreadPoolExecutor.getInstance().execute(() -> {
-            if (!lock.tryLock()) {
-                return;
-            }
-
-            try {
-                File dir = AppConfig.getFilesDir("tag-translations");
-                if (dir == null) {
-                    return;
-                }
-
-                // Check current sha1 and current data
-                File sha1File = new File(dir, sha1Name);
-                File dataFile = new File(dir, dataName);
-                if (!checkData(sha1File, dataFile)) {
-                    FileUtils.delete(sha1File);
-                    FileUtils.delete(dataFile);
-                }
-
-                // Read current EhTagDatabase
-                if (instance == null && dataFile.exists()) {
-                    try (BufferedSource source = Okio.buffer(Okio.source(dataFile))) {
-                        instance = new EhTagDatabase(dataName, source);
-                    } catch (IOException e) {
-                        FileUtils.delete(sha1File);
-                        FileUtils.delete(dataFile);
-                    }
-                }
-
-                OkHttpClient client = EhApplication.getOkHttpClient(context);
-
-                // Save new sha1
-                File tempSha1File = new File(dir, sha1Name + ".tmp");
-                if (!save(sha1Url, tempSha1File)) {
-                    FileUtils.delete(tempSha1File);
-                    return;
-                }
-
-                // Check new sha1 and current data
-                if (checkData(tempSha1File, dataFile)) {
-                    // The data is the same
-                    FileUtils.delete(tempSha1File);
-                    return;
-                }
-
-                // Save new data
-                File tempDataFile = new File(dir, dataName + ".tmp");
-                if (!save(dataUrl, tempDataFile)) {
-                    FileUtils.delete(tempDataFile);
-                    return;
-                }
-
-                // Check new sha1 and new data
-                if (!checkData(tempSha1File, tempDataFile)) {
-                    FileUtils.delete(tempSha1File);
-                    FileUtils.delete(tempDataFile);
-                    return;
-                }
-
-                // Replace current sha1 and current data with new sha1 and new data
-                FileUtils.delete(sha1File);
-                FileUtils.delete(dataFile);
-                tempSha1File.renameTo(sha1File);
-                tempDataFile.renameTo(dataFile);
-
-                // Read new EhTagDatabase
-                try (BufferedSource source = Okio.buffer(Okio.source(dataFile))) {
-                    instance = new EhTagDatabase(dataName, source);
-                } catch (IOException e) {
-                    // Ignore
-                }
-            } finally {
-                lock.unlock();
-            }
-        });
-    }
-
-    public String getTranslation(String tag) {
-        return search(tags, tag.getBytes(StandardCharsets.UTF_8));
-    }
-
-    @Nullable
-    private String search(byte[] tags, byte[] tag) {
+    /**
+     * @return the entry which the position of searchText belongs to
+     */
+    private int findSearchEntry(int position) {
         int low = 0;
-        int high = tags.length;
+        int high = count - 1;
         while (low < high) {
-            int start = (low + high) / 2;
-            // Look for the starting '\n'
-            while (start > -1 && tags[start] != '\n') {
-                start--;
-            }
-            start++;
-
-            // Look for the middle '\r'.
-            int middle = 1;
-            while (tags[start + middle] != '\r') {
-                middle++;
-            }
-
-            // Look for the ending '\n'
-            int end = middle + 1;
-            while (tags[start + end] != '\n') {
-                end++;
-            }
-
-            int compare;
-            int tagIndex = 0;
-            int curIndex = start;
-
-            for (; ; ) {
-                int tagByte = tag[tagIndex] & 0xff;
-                int curByte = tags[curIndex] & 0xff;
-                compare = tagByte - curByte;
-                if (compare != 0) {
-                    break;
-                }
-
-                tagIndex++;
-                curIndex++;
-                if (tagIndex == tag.length && curIndex == start + middle) {
-                    break;
-                }
-                if (tagIndex == tag.length) {
-                    compare = -1;
-                    break;
-                }
-                if (curIndex == start + middle) {
-                    compare = 1;
-                    break;
-                }
-            }
-
-            if (compare < 0) {
-                high = start - 1;
-            } else if (compare > 0) {
-                low = start + end + 1;
-            } else {
-                return new String(tags, start + middle + 1, end - middle - 1, StandardCharsets.UTF_8);
-            }
-        }
-        return null;
-    }
-
-    public ArrayList<Pair<String, String>> suggest(String keyword) {
-        return searchTag(tags, keyword);
-    }
-
-    private ArrayList<Pair<String, String>> searchTag(byte[] tags, String keyword) {
-        ArrayList<Pair<String, String>> searchHints = new ArrayList<>();
-        int begin = 0;
-        while (begin < tags.length - 1) {
-            int start = begin;
-            // Look for the starting '\n'
-            while (tags[start] != '\n') {
-                start++;
-            }
-
-            // Look for the middle '\r'.
-            int middle = 1;
-            while (tags[start + middle] != '\r') {
-                middle++;
-            }
-
-            // Look for the ending '\n'
-            int end = middle + 1;
-            while (tags[start + end] != '\n') {
-                end++;
-            }
-
-            begin = start + end;
-
-            byte[] hintBytes = new byte[end - middle - 1];
-            System.arraycopy(tags, start + middle + 1, hintBytes, 0, end - middle - 1);
-            String hint = new String(hintBytes, StandardCharsets.UTF_8);
-            byte[] tagBytes = new byte[middle];
-            System.arraycopy(tags, start + 1, tagBytes, 0, middle);
-            String tag = new String(tagBytes, StandardCharsets.UTF_8);
-            int index = tag.indexOf(':');
-            boolean keywordMatches;
-            if (index == -1 || index >= tag.length() - 1 || keyword.length() > 2) {
-                keywordMatches = containsIgnoreSpace(tag, keyword);
+            int mid = (low + high + 1) >>> 1;
+            if (searchTagStarts[mid] <= position) {
+                low = mid;
             } else {
-                keywordMatches = containsIgnoreSpace(tag.substring(index + 1), keyword);
+                high = mid - 1;
             }
-
-            if (keywordMatches || containsIgnoreSpace(hint, keyword)) {
-                Pair<String, String> pair = new Pair<>(hint, tag);
-                if (!searchHints.contains(pair)) {
-                    searchHints.add(pair);
-                }
-            }
-            if (searchHints.size() > 20) {
-                break;
-            }
-
         }
-        return searchHints;
+        return low;
     }
 
-    private boolean containsIgnoreSpace(String text, String key) {
-        return text.replace(" ", "").contains(key.replace(" ", ""));
+    private static String removeSpace(String text) {
+        return text.indexOf(' ') == -1 ? text : text.replace(" ", "");
     }
 }
@@ -31,7 +31,7 @@ import java.util.regex.Pattern;
 public class EhUtils {
 
     public static final int NONE = -1; // Use it for homepage
-    public static final int UNKNOWN = 0x400;
+    public static final int UNKNOWN = EhConfig.UNKNOWN;
 
     public static final int ALL_CATEGORY = EhUtils.UNKNOWN - 1;
     //DOUJINSHI|MANGA|ARTIST_CG|GAME_CG|WESTERN|NON_H|IMAGE_SET|COSPLAY|ASIAN_PORN|MISC;
@@ -56,53 +56,6 @@ public class EhUtils {
             "(?:\\s+ch.[\\s\\d-]+)?(?:(?:\\([^\\)]*\\))|(?:\\[[^\\]]*\\])|(?:\\{[^\\}]*\\})|(?:~[^~]*~)|\\s+)*$",
             Pattern.CASE_INSENSITIVE);
 
-    private static final int[] CATEGORY_VALUES = {
-            EhConfig.MISC,
-            EhConfig.DOUJINSHI,
-            EhConfig.MANGA,
-            EhConfig.ARTIST_CG,
-            EhConfig.GAME_CG,
-            EhConfig.IMAGE_SET,
-            EhConfig.COSPLAY,
-            EhConfig.ASIAN_PORN,
-            EhConfig.NON_H,
-            EhConfig.WESTERN,
-            UNKNOWN};
-
-    private static final String[][] CATEGORY_STRINGS = {
-            new String[]{"misc"},
-            new String[]{"doujinshi"},
-            new String[]{"manga"},
-            new String[]{"artistcg", "Artist CG Sets", "Artist CG"},
-            new String[]{"gamecg", "Game CG Sets", "Game CG"},
-            new String[]{"imageset", "Image Sets", "Image Set"},
-            new String[]{"cosplay"},
-            new String[]{"asianporn", "Asian Porn"},
-            new String[]{"non-h"},
-            new String[]{"western"},
-            new String[]{"unknown"}
-    };
-
-    public static int getCategory(String type) {
-        int i;
-        for (i = 0; i < CATEGORY_STRINGS.length - 1; i++) {
-            for (String str : CATEGORY_STRINGS[i])
-                if (str.equalsIgnoreCase(type))
-                    return CATEGORY_VALUES[i];
-        }
-
-        return CATEGORY_VALUES[i];
-    }
-
-    public static String getCategory(int type) {
-        int i;
-        for (i = 0; i < CATEGORY_VALUES.length - 1; i++) {
-            if (CATEGORY_VALUES[i] == type)
-                break;
-        }
-        return CATEGORY_STRINGS[i][0];
-    }
-
     public static int getCategoryColor(int category) {
         switch (category) {
             case EhConfig.DOUJINSHI:
@@ -169,31 +122,4 @@ public class EhUtils {
             return title;
         }
     }
-
-    public static String handleThumbUrlResolution(String url) {
-        if (null == url) {
-            return null;
-        }
-
-        String resolution;
-        switch (Settings.getThumbResolution()) {
-            default:
-            case 0: // Auto
-                return url;
-            case 1: // 250
-                resolution = "250";
-                break;
-            case 2: // 300
-                resolution = "300";
-                break;
-        }
-
-        int index1 = url.lastIndexOf('_');
-        int index2 = url.lastIndexOf('.');
-        if (index1 >= 0 && index2 >= 0 && index1 < index2) {
-            return url.substring(0, index1 + 1) + resolution + url.substring(index2);
-        } else {
-            return url;
-        }
-    }
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable matcher of enabled filters, safe to share between threads.
+ * <p>
+ * Title filters are matched by an Aho-Corasick automaton in one pass over
+ * the title. Uploader and tag filters are looked up in hash sets.
+ */
+final class FilterMatcher {
+
+    static final FilterMatcher EMPTY = new FilterMatcher(
+            new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+    // Title automaton, node 0 is root
+    // Children of each node, sorted by char
+    private final char[][] mChildChars;
+    private final int[][] mChildNodes;
+    private final int[] mFailures;
+    // Whether a pattern ends at the node or at one of its failures
+    private final boolean[] mOutputs;
+    // Empty title filter matches all
+    private final boolean mMatchAllTitles;
+
+    private final Set<String> mUploaders;
+
+    // "namespace:name" of tag filters with namespace
+    private final Set<String> mTagsWithNamespace;
+    // Names of tag filters without namespace, match any namespace
+    private final Set<String> mTagNamesWithoutNamespace;
+    // Names of all tag filters, for tags without namespace
+    private final Set<String> mTagNames;
+
+    private final String[] mNamespaces;
+
+    /**
+     * @param titles     lowercase title filters
+     * @param uploaders  uploader filters
+     * @param tags       lowercase tag filters
+     * @param namespaces lowercase tag namespace filters
+     */
+    FilterMatcher(@NonNull Collection<String> titles, @NonNull Collection<String> uploaders,
+                  @NonNull Collection<String> tags, @NonNull Collection<String> namespaces) {
+        // Build title trie
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Boolean> outputs = new ArrayList<>();
+        children.add(new TreeMap<>());
+        outputs.add(false);
+        boolean matchAllTitles = false;
+        for (String title : titles) {
+            if (title.isEmpty()) {
+                matchAllTitles = true;
+                continue;
+            }
+            int node = 0;
+            for (int i = 0, n = title.length(); i < n; i++) {
+                char c = title.charAt(i);
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    outputs.add(false);
+                    children.get(node).put(c, next);
+                }
+                node = next;
+            }
+            outputs.set(node, true);
+        }
+        mMatchAllTitles = matchAllTitles;
+
+        int size = children.size();
+        mChildChars = new char[size][];
+        mChildNodes = new int[size][];
+        mOutputs = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            TreeMap<Character, Integer> map = children.get(i);
+            char[] chars = new char[map.size()];
+            int[] nodes = new int[map.size()];
+            int j = 0;
+            for (Map.Entry<Character, Integer> entry : map.entrySet()) {
+                chars[j] = entry.getKey();
+                nodes[j] = entry.getValue();
+                j++;
+            }
+            mChildChars[i] = chars;
+            mChildNodes[i] = nodes;
+            mOutputs[i] = outputs.get(i);
+        }
+
+        // Build failure links in breadth-first order
+        mFailures = new int[size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : mChildNodes[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            char[] chars = mChildChars[node];
+            int[] nodes = mChildNodes[node];
+            for (int i = 0; i < chars.length; i++) {
+                int child = nodes[i];
+                int failure = mFailures[node];
+                int next;
+                while ((next = getChild(failure, chars[i])) == -1 && failure != 0) {
+                    failure = mFailures[failure];
+                }
+                mFailures[child] = next == -1 ? 0 : next;
+                mOutputs[child] |= mOutputs[mFailures[child]];
+                queue.add(child);
+            }
+        }
+
+        mUploaders = new HashSet<>(uploaders);
+
+        mTagsWithNamespace = new HashSet<>();
+        mTagNamesWithoutNamespace = new HashSet<>();
+        mTagNames = new HashSet<>();
+        for (String tag : tags) {
+            int index = tag.indexOf(':');
+            if (index < 0) {
+                mTagNamesWithoutNamespace.add(tag);
+                mTagNames.add(tag);
+            } else {
+                mTagsWithNamespace.add(tag);
+                mTagNames.add(tag.substring(index + 1));
+            }
+        }
+
+        mNamespaces = new HashSet<>(namespaces).toArray(new String[0]);
+    }
+
+    private int getChild(int node, char c) {
+        int index = Arrays.binarySearch(mChildChars[node], c);
+        return index < 0 ? -1 : mChildNodes[node][index];
+    }
+
+    boolean hasUploaderFilters() {
+        return !mUploaders.isEmpty();
+    }
+
+    boolean hasTagFilters() {
+        return !mTagNames.isEmpty() || mNamespaces.length != 0;
+    }
+
+    /**
+     * @param title lowercase title
+     */
+    boolean matchTitle(@Nullable String title) {
+        if (title == null) {
+            return false;
+        }
+        if (mMatchAllTitles) {
+            return true;
+        }
+
+        int node = 0;
+        for (int i = 0, n = title.length(); i < n; i++) {
+            char c = title.charAt(i);
+            int next;
+            while ((next = getChild(node, c)) == -1 && node != 0) {
+                node = mFailures[node];
+            }
+            node = next == -1 ? 0 : next;
+            if (mOutputs[node]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean matchUploader(@Nullable String uploader) {
+        return uploader != null && mUploaders.contains(uploader);
+    }
+
+    /**
+     * A tag filter with namespace matches tags of the namespace or without namespace.
+     * A tag filter without namespace matches tags of any namespace.
+     */
+    boolean matchTags(@Nullable String[] tags) {
+        if (tags == null || mTagNames.isEmpty()) {
+            return false;
+        }
+
+        for (String tag : tags) {
+            if (tag == null) {
+                continue;
+            }
+            int index = tag.indexOf(':');
+            if (index < 0) {
+                if (mTagNames.contains(tag)) {
+                    return true;
+                }
+            } else {
+                if (mTagsWithNamespace.contains(tag)) {
+                    return true;
+                }
+                if (!mTagNamesWithoutNamespace.isEmpty() &&
+                        mTagNamesWithoutNamespace.contains(tag.substring(index + 1))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    boolean matchTagNamespaces(@Nullable String[] tags) {
+        if (tags == null || mNamespaces.length == 0) {
+            return false;
+        }
+
+        for (String tag : tags) {
+            if (tag == null) {
+                continue;
+            }
+            int index = tag.indexOf(':');
+            if (index < 0) {
+                continue;
+            }
+            for (String namespace : mNamespaces) {
+                if (namespace.length() == index && tag.startsWith(namespace)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.collection.LruCache;
+
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.yorozuya.ObjectUtils;
+
+/**
+ * Memory cache of gdata api results, keyed by gid and checked by token.
+ * Entries expire soon, rating and tags might change.
+ */
+class GalleryApiCache {
+
+    private static final int MAX_SIZE = 1000;
+    private static final long EXPIRE_TIME = 10 * 60 * 1000; // 10 minutes
+
+    private final LruCache<Long, Entry> mCache = new LruCache<>(MAX_SIZE);
+
+    /**
+     * Fill the gallery info with the cached result.
+     *
+     * @return false if not cached or expired
+     */
+    boolean fill(@NonNull GalleryInfo gi) {
+        Entry entry = mCache.get(gi.gid);
+        if (entry == null) {
+            return false;
+        }
+        if (!ObjectUtils.equal(entry.token, gi.token) ||
+                SystemClock.elapsedRealtime() - entry.time > EXPIRE_TIME) {
+            mCache.remove(gi.gid);
+            return false;
+        }
+
+        GalleryInfo info = entry.info;
+        gi.title = info.title;
+        gi.titleJpn = info.titleJpn;
+        gi.category = info.category;
+        gi.thumb = info.thumb;
+        gi.uploader = info.uploader;
+        gi.posted = info.posted;
+        gi.rating = info.rating;
+        gi.simpleTags = info.simpleTags;
+        gi.pages = info.pages;
+        gi.generateSLang();
+        return true;
+    }
+
+    /**
+     * Put the gallery info filled by gdata api.
+     */
+    void put(@NonNull GalleryInfo gi) {
+        GalleryInfo info = new GalleryInfo();
+        info.gid = gi.gid;
+        info.token = gi.token;
+        info.title = gi.title;
+        info.titleJpn = gi.titleJpn;
+        info.category = gi.category;
+        info.thumb = gi.thumb;
+        info.uploader = gi.uploader;
+        info.posted = gi.posted;
+        info.rating = gi.rating;
+        info.simpleTags = gi.simpleTags;
+        info.pages = gi.pages;
+        mCache.put(gi.gid, new Entry(gi.token, info, SystemClock.elapsedRealtime()));
+    }
+
+    private static class Entry {
+
+        final String token;
+        final GalleryInfo info;
+        final long time;
+
+        Entry(String token, GalleryInfo info, long time) {
+            this.token = token;
+            this.info = info;
+            this.time = time;
+        }
+    }
+}
@@ -19,11 +19,12 @@ package com.hippo.ehviewer.client.data;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.regex.Pattern;
 
-public class GalleryInfo implements Parcelable {
+public class GalleryInfo implements Parcelable, Cloneable {
 
     /**
      * ISO 639-1
@@ -158,6 +159,18 @@ public class GalleryInfo implements Parcelable {
         this.favoriteName = in.readString();
     }
 
+    /**
+     * @return a shallow copy which can be shown while this one is filled
+     */
+    @NonNull
+    public GalleryInfo copy() {
+        try {
+            return (GalleryInfo) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public final void generateSLang() {
         if (simpleTags != null) {
             generateSLangFromTags();
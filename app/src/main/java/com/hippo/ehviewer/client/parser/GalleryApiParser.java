@@ -16,7 +16,8 @@
 
 package com.hippo.ehviewer.client.parser;
 
-import com.hippo.ehviewer.client.EhUtils;
+import com.hippo.ehviewer.client.EhConfig;
+import com.hippo.ehviewer.client.EhUrl;
 import com.hippo.ehviewer.client.data.GalleryInfo;
 import com.hippo.yorozuya.NumberUtils;
 
@@ -24,13 +25,18 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class GalleryApiParser {
 
-    public static void parse(String body, List<GalleryInfo> galleryInfoList) throws JSONException {
+    /**
+     * @return the gallery infos filled
+     */
+    public static List<GalleryInfo> parse(String body, List<GalleryInfo> galleryInfoList) throws JSONException {
         JSONObject jo = new JSONObject(body);
         JSONArray ja = jo.getJSONArray("gmetadata");
+        List<GalleryInfo> filled = new ArrayList<>(ja.length());
 
         for (int i = 0, length = ja.length(); i < length; i++) {
             JSONObject g = ja.getJSONObject(i);
@@ -41,8 +47,8 @@ public class GalleryApiParser {
             }
             gi.title = ParserUtils.trim(g.getString("title"));
             gi.titleJpn = ParserUtils.trim(g.getString("title_jpn"));
-            gi.category = EhUtils.getCategory(g.getString("category"));
-            gi.thumb = EhUtils.handleThumbUrlResolution(g.getString("thumb"));
+            gi.category = EhConfig.getCategory(g.getString("category"));
+            gi.thumb = EhUrl.handleThumbUrlResolution(g.getString("thumb"));
             gi.uploader = g.getString("uploader");
             gi.posted = ParserUtils.formatDate(ParserUtils.parseLong(g.getString("posted"), 0) * 1000);
             gi.rating = NumberUtils.parseFloatSafely(g.getString("rating"), 0.0f);
@@ -56,7 +62,9 @@ public class GalleryApiParser {
             gi.simpleTags = tags;
             gi.pages = NumberUtils.parseIntSafely(g.getString("filecount"), 0);
             gi.generateSLang();
+            filled.add(gi);
         }
+        return filled;
     }
 
     private static GalleryInfo getGalleryInfoByGid(List<GalleryInfo> galleryInfoList, long gid) {
@@ -22,8 +22,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.hippo.ehviewer.Settings;
+import com.hippo.ehviewer.client.EhConfig;
 import com.hippo.ehviewer.client.EhUrl;
-import com.hippo.ehviewer.client.EhUtils;
 import com.hippo.ehviewer.client.data.GalleryComment;
 import com.hippo.ehviewer.client.data.GalleryCommentList;
 import com.hippo.ehviewer.client.data.GalleryDetail;
@@ -53,7 +53,6 @@ import org.jsoup.select.NodeVisitor;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -181,10 +180,10 @@ public class GalleryDetailParser {
                 if (ce == null) {
                     ce = JsoupUtils.getElementByClass(gdc, "cs");
                 }
-                gd.category = EhUtils.getCategory(ce.text());
+                gd.category = EhConfig.getCategory(ce.text());
             } catch (Throwable e) {
                 ExceptionUtils.throwIfFatal(e);
-                gd.category = EhUtils.UNKNOWN;
+                gd.category = EhConfig.UNKNOWN;
             }
 
             // Uploader
@@ -288,7 +287,7 @@ public class GalleryDetailParser {
     private static String parseCoverStyle(String str) {
         Matcher matcher = PATTERN_COVER.matcher(str);
         if (matcher.find()) {
-            return EhUtils.handleThumbUrlResolution(matcher.group(3));
+            return EhUrl.handleThumbUrlResolution(matcher.group(3));
         } else {
             return "";
         }
@@ -478,7 +477,7 @@ public class GalleryDetailParser {
             Element c3 = JsoupUtils.getElementByClass(element, "c3");
             String temp = c3.ownText();
             temp = temp.substring("Posted on ".length(), temp.length() - " by:".length());
-            comment.time = WEB_COMMENT_DATE_FORMAT.parse(temp).getTime();
+            comment.time = parseCommentDate(temp);
             // user
             comment.user = c3.child(0).text();
             // comment
@@ -488,7 +487,7 @@ public class GalleryDetailParser {
             if (c8 != null) {
                 Element e = c8.children().first();
                 if (e != null) {
-                    comment.lastEdited = WEB_COMMENT_DATE_FORMAT.parse(temp).getTime();
+                    comment.lastEdited = parseCommentDate(e.text());
                 }
             }
             return comment;
@@ -499,6 +498,13 @@ public class GalleryDetailParser {
         }
     }
 
+    // SimpleDateFormat is not thread safe
+    private static long parseCommentDate(String str) throws java.text.ParseException {
+        synchronized (WEB_COMMENT_DATE_FORMAT) {
+            return WEB_COMMENT_DATE_FORMAT.parse(str).getTime();
+        }
+    }
+
     /**
      * Parse comments with html parser
      */
@@ -549,14 +555,14 @@ public class GalleryDetailParser {
         Matcher m = PATTERN_COMMENT.matcher(body);
         while (m.find()) {
             String webDateString = ParserUtils.trim(m.group(1));
-            Date date;
+            long time;
             try {
-                date = WEB_COMMENT_DATE_FORMAT.parse(webDateString);
+                time = parseCommentDate(webDateString);
             } catch (java.text.ParseException e) {
-                date = new Date(0L);
+                time = 0L;
             }
             GalleryComment comment = new GalleryComment();
-            comment.time = date.getTime();
+            comment.time = time;
             comment.user = ParserUtils.trim(m.group(2));
             comment.comment = m.group(3);
             list.add(comment);
@@ -22,7 +22,8 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.hippo.ehviewer.EhDB;
-import com.hippo.ehviewer.client.EhUtils;
+import com.hippo.ehviewer.client.EhConfig;
+import com.hippo.ehviewer.client.EhUrl;
 import com.hippo.ehviewer.client.data.GalleryInfo;
 import com.hippo.ehviewer.client.data.GalleryTagGroup;
 import com.hippo.ehviewer.client.exception.ParseException;
@@ -46,10 +47,10 @@ public class GalleryListParser {
     private static final String TAG = GalleryListParser.class.getSimpleName();
 
     private static final Pattern PATTERN_RATING = Pattern.compile("\\d+px");
-    private static final Pattern PATTERN_THUMB_SIZE = Pattern.compile("height:(\\d+)px;width:(\\d+)px");
+    static final Pattern PATTERN_THUMB_SIZE = Pattern.compile("height:(\\d+)px;width:(\\d+)px");
     private static final Pattern PATTERN_FAVORITE_SLOT = Pattern.compile("background-color:rgba\\((\\d+),(\\d+),(\\d+),");
-    private static final Pattern PATTERN_PAGES = Pattern.compile("(\\d+) page");
-    private static final Pattern PATTERN_NEXT_PAGE = Pattern.compile("page=(\\d+)");
+    static final Pattern PATTERN_PAGES = Pattern.compile("(\\d+) page");
+    static final Pattern PATTERN_NEXT_PAGE = Pattern.compile("page=(\\d+)");
 
     private static final String[][] FAVORITE_SLOT_RGB = new String[][]{
             new String[]{"0", "0", "0"},
@@ -74,7 +75,7 @@ public class GalleryListParser {
         }
     }
 
-    private static String parseRating(String ratingStyle) {
+    static String parseRating(String ratingStyle) {
         Matcher m = PATTERN_RATING.matcher(ratingStyle);
         int num1 = Integer.MIN_VALUE;
         int num2 = Integer.MIN_VALUE;
@@ -99,7 +100,7 @@ public class GalleryListParser {
         return re;
     }
 
-    private static int parseFavoriteSlot(String style) {
+    static int parseFavoriteSlot(String style) {
         Matcher m = PATTERN_FAVORITE_SLOT.matcher(style);
         if (m.find()) {
             String r = m.group(1);
@@ -162,13 +163,13 @@ public class GalleryListParser {
         }
 
         // Category
-        gi.category = EhUtils.UNKNOWN;
+        gi.category = EhConfig.UNKNOWN;
         Element ce = JsoupUtils.getElementByClass(e, "cn");
         if (ce == null) {
             ce = JsoupUtils.getElementByClass(e, "cs");
         }
         if (ce != null) {
-            gi.category = EhUtils.getCategory(ce.text());
+            gi.category = EhConfig.getCategory(ce.text());
         }
 
         // Thumb
@@ -194,7 +195,7 @@ public class GalleryListParser {
                 if (TextUtils.isEmpty(url)) {
                     url = null;
                 }
-                gi.thumb = EhUtils.handleThumbUrlResolution(url);
+                gi.thumb = EhUrl.handleThumbUrlResolution(url);
             }
 
             // Pages
@@ -225,7 +226,7 @@ public class GalleryListParser {
                         gi.thumbWidth = 0;
                         gi.thumbHeight = 0;
                     }
-                    gi.thumb = EhUtils.handleThumbUrlResolution(img.attr("src"));
+                    gi.thumb = EhUrl.handleThumbUrlResolution(img.attr("src"));
                 }
             }
         }
@@ -0,0 +1,870 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.parser;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.hippo.ehviewer.EhDB;
+import com.hippo.ehviewer.client.EhConfig;
+import com.hippo.ehviewer.client.EhUrl;
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.client.data.GalleryTagGroup;
+import com.hippo.ehviewer.client.exception.ParseException;
+import com.hippo.yorozuya.NumberUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Parses gallery list page row by row while it is read,
+ * gets the same result as {@link GalleryListParser#parse(String)}
+ * without building document.
+ * <p>
+ * The body is only kept until the first gallery is parsed,
+ * no ParseException can be thrown after that.
+ * <p>
+ * A {@link Listener} gets each gallery as soon as its row is closed.
+ */
+public final class GalleryListStreamParser {
+
+    private static final String TAG = GalleryListStreamParser.class.getSimpleName();
+
+    private static final String NO_WATCHED_TAGS = "You do not have any watched tags";
+    private static final String NO_HITS = "No hits found";
+    private static final String POSTED_ID_PREFIX = "posted_";
+
+    // What an element is used for, one element may have several roles
+    private static final int ROLE_ROW = 1;
+    private static final int ROLE_ITG = 1 << 1;
+    private static final int ROLE_ITG_BODY = 1 << 2;
+    private static final int ROLE_TITLE = 1 << 3;
+    private static final int ROLE_TAG_TABLE = 1 << 4;
+    private static final int ROLE_TAG_ROW = 1 << 5;
+    private static final int ROLE_TAG_NAMESPACE = 1 << 6;
+    private static final int ROLE_TAG_CELL = 1 << 7;
+    private static final int ROLE_TAG = 1 << 8;
+    private static final int ROLE_CN = 1 << 9;
+    private static final int ROLE_CS = 1 << 10;
+    private static final int ROLE_THUMB_PAGES = 1 << 11;
+    private static final int ROLE_POSTED = 1 << 12;
+    private static final int ROLE_UPLOADER_CELL = 1 << 13;
+    private static final int ROLE_UPLOADER = 1 << 14;
+    private static final int ROLE_PAGES_CELL = 1 << 15;
+    private static final int ROLE_GL5T_PAGES = 1 << 16;
+    private static final int ROLE_PTT = 1 << 17;
+    private static final int ROLE_PTT_ROW = 1 << 18;
+    private static final int ROLE_PTT_CELL = 1 << 19;
+
+    private static final int TEXT_ROLES = ROLE_TITLE | ROLE_TAG_NAMESPACE | ROLE_TAG | ROLE_CN | ROLE_CS |
+            ROLE_THUMB_PAGES | ROLE_POSTED | ROLE_UPLOADER | ROLE_PAGES_CELL | ROLE_GL5T_PAGES | ROLE_PTT_CELL;
+
+    // Which element an element is in, inherited by children
+    private static final int SCOPE_ROW = 1;
+    private static final int SCOPE_GLNAME = 1 << 1;
+    private static final int SCOPE_GLTHUMB = 1 << 2;
+    private static final int SCOPE_GL1E = 1 << 3;
+    private static final int SCOPE_GL3T = 1 << 4;
+    private static final int SCOPE_GL5T = 1 << 5;
+    private static final int SCOPE_TAG_TABLE = 1 << 6;
+    private static final int SCOPE_PTT = 1 << 7;
+
+    // Element with uploader and pages as children
+    private static final int HIDE_NONE = 0;
+    private static final int HIDE_GLHIDE = 1;
+    private static final int HIDE_GL3E = 2;
+
+    private final HtmlTokenizer mTokenizer;
+    @Nullable
+    private final Listener mListener;
+
+    private final ArrayList<Frame> mFrames = new ArrayList<>();
+    private int mDepth;
+    // Count of frames collecting text
+    private int mCollecting;
+
+    @Nullable
+    private Row mRow;
+    private final List<GalleryInfo> mList = new ArrayList<>();
+
+    private boolean mSeenItg;
+    private boolean mSeenPtt;
+    private boolean mSeenPttRow;
+    private final List<String> mPttTexts = new ArrayList<>();
+    private final List<String> mPttHrefs = new ArrayList<>();
+
+    // Last token is <p>
+    private boolean mBareP;
+    // Last token is text
+    @Nullable
+    private String mLastText;
+    private boolean mNoWatchedTags;
+    private boolean mNoHits;
+
+    private GalleryListStreamParser(Reader reader, @Nullable Listener listener) {
+        // Keep body for ParseException
+        mTokenizer = new HtmlTokenizer(reader, true);
+        mListener = listener;
+    }
+
+    @NonNull
+    public static GalleryListParser.Result parse(@NonNull Reader reader) throws IOException, ParseException {
+        return parse(reader, null);
+    }
+
+    /**
+     * @param listener called on the reading thread with each gallery once its row is read
+     */
+    @NonNull
+    public static GalleryListParser.Result parse(@NonNull Reader reader, @Nullable Listener listener)
+            throws IOException, ParseException {
+        return new GalleryListStreamParser(reader, listener).parse();
+    }
+
+    private GalleryListParser.Result parse() throws IOException, ParseException {
+        HtmlTokenizer tokenizer = mTokenizer;
+        int token;
+        while ((token = tokenizer.next()) != HtmlTokenizer.EOF) {
+            switch (token) {
+                case HtmlTokenizer.START_TAG:
+                    onStartTag();
+                    mBareP = "p".equals(tokenizer.getName()) &&
+                            tokenizer.getPosition() - tokenizer.getTokenStart() == "<p>".length();
+                    mLastText = null;
+                    break;
+                case HtmlTokenizer.END_TAG:
+                    if (mLastText != null && mLastText.endsWith(NO_HITS) && "p".equals(tokenizer.getName()) &&
+                            tokenizer.getPosition() - tokenizer.getTokenStart() == "</p>".length()) {
+                        mNoHits = true;
+                    }
+                    onEndTag(tokenizer.getName());
+                    mBareP = false;
+                    mLastText = null;
+                    break;
+                case HtmlTokenizer.TEXT: {
+                    String text = tokenizer.getText();
+                    if (mBareP && text.startsWith(NO_WATCHED_TAGS)) {
+                        mNoWatchedTags = true;
+                    }
+                    onText(text);
+                    mBareP = false;
+                    mLastText = text;
+                    break;
+                }
+            }
+        }
+        while (mDepth > 0) {
+            pop();
+        }
+        return finish();
+    }
+
+    private GalleryListParser.Result finish() throws IOException, ParseException {
+        GalleryListParser.Result result = new GalleryListParser.Result();
+
+        boolean hasPages = false;
+        int size = mPttTexts.size();
+        if (size >= 2) {
+            try {
+                result.pages = Integer.parseInt(mPttTexts.get(size - 2).trim());
+                hasPages = true;
+            } catch (NumberFormatException e) {
+                // Ignore
+            }
+        }
+        if (hasPages) {
+            String href = mPttHrefs.get(size - 1);
+            if (href != null) {
+                Matcher matcher = GalleryListParser.PATTERN_NEXT_PAGE.matcher(href);
+                if (matcher.find()) {
+                    result.nextPage = NumberUtils.parseIntSafely(matcher.group(1), 0);
+                }
+            }
+        } else {
+            result.noWatchedTags = mNoWatchedTags;
+            if (mNoHits) {
+                result.pages = 0;
+                result.galleryInfoList = Collections.emptyList();
+                return result;
+            } else if (!mSeenPtt) {
+                result.pages = 1;
+            } else {
+                result.pages = Integer.MAX_VALUE;
+            }
+        }
+
+        if (mList.isEmpty()) {
+            throw new ParseException("Can't parse gallery list", mTokenizer.getBody());
+        }
+        result.galleryInfoList = mList;
+
+        return result;
+    }
+
+    private void onStartTag() {
+        HtmlTokenizer tokenizer = mTokenizer;
+        String name = tokenizer.getName();
+        closeImplied(name);
+
+        Frame parent = mDepth > 0 ? mFrames.get(mDepth - 1) : null;
+        int index = 0;
+        int scope = 0;
+        if (parent != null) {
+            index = parent.childCount++;
+            scope = parent.scope;
+        }
+
+        String cls = tokenizer.getAttribute("class");
+        int roles = 0;
+        boolean titleTail = false;
+        int hide = HIDE_NONE;
+        int owner = HIDE_NONE;
+        String href = null;
+        String id = null;
+        String style = null;
+
+        // Rows are children of the first itg, or of the tbody in it
+        if (parent != null && mRow == null) {
+            if ((parent.roles & ROLE_ITG) != 0) {
+                if (!"table".equals(parent.name) || "tr".equals(name)) {
+                    roles |= ROLE_ROW;
+                } else if (index == 0) {
+                    roles |= ROLE_ITG_BODY;
+                }
+            } else if ((parent.roles & ROLE_ITG_BODY) != 0) {
+                roles |= ROLE_ROW;
+            }
+        }
+        if ((roles & ROLE_ROW) != 0) {
+            mRow = new Row();
+            scope = SCOPE_ROW;
+        }
+
+        Row row = mRow;
+        if (row != null && (scope & SCOPE_ROW) != 0) {
+            // Title is the text of the first leaf, following first children from glname
+            if (parent != null && parent.titleTail && index == 0) {
+                parent.titleTail = false;
+                roles |= ROLE_TITLE;
+                titleTail = true;
+            }
+
+            if ((scope & SCOPE_GLTHUMB) != 0) {
+                if (!row.seenThumbImg && "img".equals(name) &&
+                        "div".equals(parent.name) && parent.index == 0) {
+                    // div:nth-child(1)>img
+                    row.seenThumbImg = true;
+                    row.thumbStyle = getAttribute("style");
+                    row.thumbUrl = getAttribute("data-src");
+                    if (TextUtils.isEmpty(row.thumbUrl)) {
+                        row.thumbUrl = getAttribute("src");
+                    }
+                } else if (!row.seenThumbPages && "div".equals(name) && index == 1 &&
+                        isSecondDiv(mDepth - 1) && isSecondDiv(mDepth - 2)) {
+                    // div:nth-child(2)>div:nth-child(2)>div:nth-child(2)
+                    row.seenThumbPages = true;
+                    roles |= ROLE_THUMB_PAGES;
+                }
+            }
+            if ((scope & SCOPE_GL5T) != 0 && !row.seenGl5tPages && "div".equals(name) && index == 1 &&
+                    isSecondDiv(mDepth - 1)) {
+                // div:nth-child(2)>div:nth-child(2)
+                row.seenGl5tPages = true;
+                roles |= ROLE_GL5T_PAGES;
+            }
+            if ("img".equals(name)) {
+                if ((scope & SCOPE_GL1E) != 0 && !row.seenGl1eImg) {
+                    row.seenGl1eImg = true;
+                    row.gl1eStyle = getAttribute("style");
+                    row.gl1eUrl = getAttribute("src");
+                }
+                if ((scope & SCOPE_GL3T) != 0 && !row.seenGl3tImg) {
+                    row.seenGl3tImg = true;
+                    row.gl3tStyle = getAttribute("style");
+                    row.gl3tUrl = getAttribute("src");
+                }
+            }
+
+            if ((scope & SCOPE_TAG_TABLE) != 0) {
+                if ("tr".equals(name) && ((parent.roles & ROLE_TAG_TABLE) != 0 ||
+                        ("tbody".equals(parent.name) && (mFrames.get(mDepth - 2).roles & ROLE_TAG_TABLE) != 0))) {
+                    roles |= ROLE_TAG_ROW;
+                } else if ((parent.roles & ROLE_TAG_ROW) != 0 && index == 0) {
+                    roles |= ROLE_TAG_NAMESPACE;
+                } else if ((parent.roles & ROLE_TAG_ROW) != 0 && index == 1) {
+                    roles |= ROLE_TAG_CELL;
+                } else if ((parent.roles & ROLE_TAG_CELL) != 0) {
+                    roles |= ROLE_TAG;
+                }
+            }
+
+            if (parent != null && parent.hide != HIDE_NONE) {
+                int uploaderIndex = parent.hide == HIDE_GLHIDE ? 0 : 3;
+                int pagesIndex = parent.hide == HIDE_GLHIDE ? 1 : 4;
+                if (index == uploaderIndex) {
+                    roles |= ROLE_UPLOADER_CELL;
+                    owner = parent.hide;
+                } else if (index == pagesIndex) {
+                    roles |= ROLE_PAGES_CELL;
+                    owner = parent.hide;
+                }
+            } else if (parent != null && (parent.roles & ROLE_UPLOADER_CELL) != 0 && index == 0) {
+                roles |= ROLE_UPLOADER;
+                owner = parent.owner;
+            }
+
+            // Like getElementsByClass(), the element itself is searched too
+            if (cls != null) {
+                if (!row.seenGlname && hasClass(cls, "glname")) {
+                    row.seenGlname = true;
+                    scope |= SCOPE_GLNAME;
+                    roles |= ROLE_TITLE;
+                    titleTail = true;
+                    if (parent != null && "a".equals(parent.name)) {
+                        row.parentHref = parent.href;
+                    }
+                }
+                if (!row.seenCn && hasClass(cls, "cn")) {
+                    row.seenCn = true;
+                    roles |= ROLE_CN;
+                }
+                if (!row.seenCs && hasClass(cls, "cs")) {
+                    row.seenCs = true;
+                    roles |= ROLE_CS;
+                }
+                if (!row.seenGlthumb && hasClass(cls, "glthumb")) {
+                    row.seenGlthumb = true;
+                    scope |= SCOPE_GLTHUMB;
+                }
+                if (!row.seenGl1e && hasClass(cls, "gl1e")) {
+                    row.seenGl1e = true;
+                    scope |= SCOPE_GL1E;
+                }
+                if (!row.seenGl3t && hasClass(cls, "gl3t")) {
+                    row.seenGl3t = true;
+                    scope |= SCOPE_GL3T;
+                }
+                if (!row.seenGl5t && hasClass(cls, "gl5t")) {
+                    row.seenGl5t = true;
+                    scope |= SCOPE_GL5T;
+                }
+                if (!row.seenIr && hasClass(cls, "ir")) {
+                    row.seenIr = true;
+                    row.irStyle = getAttribute("style");
+                    row.irClass = cls;
+                }
+                if (!row.seenGlhide && hasClass(cls, "glhide")) {
+                    row.seenGlhide = true;
+                    hide = HIDE_GLHIDE;
+                } else if (!row.seenGl3e && hasClass(cls, "gl3e")) {
+                    row.seenGl3e = true;
+                    hide = HIDE_GL3E;
+                }
+            }
+
+            if ("a".equals(name)) {
+                href = getAttribute("href");
+                if ((scope & SCOPE_GLNAME) != 0 && !row.seenLink) {
+                    row.seenLink = true;
+                    row.href = href;
+                }
+            } else if ("table".equals(name) && (scope & SCOPE_GLNAME) != 0 && row.tagGroups == null) {
+                row.tagGroups = new ArrayList<>();
+                roles |= ROLE_TAG_TABLE;
+                scope |= SCOPE_TAG_TABLE;
+            }
+
+            id = tokenizer.getAttribute("id");
+            if (id != null && id.startsWith(POSTED_ID_PREFIX)) {
+                roles |= ROLE_POSTED;
+                style = getAttribute("style");
+            }
+        }
+
+        if ((scope & SCOPE_PTT) != 0) {
+            if (!mSeenPttRow && "tr".equals(name)) {
+                mSeenPttRow = true;
+                roles |= ROLE_PTT_ROW;
+            } else if ((parent.roles & ROLE_PTT_ROW) != 0) {
+                roles |= ROLE_PTT_CELL;
+            } else if ((parent.roles & ROLE_PTT_CELL) != 0 && index == 0) {
+                parent.href = getAttribute("href");
+            }
+        }
+        if (cls != null) {
+            if (!mSeenPtt && hasClass(cls, "ptt")) {
+                mSeenPtt = true;
+                roles |= ROLE_PTT;
+                scope |= SCOPE_PTT;
+            }
+            if (!mSeenItg && hasClass(cls, "itg")) {
+                mSeenItg = true;
+                roles |= ROLE_ITG;
+            }
+        }
+
+        if ("br".equals(name)) {
+            // Like jsoup, br is a whitespace in text
+            onText(" ");
+        } else if (mCollecting > 0 && isBlockElement(name)) {
+            // Like jsoup, block element splits text
+            for (int i = 0; i < mDepth; i++) {
+                Frame frame = mFrames.get(i);
+                if (frame.collectText) {
+                    frame.text.append(' ');
+                }
+            }
+        }
+
+        Frame frame = push(name, index, roles, scope);
+        frame.titleTail = titleTail;
+        frame.hide = hide;
+        frame.owner = owner;
+        frame.href = href;
+        frame.id = id;
+        frame.style = style;
+        if ((roles & ROLE_TAG_ROW) != 0) {
+            frame.group = new GalleryTagGroup();
+        }
+
+        if (tokenizer.isSelfClosing() || isVoidElement(name)) {
+            pop();
+        }
+    }
+
+    private String getAttribute(String name) {
+        // Like jsoup, missing attribute is empty
+        String value = mTokenizer.getAttribute(name);
+        return value != null ? value : "";
+    }
+
+    private boolean isSecondDiv(int depth) {
+        if (depth < 0) {
+            return false;
+        }
+        Frame frame = mFrames.get(depth);
+        return frame.index == 1 && "div".equals(frame.name);
+    }
+
+    // Like jsoup, a new row or cell closes the open one of the same table
+    private void closeImplied(String name) {
+        boolean isRow = "tr".equals(name);
+        if (!isRow && !"td".equals(name) && !"th".equals(name)) {
+            return;
+        }
+        for (int i = mDepth - 1; i >= 0; i--) {
+            String open = mFrames.get(i).name;
+            if ("table".equals(open) || (!isRow && "tr".equals(open))) {
+                return;
+            }
+            if (isRow ? "tr".equals(open) : "td".equals(open) || "th".equals(open)) {
+                while (mDepth > i) {
+                    pop();
+                }
+                return;
+            }
+        }
+    }
+
+    private void onEndTag(String name) {
+        // Close the nearest open element with the name, and elements in it
+        for (int i = mDepth - 1; i >= 0; i--) {
+            if (name.equals(mFrames.get(i).name)) {
+                while (mDepth > i) {
+                    pop();
+                }
+                return;
+            }
+        }
+    }
+
+    private void onText(String text) {
+        if (mCollecting > 0) {
+            for (int i = 0; i < mDepth; i++) {
+                Frame frame = mFrames.get(i);
+                if (frame.collectText) {
+                    frame.text.append(text);
+                }
+            }
+        }
+    }
+
+    private void onEnd(Frame frame) {
+        int roles = frame.roles;
+        Row row = mRow;
+        if ((roles & ROLE_PTT_CELL) != 0) {
+            mPttTexts.add(frame.text());
+            mPttHrefs.add(frame.href);
+        }
+        if (row == null) {
+            return;
+        }
+
+        if ((roles & ROLE_TITLE) != 0 && frame.titleTail && row.title == null) {
+            row.title = frame.text();
+        }
+        if ((roles & ROLE_TAG_NAMESPACE) != 0) {
+            String namespace = frame.text();
+            if (!namespace.isEmpty()) {
+                // Remove last ':'
+                mFrames.get(mDepth - 1).group.groupName = namespace.substring(0, namespace.length() - 1);
+            }
+        }
+        if ((roles & ROLE_TAG) != 0) {
+            String tag = frame.text();
+            // Sometimes parody tag is followed with '|' and english translate, just remove them
+            int index = tag.indexOf('|');
+            if (index >= 0) {
+                tag = tag.substring(0, index).trim();
+            }
+            // Tag row is the parent of tag cell
+            mFrames.get(mDepth - 2).group.addTag(tag);
+        }
+        if ((roles & ROLE_TAG_ROW) != 0) {
+            GalleryTagGroup group = frame.group;
+            if (group.groupName != null && group.size() > 0) {
+                row.tagGroups.add(group);
+            }
+        }
+        if ((roles & ROLE_CN) != 0) {
+            row.cn = frame.text();
+        }
+        if ((roles & ROLE_CS) != 0) {
+            row.cs = frame.text();
+        }
+        if ((roles & ROLE_THUMB_PAGES) != 0) {
+            row.thumbPages = frame.text();
+        }
+        if ((roles & ROLE_GL5T_PAGES) != 0) {
+            row.gl5tPages = frame.text();
+        }
+        if ((roles & ROLE_POSTED) != 0) {
+            row.posted.add(new String[]{frame.id, frame.text(), frame.style});
+        }
+        if ((roles & ROLE_UPLOADER) != 0) {
+            if (frame.owner == HIDE_GLHIDE) {
+                row.glhideUploader = frame.text();
+            } else {
+                row.gl3eUploader = frame.text();
+            }
+        }
+        if ((roles & ROLE_PAGES_CELL) != 0) {
+            if (frame.owner == HIDE_GLHIDE) {
+                row.glhidePages = frame.text();
+            } else {
+                row.gl3ePages = frame.text();
+            }
+        }
+        if ((roles & ROLE_ROW) != 0) {
+            mRow = null;
+            GalleryInfo gi = row.toGalleryInfo();
+            if (gi != null) {
+                mList.add(gi);
+                if (mList.size() == 1) {
+                    // The page is a gallery list, the body is no longer needed for errors
+                    mTokenizer.discardBody();
+                }
+                if (mListener != null) {
+                    mListener.onGalleryInfo(gi);
+                }
+            }
+        }
+    }
+
+    private Frame push(String name, int index, int roles, int scope) {
+        Frame frame;
+        if (mDepth < mFrames.size()) {
+            frame = mFrames.get(mDepth);
+        } else {
+            frame = new Frame();
+            mFrames.add(frame);
+        }
+        mDepth++;
+        frame.name = name;
+        frame.index = index;
+        frame.roles = roles;
+        frame.scope = scope;
+        frame.collectText = (roles & TEXT_ROLES) != 0;
+        frame.childCount = 0;
+        frame.group = null;
+        frame.text.setLength(0);
+        if (frame.collectText) {
+            mCollecting++;
+        }
+        return frame;
+    }
+
+    private void pop() {
+        Frame frame = mFrames.get(--mDepth);
+        if (frame.collectText) {
+            mCollecting--;
+        }
+        if (frame.roles != 0) {
+            onEnd(frame);
+        }
+    }
+
+    private static boolean hasClass(String classes, String name) {
+        int index = 0;
+        int length = name.length();
+        while ((index = classes.indexOf(name, index)) >= 0) {
+            int end = index + length;
+            if ((index == 0 || classes.charAt(index - 1) == ' ') &&
+                    (end == classes.length() || classes.charAt(end) == ' ')) {
+                return true;
+            }
+            index = end;
+        }
+        return false;
+    }
+
+    private static boolean isVoidElement(String name) {
+        switch (name) {
+            case "area":
+            case "base":
+            case "br":
+            case "col":
+            case "embed":
+            case "hr":
+            case "img":
+            case "input":
+            case "link":
+            case "meta":
+            case "param":
+            case "source":
+            case "track":
+            case "wbr":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isBlockElement(String name) {
+        switch (name) {
+            case "div":
+            case "p":
+            case "h1":
+            case "table":
+            case "tr":
+            case "td":
+            case "li":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void setThumbSize(GalleryInfo gi, String style) {
+        Matcher m = GalleryListParser.PATTERN_THUMB_SIZE.matcher(style);
+        if (m.find()) {
+            gi.thumbWidth = NumberUtils.parseIntSafely(m.group(2), 0);
+            gi.thumbHeight = NumberUtils.parseIntSafely(m.group(1), 0);
+        } else {
+            Log.w(TAG, "Can't parse gallery info thumb size");
+            gi.thumbWidth = 0;
+            gi.thumbHeight = 0;
+        }
+    }
+
+    private static void setPages(GalleryInfo gi, @Nullable String text) {
+        if (text != null) {
+            Matcher matcher = GalleryListParser.PATTERN_PAGES.matcher(text);
+            if (matcher.find()) {
+                gi.pages = NumberUtils.parseIntSafely(matcher.group(1), 0);
+            }
+        }
+    }
+
+    public interface Listener {
+
+        void onGalleryInfo(@NonNull GalleryInfo info);
+    }
+
+    private static class Frame {
+
+        String name;
+        // Index in parent
+        int index;
+        int roles;
+        int scope;
+        int childCount;
+        boolean collectText;
+        // The last element of the title chain so far
+        boolean titleTail;
+        // Uploader and pages in children
+        int hide;
+        // The hide element of the uploader or pages
+        int owner;
+        @Nullable
+        String href;
+        @Nullable
+        String id;
+        @Nullable
+        String style;
+        @Nullable
+        GalleryTagGroup group;
+        final StringBuilder text = new StringBuilder();
+
+        String text() {
+            return HtmlTokenizer.normalizeText(text);
+        }
+    }
+
+    // Values found in a row, used like GalleryListParser does at the end of the row
+    private static class Row {
+
+        boolean seenGlname;
+        boolean seenLink;
+        String href;
+        String parentHref;
+        String title;
+        List<GalleryTagGroup> tagGroups;
+
+        boolean seenCn;
+        boolean seenCs;
+        String cn;
+        String cs;
+
+        boolean seenGlthumb;
+        boolean seenThumbImg;
+        String thumbStyle;
+        String thumbUrl;
+        boolean seenThumbPages;
+        String thumbPages;
+
+        boolean seenGl1e;
+        boolean seenGl1eImg;
+        String gl1eStyle;
+        String gl1eUrl;
+        boolean seenGl3t;
+        boolean seenGl3tImg;
+        String gl3tStyle;
+        String gl3tUrl;
+
+        final List<String[]> posted = new ArrayList<>(1);
+
+        boolean seenIr;
+        String irStyle;
+        String irClass;
+
+        boolean seenGlhide;
+        String glhideUploader;
+        String glhidePages;
+        boolean seenGl3e;
+        String gl3eUploader;
+        String gl3ePages;
+
+        boolean seenGl5t;
+        boolean seenGl5tPages;
+        String gl5tPages;
+
+        @Nullable
+        GalleryInfo toGalleryInfo() {
+            GalleryInfo gi = new GalleryInfo();
+
+            // Title, gid, token (required), tags
+            String link = seenLink ? href : parentHref;
+            if (link != null) {
+                GalleryDetailUrlParser.Result result = GalleryDetailUrlParser.parse(link);
+                if (result != null) {
+                    gi.gid = result.gid;
+                    gi.token = result.token;
+                }
+            }
+            gi.title = title;
+            if (tagGroups != null) {
+                ArrayList<String> tags = new ArrayList<>();
+                for (GalleryTagGroup group : tagGroups) {
+                    for (int j = 0; j < group.size(); j++) {
+                        tags.add(group.groupName + ":" + group.getTagAt(j));
+                    }
+                }
+                gi.simpleTags = tags.toArray(new String[tags.size()]);
+            }
+            if (gi.title == null) {
+                return null;
+            }
+
+            // Category
+            gi.category = EhConfig.UNKNOWN;
+            String category = seenCn ? cn : cs;
+            if (category != null) {
+                gi.category = EhConfig.getCategory(category);
+            }
+
+            // Thumb
+            if (seenGlthumb) {
+                if (seenThumbImg) {
+                    setThumbSize(gi, thumbStyle);
+                    gi.thumb = EhUrl.handleThumbUrlResolution(TextUtils.isEmpty(thumbUrl) ? null : thumbUrl);
+                }
+                setPages(gi, thumbPages);
+            }
+            // Try extended and thumbnail version
+            if (gi.thumb == null) {
+                boolean seenImg = seenGl1e ? seenGl1eImg : seenGl3t && seenGl3tImg;
+                if (seenImg) {
+                    setThumbSize(gi, seenGl1e ? gl1eStyle : gl3tStyle);
+                    gi.thumb = EhUrl.handleThumbUrlResolution(seenGl1e ? gl1eUrl : gl3tUrl);
+                }
+            }
+
+            // Posted
+            gi.favoriteSlot = -2;
+            String postedId = POSTED_ID_PREFIX + gi.gid;
+            for (String[] p : posted) {
+                if (postedId.equals(p[0])) {
+                    gi.posted = p[1];
+                    gi.favoriteSlot = GalleryListParser.parseFavoriteSlot(p[2]);
+                    break;
+                }
+            }
+            if (gi.favoriteSlot == -2) {
+                gi.favoriteSlot = EhDB.containLocalFavorites(gi.gid) ? -1 : -2;
+            }
+
+            // Rating
+            if (seenIr) {
+                gi.rating = NumberUtils.parseFloatSafely(GalleryListParser.parseRating(irStyle), -1.0f);
+                gi.rated = hasClass(irClass, "irr") || hasClass(irClass, "irg") || hasClass(irClass, "irb");
+            }
+
+            // Uploader and pages
+            if (seenGlhide || seenGl3e) {
+                String uploader = seenGlhide ? glhideUploader : gl3eUploader;
+                if (uploader != null) {
+                    gi.uploader = uploader;
+                }
+                setPages(gi, seenGlhide ? glhidePages : gl3ePages);
+            }
+            // For thumbnail
+            setPages(gi, gl5tPages);
+
+            gi.generateSLang();
+
+            return gi;
+        }
+    }
+}
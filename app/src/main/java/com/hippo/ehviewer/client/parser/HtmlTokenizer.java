@@ -0,0 +1,469 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.parser;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Pull tokenizer of html, reads the source while tokens are taken.
+ * <p>
+ * It only splits start tags, end tags and text, no tree is built and
+ * no tag is fixed. Comments, doctype and processing instructions are skipped.
+ * Content of script and style is returned as one raw text.
+ */
+final class HtmlTokenizer {
+
+    static final int EOF = 0;
+    static final int START_TAG = 1;
+    static final int END_TAG = 2;
+    static final int TEXT = 3;
+
+    private static final int READ_SIZE = 8192;
+
+    private final Reader mReader;
+    private boolean mKeepBody;
+    private final char[] mReadBuffer = new char[READ_SIZE];
+    private final StringBuilder mBuffer = new StringBuilder(READ_SIZE * 2);
+    // Position of the first char of mBuffer in the source
+    private int mOffset;
+    // Position in mBuffer
+    private int mPos;
+    private boolean mEof;
+
+    // Name of the tag whose content is raw text
+    @Nullable
+    private String mRawTextTag;
+
+    private int mTokenStart;
+    private String mName;
+    // Start and end of name and value in mBuffer, attributes are only decoded if asked
+    private int[] mAttributes = new int[32];
+    private int mAttributeCount;
+    private boolean mSelfClosing;
+    private String mText;
+
+    /**
+     * @param keepBody true to keep all chars read, for {@link #getBody()}
+     */
+    HtmlTokenizer(@NonNull Reader reader, boolean keepBody) {
+        mReader = reader;
+        mKeepBody = keepBody;
+    }
+
+    /**
+     * @return type of the next token
+     */
+    int next() throws IOException {
+        compact();
+        mTokenStart = mOffset + mPos;
+
+        if (mRawTextTag != null) {
+            String tag = mRawTextTag;
+            mRawTextTag = null;
+            int index = indexOf("</" + tag, mPos);
+            if (index < 0) {
+                index = mBuffer.length();
+            }
+            if (index > mPos) {
+                mText = mBuffer.substring(mPos, index);
+                mPos = index;
+                return TEXT;
+            }
+        }
+
+        while (true) {
+            int c = charAt(mPos);
+            if (c == -1) {
+                return EOF;
+            }
+            if (c != '<') {
+                return readText();
+            }
+
+            int c1 = charAt(mPos + 1);
+            if (isLetter(c1)) {
+                return readStartTag();
+            } else if (c1 == '/' && isLetter(charAt(mPos + 2))) {
+                return readEndTag();
+            } else if (c1 == '!' && charAt(mPos + 2) == '-' && charAt(mPos + 3) == '-') {
+                skipTo("-->", mPos + 4);
+            } else if (c1 == '!' || c1 == '?' || c1 == '/') {
+                skipTo(">", mPos + 2);
+            } else {
+                return readText();
+            }
+            mTokenStart = mOffset + mPos;
+        }
+    }
+
+    /**
+     * @return lowercase name of the start tag or end tag
+     */
+    String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the attribute value of the start tag with entities decoded, null if missing
+     */
+    @Nullable
+    String getAttribute(String name) {
+        int length = name.length();
+        for (int i = 0, n = mAttributeCount * 4; i < n; i += 4) {
+            int start = mAttributes[i];
+            if (mAttributes[i + 1] - start != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && Character.toLowerCase(mBuffer.charAt(start + j)) == name.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                String value = mBuffer.substring(mAttributes[i + 2], mAttributes[i + 3]);
+                return value.indexOf('&') >= 0 ? unescape(value, true) : value;
+            }
+        }
+        return null;
+    }
+
+    boolean isSelfClosing() {
+        return mSelfClosing;
+    }
+
+    /**
+     * @return the text, entities are not decoded
+     */
+    String getText() {
+        return mText;
+    }
+
+    /**
+     * @return position of the current token in the source
+     */
+    int getTokenStart() {
+        return mTokenStart;
+    }
+
+    /**
+     * @return position after the current token in the source
+     */
+    int getPosition() {
+        return mOffset + mPos;
+    }
+
+    /**
+     * Stops keeping all chars, {@link #getBody()} can't be called after it.
+     *
+     * @return the source read so far
+     */
+    String discardBody() {
+        String head = mKeepBody ? mBuffer.substring(0, mPos) : "";
+        mKeepBody = false;
+        return head;
+    }
+
+    /**
+     * Reads the rest of source.
+     *
+     * @return all the source
+     */
+    String getBody() throws IOException {
+        if (!mKeepBody) {
+            throw new IllegalStateException("Body is not kept");
+        }
+        while (fill()) ;
+        return mBuffer.toString();
+    }
+
+    /**
+     * Decodes entities and normalizes whitespace like the text of jsoup.
+     */
+    static String normalizeText(CharSequence raw) {
+        String str = raw.toString();
+        if (str.indexOf('&') >= 0) {
+            str = unescape(str, false);
+        }
+        StringBuilder sb = null;
+        boolean lastIsWhitespace = true;
+        for (int i = 0, n = str.length(); i < n; i++) {
+            char c = str.charAt(i);
+            if (isWhitespace(c)) {
+                if (sb == null) {
+                    if (lastIsWhitespace || c != ' ') {
+                        sb = new StringBuilder(n);
+                        sb.append(str, 0, i);
+                    } else {
+                        lastIsWhitespace = true;
+                        continue;
+                    }
+                }
+                if (!lastIsWhitespace) {
+                    sb.append(' ');
+                }
+                lastIsWhitespace = true;
+            } else {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                lastIsWhitespace = false;
+            }
+        }
+        if (sb == null) {
+            // No need to collapse, only a space at the end is possible
+            return lastIsWhitespace && !str.isEmpty() ? str.substring(0, str.length() - 1) : str;
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == ' ') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString();
+    }
+
+    // Decodes common entities quickly, leaves others to jsoup
+    private static String unescape(String str, boolean inAttribute) {
+        StringBuilder sb = new StringBuilder(str.length());
+        int index = 0;
+        int start;
+        while ((start = str.indexOf('&', index)) >= 0) {
+            sb.append(str, index, start);
+            if (str.startsWith("&amp;", start)) {
+                sb.append('&');
+                index = start + 5;
+            } else if (str.startsWith("&lt;", start)) {
+                sb.append('<');
+                index = start + 4;
+            } else if (str.startsWith("&gt;", start)) {
+                sb.append('>');
+                index = start + 4;
+            } else if (str.startsWith("&quot;", start)) {
+                sb.append('"');
+                index = start + 6;
+            } else if (str.startsWith("&nbsp;", start)) {
+                sb.append('\u00a0');
+                index = start + 6;
+            } else {
+                sb.append(Parser.unescapeEntities(str.substring(start), inAttribute));
+                return sb.toString();
+            }
+        }
+        sb.append(str, index, str.length());
+        return sb.toString();
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 160;
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private int readText() throws IOException {
+        int start = mPos;
+        int index = mPos + 1;
+        while (true) {
+            index = indexOf("<", index);
+            if (index < 0) {
+                index = mBuffer.length();
+                break;
+            }
+            int c = charAt(index + 1);
+            if (isLetter(c) || c == '/' || c == '!' || c == '?') {
+                break;
+            }
+            index++;
+        }
+        mText = mBuffer.substring(start, index);
+        mPos = index;
+        return TEXT;
+    }
+
+    private int readStartTag() throws IOException {
+        int index = mPos + 1;
+        int c;
+        while ((c = charAt(index)) != -1 && !isWhitespace(c) && c != '/' && c != '>') {
+            index++;
+        }
+        mName = lowercase(mPos + 1, index);
+        mAttributeCount = 0;
+        mSelfClosing = false;
+
+        while (true) {
+            index = skipWhitespace(index);
+            c = charAt(index);
+            if (c == -1) {
+                break;
+            } else if (c == '>') {
+                index++;
+                break;
+            } else if (c == '/') {
+                index++;
+                if (charAt(index) == '>') {
+                    mSelfClosing = true;
+                    index++;
+                    break;
+                }
+                continue;
+            }
+
+            int nameStart = index;
+            while ((c = charAt(index)) != -1 && !isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+                index++;
+            }
+            if (index == nameStart) {
+                // Stray '='
+                index++;
+                continue;
+            }
+            int nameEnd = index;
+
+            int valueStart = index;
+            int valueEnd = index;
+            index = skipWhitespace(index);
+            if (charAt(index) == '=') {
+                index = skipWhitespace(index + 1);
+                c = charAt(index);
+                if (c == '"' || c == '\'') {
+                    int end = indexOf(c == '"' ? "\"" : "'", index + 1);
+                    if (end < 0) {
+                        end = mBuffer.length();
+                    }
+                    valueStart = index + 1;
+                    valueEnd = end;
+                    index = Math.min(end + 1, mBuffer.length());
+                } else {
+                    valueStart = index;
+                    while ((c = charAt(index)) != -1 && !isWhitespace(c) && c != '>') {
+                        index++;
+                    }
+                    valueEnd = index;
+                }
+            }
+            addAttribute(nameStart, nameEnd, valueStart, valueEnd);
+        }
+        mPos = index;
+
+        if (!mSelfClosing && ("script".equals(mName) || "style".equals(mName))) {
+            mRawTextTag = mName;
+        }
+        return START_TAG;
+    }
+
+    private void addAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        int offset = mAttributeCount * 4;
+        if (offset == mAttributes.length) {
+            mAttributes = Arrays.copyOf(mAttributes, offset * 2);
+        }
+        mAttributes[offset] = nameStart;
+        mAttributes[offset + 1] = nameEnd;
+        mAttributes[offset + 2] = valueStart;
+        mAttributes[offset + 3] = valueEnd;
+        mAttributeCount++;
+    }
+
+    private String lowercase(int start, int end) {
+        String str = mBuffer.substring(start, end);
+        for (int i = 0, n = str.length(); i < n; i++) {
+            char c = str.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return str.toLowerCase(Locale.US);
+            }
+        }
+        return str;
+    }
+
+    private int readEndTag() throws IOException {
+        int index = mPos + 2;
+        int c;
+        while ((c = charAt(index)) != -1 && !isWhitespace(c) && c != '/' && c != '>') {
+            index++;
+        }
+        mName = lowercase(mPos + 2, index);
+        skipTo(">", index);
+        return END_TAG;
+    }
+
+    private int skipWhitespace(int index) throws IOException {
+        while (isWhitespace(charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private void skipTo(String str, int from) throws IOException {
+        int index = indexOf(str, from);
+        mPos = index < 0 ? mBuffer.length() : index + str.length();
+    }
+
+    // Drops chars no longer needed
+    private void compact() {
+        if (mKeepBody) {
+            return;
+        }
+        if (mPos >= READ_SIZE) {
+            mBuffer.delete(0, mPos);
+            mOffset += mPos;
+            mPos = 0;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (mEof) {
+            return false;
+        }
+        int n = mReader.read(mReadBuffer);
+        if (n < 0) {
+            mEof = true;
+            return false;
+        }
+        mBuffer.append(mReadBuffer, 0, n);
+        return true;
+    }
+
+    private int charAt(int index) throws IOException {
+        if (index < mBuffer.length()) {
+            return mBuffer.charAt(index);
+        }
+        while (index >= mBuffer.length()) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        return mBuffer.charAt(index);
+    }
+
+    private int indexOf(String str, int from) throws IOException {
+        while (true) {
+            int index = mBuffer.indexOf(str, from);
+            if (index >= 0) {
+                return index;
+            }
+            from = Math.max(from, mBuffer.length() - str.length() + 1);
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.hippo.ehviewer.EhDB;
+import com.hippo.ehviewer.Settings;
 import com.hippo.ehviewer.client.data.GalleryInfo;
 import com.hippo.ehviewer.dao.DownloadInfo;
 import com.hippo.ehviewer.dao.DownloadLabel;
@@ -53,9 +54,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-public class DownloadManager implements SpiderQueen.OnSpiderListener {
+public class DownloadManager {
 
     private static final String TAG = DownloadManager.class.getSimpleName();
+    private static final int MAX_CONCURRENT_DOWNLOAD = 4;
     private static final Comparator<DownloadInfo> DATE_DESC_COMPARATOR = (lhs, rhs) -> lhs.time - rhs.time > 0 ? -1 : 1;
     private final Context mContext;
     // All download info list
@@ -70,15 +72,12 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     private final LinkedList<DownloadInfo> mDefaultInfoList;
     // Store download info wait to start
     private final LinkedList<DownloadInfo> mWaitList;
-    private final SpeedReminder mSpeedReminder;
+    // Store downloading tasks, in start order
+    private final List<DownloadTask> mActiveTasks;
     private final List<DownloadInfoListener> mDownloadInfoListeners;
     private final ConcurrentPool<NotifyTask> mNotifyTaskPool = new ConcurrentPool<>(5);
     @Nullable
     private DownloadListener mDownloadListener;
-    @Nullable
-    private DownloadInfo mCurrentTask;
-    @Nullable
-    private SpiderQueen mCurrentSpider;
 
     public DownloadManager(Context context) {
         mContext = context;
@@ -126,7 +125,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         }
 
         mWaitList = new LinkedList<>();
-        mSpeedReminder = new SpeedReminder();
+        mActiveTasks = new ArrayList<>();
         mDownloadInfoListeners = new ArrayList<>();
     }
 
@@ -198,19 +197,26 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         mDownloadListener = listener;
     }
 
-    private void ensureDownload() {
-        if (mCurrentTask != null) {
-            // Only one download
-            return;
+    @Nullable
+    private DownloadTask findActiveTask(long gid) {
+        for (DownloadTask task : mActiveTasks) {
+            if (task.mInfo.gid == gid) {
+                return task;
+            }
         }
+        return null;
+    }
 
-        // Get download from wait list
-        if (!mWaitList.isEmpty()) {
+    private void ensureDownload() {
+        int maxCount = MathUtils.clamp(Settings.getConcurrentDownload(), 1, MAX_CONCURRENT_DOWNLOAD);
+
+        // Get download from wait list, in queue order
+        while (mActiveTasks.size() < maxCount && !mWaitList.isEmpty()) {
             DownloadInfo info = mWaitList.removeFirst();
             SpiderQueen spider = SpiderQueen.obtainSpiderQueen(mContext, info, SpiderQueen.MODE_DOWNLOAD);
-            mCurrentTask = info;
-            mCurrentSpider = spider;
-            spider.addOnSpiderListener(this);
+            DownloadTask task = new DownloadTask(info, spider);
+            mActiveTasks.add(task);
+            spider.addOnSpiderListener(task);
             info.state = DownloadInfo.STATE_DOWNLOAD;
             info.speed = -1;
             info.remaining = -1;
@@ -221,7 +227,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
             // Update in DB
             EhDB.putDownloadInfo(info);
             // Start speed count
-            mSpeedReminder.start();
+            task.mSpeedReminder.start();
             // Notify start downloading
             if (mDownloadListener != null) {
                 mDownloadListener.onStart(info);
@@ -237,8 +243,8 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     }
 
     void startDownload(GalleryInfo galleryInfo, @Nullable String label) {
-        if (mCurrentTask != null && mCurrentTask.gid == galleryInfo.gid) {
-            // It is current task
+        if (findActiveTask(galleryInfo.gid) != null) {
+            // It is downloading
             return;
         }
 
@@ -468,13 +474,15 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     }
 
     void stopCurrentDownload() {
-        DownloadInfo info = stopCurrentDownloadInternal();
-        if (info != null) {
+        List<DownloadInfo> infoList = stopActiveDownloadInternal();
+        if (!infoList.isEmpty()) {
             // Update listener
-            List<DownloadInfo> list = getInfoListForLabel(info.label);
-            if (list != null) {
-                for (DownloadInfoListener l : mDownloadInfoListeners) {
-                    l.onUpdate(info, list);
+            for (DownloadInfo info : infoList) {
+                List<DownloadInfo> list = getInfoListForLabel(info.label);
+                if (list != null) {
+                    for (DownloadInfoListener l : mDownloadInfoListeners) {
+                        l.onUpdate(info, list);
+                    }
                 }
             }
             // Ensure download
@@ -503,8 +511,8 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         }
         mWaitList.clear();
 
-        // Stop current
-        stopCurrentDownloadInternal();
+        // Stop downloading
+        stopActiveDownloadInternal();
 
         // Notify mDownloadInfoListener
         for (DownloadInfoListener l : mDownloadInfoListeners) {
@@ -608,7 +616,7 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                     spiderInfo.startPage = 0;
 
                     try {
-                        spiderInfo.write(file.openOutputStream());
+                        spiderInfo.write(file);
                     } catch (IOException e) {
                         Log.e(TAG, "Can't write SpiderInfo", e);
                     }
@@ -622,10 +630,10 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
     // Update listener
     // No ensureDownload
     private DownloadInfo stopDownloadInternal(long gid) {
-        // Check current task
-        if (mCurrentTask != null && mCurrentTask.gid == gid) {
-            // Stop current
-            return stopCurrentDownloadInternal();
+        // Check downloading task
+        DownloadTask task = findActiveTask(gid);
+        if (task != null) {
+            return stopTaskInternal(task);
         }
 
         for (Iterator<DownloadInfo> iterator = mWaitList.iterator(); iterator.hasNext(); ) {
@@ -645,21 +653,21 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
 
     // Update in DB
     // Update mDownloadListener
-    private DownloadInfo stopCurrentDownloadInternal() {
-        DownloadInfo info = mCurrentTask;
-        SpiderQueen spider = mCurrentSpider;
-        // Release spider
-        if (spider != null) {
-            spider.removeOnSpiderListener(DownloadManager.this);
-            SpiderQueen.releaseSpiderQueen(spider, SpiderQueen.MODE_DOWNLOAD);
-        }
-        mCurrentTask = null;
-        mCurrentSpider = null;
-        // Stop speed reminder
-        mSpeedReminder.stop();
-        if (info == null) {
-            return null;
+    private List<DownloadInfo> stopActiveDownloadInternal() {
+        List<DownloadInfo> infoList = new ArrayList<>(mActiveTasks.size());
+        for (DownloadTask task : new ArrayList<>(mActiveTasks)) {
+            infoList.add(stopTaskInternal(task));
         }
+        return infoList;
+    }
+
+    // Update in DB
+    // Update mDownloadListener
+    private DownloadInfo stopTaskInternal(@NonNull DownloadTask task) {
+        DownloadInfo info = task.mInfo;
+        // Release spider
+        task.release();
+        mActiveTasks.remove(task);
 
         // Update state
         info.state = DownloadInfo.STATE_NONE;
@@ -681,10 +689,11 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                 stopDownloadInternal(gidList.get(i));
             }
         } else {
-            // Check current task
-            if (mCurrentTask != null && gidList.contains(mCurrentTask.gid)) {
-                // Stop current
-                stopCurrentDownloadInternal();
+            // Check downloading tasks
+            for (DownloadTask task : new ArrayList<>(mActiveTasks)) {
+                if (gidList.contains(task.mInfo.gid)) {
+                    stopTaskInternal(task);
+                }
             }
 
             // Check all in wait list
@@ -839,78 +848,19 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         }
     }
 
-    boolean isIdle() {
-        return mCurrentTask == null && mWaitList.isEmpty();
-    }
-
-    @Override
-    public void onGetPages(int pages) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
-        }
-        task.setOnGetPagesData(pages);
-        SimpleHandler.getInstance().post(task);
-    }
-
-    @Override
-    public void onGet509(int index) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
-        }
-        task.setOnGet509Data(index);
-        SimpleHandler.getInstance().post(task);
-    }
-
-    @Override
-    public void onPageDownload(int index, long contentLength, long receivedSize, int bytesRead) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
-        }
-        task.setOnPageDownloadData(index, contentLength, receivedSize, bytesRead);
-        SimpleHandler.getInstance().post(task);
-    }
-
-    @Override
-    public void onPageSuccess(int index, int finished, int downloaded, int total) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
-        }
-        task.setOnPageSuccessData(index, finished, downloaded, total);
-        SimpleHandler.getInstance().post(task);
-    }
-
-    @Override
-    public void onPageFailure(int index, String error, int finished, int downloaded, int total) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
-        }
-        task.setOnPageFailureDate(index, error, finished, downloaded, total);
-        SimpleHandler.getInstance().post(task);
-    }
-
-    @Override
-    public void onFinish(int finished, int downloaded, int total) {
-        NotifyTask task = mNotifyTaskPool.pop();
-        if (task == null) {
-            task = new NotifyTask();
+    /**
+     * @return galleries being downloaded now, in start order
+     */
+    List<DownloadInfo> getActiveDownloadInfoList() {
+        List<DownloadInfo> list = new ArrayList<>(mActiveTasks.size());
+        for (DownloadTask task : mActiveTasks) {
+            list.add(task.mInfo);
         }
-        task.setOnFinishDate(finished, downloaded, total);
-        SimpleHandler.getInstance().post(task);
-    }
-
-    @Override
-    public void onGetImageSuccess(int index, Bitmap image) {
-        // Ignore
+        return list;
     }
 
-    @Override
-    public void onGetImageFailure(int index, String error) {
-        // Ignore
+    boolean isIdle() {
+        return mActiveTasks.isEmpty() && mWaitList.isEmpty();
     }
 
 
@@ -987,21 +937,104 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
         void onCancel(DownloadInfo info);
     }
 
+    private class DownloadTask implements SpiderQueen.OnSpiderListener {
+
+        private final DownloadInfo mInfo;
+        private final SpeedReminder mSpeedReminder;
+        @Nullable
+        private SpiderQueen mSpider;
+
+        DownloadTask(DownloadInfo info, SpiderQueen spider) {
+            mInfo = info;
+            mSpider = spider;
+            mSpeedReminder = new SpeedReminder(info);
+        }
+
+        void release() {
+            SpiderQueen spider = mSpider;
+            mSpider = null;
+            if (spider != null) {
+                spider.removeOnSpiderListener(this);
+                SpiderQueen.releaseSpiderQueen(spider, SpiderQueen.MODE_DOWNLOAD);
+            }
+            // Stop speed reminder
+            mSpeedReminder.stop();
+        }
+
+        private NotifyTask obtainNotifyTask() {
+            NotifyTask task = mNotifyTaskPool.pop();
+            if (task == null) {
+                task = new NotifyTask();
+            }
+            task.mTask = this;
+            return task;
+        }
+
+        @Override
+        public void onGetPages(int pages) {
+            NotifyTask task = obtainNotifyTask();
+            task.setOnGetPagesData(pages);
+            SimpleHandler.getInstance().post(task);
+        }
+
+        @Override
+        public void onGet509(int index) {
+            NotifyTask task = obtainNotifyTask();
+            task.setOnGet509Data(index);
+            SimpleHandler.getInstance().post(task);
+        }
+
+        @Override
+        public void onPageDownload(int index, long contentLength, long receivedSize, int bytesRead) {
+            // Progress is already coalesced by the spider and only read by the
+            // speed reminder every two seconds, so it needn't go through main thread
+            mSpeedReminder.onDownload(index, contentLength, receivedSize, bytesRead);
+        }
+
+        @Override
+        public void onPageSuccess(int index, int finished, int downloaded, int total) {
+            NotifyTask task = obtainNotifyTask();
+            task.setOnPageSuccessData(index, finished, downloaded, total);
+            SimpleHandler.getInstance().post(task);
+        }
+
+        @Override
+        public void onPageFailure(int index, String error, int finished, int downloaded, int total) {
+            NotifyTask task = obtainNotifyTask();
+            task.setOnPageFailureDate(index, error, finished, downloaded, total);
+            SimpleHandler.getInstance().post(task);
+        }
+
+        @Override
+        public void onFinish(int finished, int downloaded, int total) {
+            NotifyTask task = obtainNotifyTask();
+            task.setOnFinishDate(finished, downloaded, total);
+            SimpleHandler.getInstance().post(task);
+        }
+
+        @Override
+        public void onGetImageSuccess(int index, Bitmap image) {
+            // Ignore
+        }
+
+        @Override
+        public void onGetImageFailure(int index, String error) {
+            // Ignore
+        }
+    }
+
     private class NotifyTask implements Runnable {
 
         public static final int TYPE_ON_GET_PAGES = 0;
         public static final int TYPE_ON_GET_509 = 1;
-        public static final int TYPE_ON_PAGE_DOWNLOAD = 2;
         public static final int TYPE_ON_PAGE_SUCCESS = 3;
         public static final int TYPE_ON_PAGE_FAILURE = 4;
         public static final int TYPE_ON_FINISH = 5;
 
+        private DownloadTask mTask;
         private int mType;
         private int mPages;
         private int mIndex;
-        private long mContentLength;
-        private long mReceivedSize;
-        private int mBytesRead;
         @SuppressWarnings("unused")
         private String mError;
         private int mFinished;
@@ -1018,14 +1051,6 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
             mIndex = index;
         }
 
-        public void setOnPageDownloadData(int index, long contentLength, long receivedSize, int bytesRead) {
-            mType = TYPE_ON_PAGE_DOWNLOAD;
-            mIndex = index;
-            mContentLength = contentLength;
-            mReceivedSize = receivedSize;
-            mBytesRead = bytesRead;
-        }
-
         public void setOnPageSuccessData(int index, int finished, int downloaded, int total) {
             mType = TYPE_ON_PAGE_SUCCESS;
             mIndex = index;
@@ -1052,18 +1077,25 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
 
         @Override
         public void run() {
+            DownloadTask task = mTask;
+            mTask = null;
+            // The task might be stopped before the event comes
+            if (task != null && mActiveTasks.contains(task)) {
+                handle(task);
+            }
+
+            mNotifyTaskPool.push(this);
+        }
+
+        private void handle(DownloadTask task) {
+            DownloadInfo info = task.mInfo;
             switch (mType) {
                 case TYPE_ON_GET_PAGES: {
-                    DownloadInfo info = mCurrentTask;
-                    if (info == null) {
-                        Log.e(TAG, "Current task is null, but it should not be");
-                    } else {
-                        info.total = mPages;
-                        List<DownloadInfo> list = getInfoListForLabel(info.label);
-                        if (list != null) {
-                            for (DownloadInfoListener l : mDownloadInfoListeners) {
-                                l.onUpdate(info, list);
-                            }
+                    info.total = mPages;
+                    List<DownloadInfo> list = getInfoListForLabel(info.label);
+                    if (list != null) {
+                        for (DownloadInfoListener l : mDownloadInfoListeners) {
+                            l.onUpdate(info, list);
                         }
                     }
                     break;
@@ -1074,68 +1106,41 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                     }
                     break;
                 }
-                case TYPE_ON_PAGE_DOWNLOAD: {
-                    mSpeedReminder.onDownload(mIndex, mContentLength, mReceivedSize, mBytesRead);
-                    break;
-                }
                 case TYPE_ON_PAGE_SUCCESS: {
-                    mSpeedReminder.onDone(mIndex);
-                    DownloadInfo info = mCurrentTask;
-                    if (info == null) {
-                        Log.e(TAG, "Current task is null, but it should not be");
-                    } else {
-                        info.finished = mFinished;
-                        info.downloaded = mDownloaded;
-                        info.total = mTotal;
-                        if (mDownloadListener != null) {
-                            mDownloadListener.onGetPage(info);
-                        }
-                        List<DownloadInfo> list = getInfoListForLabel(info.label);
-                        if (list != null) {
-                            for (DownloadInfoListener l : mDownloadInfoListeners) {
-                                l.onUpdate(info, list);
-                            }
+                    task.mSpeedReminder.onDone(mIndex);
+                    info.finished = mFinished;
+                    info.downloaded = mDownloaded;
+                    info.total = mTotal;
+                    if (mDownloadListener != null) {
+                        mDownloadListener.onGetPage(info);
+                    }
+                    List<DownloadInfo> list = getInfoListForLabel(info.label);
+                    if (list != null) {
+                        for (DownloadInfoListener l : mDownloadInfoListeners) {
+                            l.onUpdate(info, list);
                         }
                     }
                     break;
                 }
                 case TYPE_ON_PAGE_FAILURE: {
-                    mSpeedReminder.onDone(mIndex);
-                    DownloadInfo info = mCurrentTask;
-                    if (info == null) {
-                        Log.e(TAG, "Current task is null, but it should not be");
-                    } else {
-                        info.finished = mFinished;
-                        info.downloaded = mDownloaded;
-                        info.total = mTotal;
-                        List<DownloadInfo> list = getInfoListForLabel(info.label);
-                        if (list != null) {
-                            for (DownloadInfoListener l : mDownloadInfoListeners) {
-                                l.onUpdate(info, list);
-                            }
+                    task.mSpeedReminder.onDone(mIndex);
+                    info.finished = mFinished;
+                    info.downloaded = mDownloaded;
+                    info.total = mTotal;
+                    List<DownloadInfo> list = getInfoListForLabel(info.label);
+                    if (list != null) {
+                        for (DownloadInfoListener l : mDownloadInfoListeners) {
+                            l.onUpdate(info, list);
                         }
                     }
                     break;
                 }
                 case TYPE_ON_FINISH: {
-                    mSpeedReminder.onFinish();
+                    task.mSpeedReminder.onFinish();
                     // Download done
-                    DownloadInfo info = mCurrentTask;
-                    mCurrentTask = null;
-                    SpiderQueen spider = mCurrentSpider;
-                    mCurrentSpider = null;
-                    // Release spider
-                    if (spider != null) {
-                        spider.removeOnSpiderListener(DownloadManager.this);
-                        SpiderQueen.releaseSpiderQueen(spider, SpiderQueen.MODE_DOWNLOAD);
-                    }
-                    // Check null
-                    if (info == null || spider == null) {
-                        Log.e(TAG, "Current stuff is null, but it should not be");
-                        break;
-                    }
-                    // Stop speed count
-                    mSpeedReminder.stop();
+                    mActiveTasks.remove(task);
+                    // Release spider and stop speed count
+                    task.release();
                     // Update state
                     info.finished = mFinished;
                     info.downloaded = mDownloaded;
@@ -1163,19 +1168,24 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                     break;
                 }
             }
-
-            mNotifyTaskPool.push(this);
         }
     }
 
     class SpeedReminder implements Runnable {
 
+        private final DownloadInfo mInfo;
         private final SparseIJArray mContentLengthMap = new SparseIJArray();
         private final SparseIJArray mReceivedSizeMap = new SparseIJArray();
-        private boolean mStop = true;
+        // Written in main thread, progress comes from spider workers
+        private volatile boolean mStop = true;
+        // Guarded by this
         private long mBytesRead;
         private long oldSpeed = -1;
 
+        SpeedReminder(DownloadInfo info) {
+            mInfo = info;
+        }
+
         public void start() {
             if (mStop) {
                 mStop = false;
@@ -1185,36 +1195,46 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
 
         public void stop() {
             if (!mStop) {
-                mStop = true;
-                mBytesRead = 0;
+                synchronized (this) {
+                    mStop = true;
+                    mBytesRead = 0;
+                    mContentLengthMap.clear();
+                    mReceivedSizeMap.clear();
+                }
                 oldSpeed = -1;
-                mContentLengthMap.clear();
-                mReceivedSizeMap.clear();
                 SimpleHandler.getInstance().removeCallbacks(this);
             }
         }
 
-        public void onDownload(int index, long contentLength, long receivedSize, int bytesRead) {
+        public synchronized void onDownload(int index, long contentLength, long receivedSize, int bytesRead) {
+            if (mStop) {
+                return;
+            }
             mContentLengthMap.put(index, contentLength);
             mReceivedSizeMap.put(index, receivedSize);
             mBytesRead += bytesRead;
         }
 
-        public void onDone(int index) {
+        public synchronized void onDone(int index) {
             mContentLengthMap.delete(index);
             mReceivedSizeMap.delete(index);
         }
 
-        public void onFinish() {
+        public synchronized void onFinish() {
             mContentLengthMap.clear();
             mReceivedSizeMap.clear();
         }
 
         @Override
         public void run() {
-            DownloadInfo info = mCurrentTask;
-            if (info != null) {
-                long newSpeed = mBytesRead / 2;
+            DownloadInfo info = mInfo;
+            if (!mStop) {
+                long bytesRead;
+                synchronized (this) {
+                    bytesRead = mBytesRead;
+                    mBytesRead = 0;
+                }
+                long newSpeed = bytesRead / 2;
                 if (oldSpeed != -1) {
                     newSpeed = (long) MathUtils.lerp(oldSpeed, newSpeed, 0.75f);
                 }
@@ -1230,12 +1250,14 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                     int downloadingCount = 0;
                     long downloadingContentLengthSum = 0;
                     long totalSize = 0;
-                    for (int i = 0, n = Math.max(mContentLengthMap.size(), mReceivedSizeMap.size()); i < n; i++) {
-                        long contentLength = mContentLengthMap.valueAt(i);
-                        long receivedSize = mReceivedSizeMap.valueAt(i);
-                        downloadingCount++;
-                        downloadingContentLengthSum += contentLength;
-                        totalSize += contentLength - receivedSize;
+                    synchronized (this) {
+                        for (int i = 0, n = Math.max(mContentLengthMap.size(), mReceivedSizeMap.size()); i < n; i++) {
+                            long contentLength = mContentLengthMap.valueAt(i);
+                            long receivedSize = mReceivedSizeMap.valueAt(i);
+                            downloadingCount++;
+                            downloadingContentLengthSum += contentLength;
+                            totalSize += contentLength - receivedSize;
+                        }
                     }
                     if (downloadingCount != 0) {
                         totalSize += downloadingContentLengthSum * (info.total - info.downloaded - downloadingCount) / downloadingCount;
@@ -1253,8 +1275,6 @@ public class DownloadManager implements SpiderQueen.OnSpiderListener {
                 }
             }
 
-            mBytesRead = 0;
-
             if (!mStop) {
                 SimpleHandler.getInstance().postDelayed(this, 2000);
             }
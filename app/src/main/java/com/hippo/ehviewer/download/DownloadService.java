@@ -48,6 +48,7 @@ import com.hippo.yorozuya.collect.SparseJLArray;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.List;
 
 public class DownloadService extends Service implements DownloadManager.DownloadListener {
 
@@ -312,37 +313,63 @@ public class DownloadService extends Service implements DownloadManager.Download
         PendingIntent piActivity = PendingIntent.getActivity(DownloadService.this, 0,
                 activityIntent, PendingIntent.FLAG_UPDATE_CURRENT);
 
-        mDownloadingBuilder.setContentTitle(EhUtils.getSuitableTitle(info))
-                .setContentText(null)
-                .setSubText(null)
-                .setProgress(0, 0, true)
-                .setContentIntent(piActivity);
+        mDownloadingBuilder.setContentIntent(piActivity);
 
-        mDownloadingDelay.startForeground();
+        onUpdate(info);
     }
 
+    /**
+     * The downloading notification is shared by all active galleries, so it shows their sum
+     */
     private void onUpdate(DownloadInfo info) {
-        if (mNotifyManager == null) {
+        if (mNotifyManager == null || mDownloadManager == null) {
+            return;
+        }
+        List<DownloadInfo> list = mDownloadManager.getActiveDownloadInfoList();
+        if (list.isEmpty()) {
             return;
         }
         ensureDownloadingBuilder();
 
-        long speed = info.speed;
-        if (speed < 0) {
-            speed = 0;
+        long speed = 0;
+        long remaining = -1;
+        int finished = 0;
+        int total = 0;
+        boolean knownTotal = true;
+        for (DownloadInfo i : list) {
+            speed += Math.max(i.speed, 0);
+            // Done when the slowest one is done
+            remaining = Math.max(remaining, i.remaining);
+            if (i.total == -1 || i.finished == -1) {
+                knownTotal = false;
+            } else {
+                finished += i.finished;
+                total += i.total;
+            }
+        }
+
+        String title;
+        if (list.size() == 1) {
+            title = EhUtils.getSuitableTitle(list.get(0));
+        } else {
+            title = getResources().getQuantityString(R.plurals.stat_downloading_title, list.size(), list.size());
         }
         String text = FileUtils.humanReadableByteCount(speed, false) + "/s";
-        long remaining = info.remaining;
         if (remaining >= 0) {
             text = getString(R.string.download_speed_text_2, text, ReadableTime.getShortTimeInterval(remaining));
         } else {
             text = getString(R.string.download_speed_text, text);
         }
-        mDownloadingBuilder.setContentTitle(EhUtils.getSuitableTitle(info))
+        mDownloadingBuilder.setContentTitle(title)
                 .setContentText(text)
-                .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
-                .setSubText(info.total == -1 || info.finished == -1 ? null : info.finished + "/" + info.total)
-                .setProgress(info.total, info.finished, false);
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(text));
+        if (knownTotal) {
+            mDownloadingBuilder.setSubText(finished + "/" + total)
+                    .setProgress(total, finished, false);
+        } else {
+            mDownloadingBuilder.setSubText(null)
+                    .setProgress(0, 0, true);
+        }
 
         mDownloadingDelay.startForeground();
     }
@@ -363,9 +390,7 @@ public class DownloadService extends Service implements DownloadManager.Download
             return;
         }
 
-        if (null != mDownloadingDelay) {
-            mDownloadingDelay.cancel();
-        }
+        updateOrCancelDownloading(info);
 
         ensureDownloadedBuilder();
 
@@ -462,13 +487,24 @@ public class DownloadService extends Service implements DownloadManager.Download
             return;
         }
 
-        if (null != mDownloadingDelay) {
-            mDownloadingDelay.cancel();
-        }
+        updateOrCancelDownloading(info);
 
         checkStopSelf();
     }
 
+    /**
+     * Other galleries may still be downloading
+     */
+    private void updateOrCancelDownloading(DownloadInfo info) {
+        if (mDownloadManager == null || mDownloadManager.isIdle()) {
+            if (null != mDownloadingDelay) {
+                mDownloadingDelay.cancel();
+            }
+        } else {
+            onUpdate(info);
+        }
+    }
+
     private void checkStopSelf() {
         if (mDownloadManager == null || mDownloadManager.isIdle()) {
             stopForeground(true);
@@ -18,7 +18,6 @@ package com.hippo.ehviewer.gallery;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Process;
 
@@ -28,15 +27,23 @@ import androidx.annotation.Nullable;
 import com.duzhaokun123.galleryview.GalleryPageAdapter;
 import com.duzhaokun123.galleryview.GalleryProvider;
 import com.hippo.a7zip.ArchiveException;
+import com.hippo.beerbelly.SimpleDiskCache;
+import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.GetText;
 import com.hippo.ehviewer.R;
+import com.hippo.streampipe.InputStreamPipe;
+import com.hippo.streampipe.OutputStreamPipe;
 import com.hippo.unifile.UniFile;
 import com.hippo.unifile.UniRandomAccessFile;
 import com.hippo.util.NaturalComparator;
+import com.hippo.yorozuya.IOUtils;
 import com.hippo.yorozuya.thread.PriorityThread;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -56,18 +63,30 @@ public class ArchiveGalleryProvider extends GalleryProvider {
             return comparator.compare(o1.getPath(), o2.getPath());
         }
     };
+    // Entries after the last requested one in reading direction extracted to cache in idle time
+    private static final int PREFETCH_COUNT = 3;
+    // Most pages fit in the max capacity, the extractor needn't wait for the decoder
+    private static final int PIPE_INITIAL_CAPACITY = 64 * 1024;
+    private static final int PIPE_MAX_CAPACITY = 4 * 1024 * 1024;
+
     private final UniFile file;
+    // Extracted entries, shared by all archives
+    private final SimpleDiskCache cache;
     private final Stack<Integer> requests = new Stack<>();
     private final AtomicInteger extractingIndex = new AtomicInteger(GalleryPageAdapter.INVALID_INDEX);
+    // Streams to decode, null for reading from cache
     private final LinkedHashMap<Integer, InputStream> streams = new LinkedHashMap<>();
     private final AtomicInteger decodingIndex = new AtomicInteger(GalleryPageAdapter.INVALID_INDEX);
     private Thread archiveThread;
     private Thread decodeThread;
     private volatile int size = 0;
+    // Cache keys of entries, set when the archive is opened
+    private volatile String[] keys;
     private String error;
 
     public ArchiveGalleryProvider(Context context, Uri uri) {
         file = UniFile.fromMediaUri(context, uri);
+        cache = EhApplication.getArchiveCache(context);
     }
 
     @Override
@@ -162,7 +181,54 @@ public class ArchiveGalleryProvider extends GalleryProvider {
         return Integer.toString(index);
     }
 
+    private boolean hasRequest() {
+        synchronized (requests) {
+            return !requests.isEmpty();
+        }
+    }
+
+    private void addStream(int index, @Nullable InputStream stream) {
+        synchronized (streams) {
+            streams.put(index, stream);
+            streams.notify();
+        }
+    }
+
     private class ArchiveTask implements Runnable {
+
+        /**
+         * Extracts the entry to cache, and to the stream if it isn't null.
+         *
+         * @param preemptible true to stop once a request comes
+         */
+        private boolean extract(A7ZipArchive.A7ZipArchiveEntry entry, String key,
+                @Nullable OutputStream stream, boolean preemptible) {
+            OutputStreamPipe pipe = cache.getOutputStreamPipe(key);
+            boolean succeed = false;
+            try {
+                pipe.obtain();
+                OutputStream os = pipe.open();
+                if (preemptible) {
+                    os = new PreemptibleOutputStream(os);
+                }
+                entry.extract(stream != null ? new TeeOutputStream(os, stream) : os);
+                succeed = true;
+            } catch (ArchiveException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                pipe.close();
+                pipe.release();
+                IOUtils.closeQuietly(stream);
+            }
+            if (!succeed) {
+                // Don't keep broken data
+                cache.remove(key);
+            }
+            return succeed;
+        }
+
         @Override
         public void run() {
             UniRandomAccessFile uraf = null;
@@ -194,24 +260,54 @@ public class ArchiveGalleryProvider extends GalleryProvider {
             List<A7ZipArchive.A7ZipArchiveEntry> entries = archive.getArchiveEntries();
             entries.sort(naturalComparator);
 
+            // Entries of a changed archive mustn't hit the cache
+            List<String> paths = new ArrayList<>(entries.size());
+            for (A7ZipArchive.A7ZipArchiveEntry entry : entries) {
+                paths.add(entry.getPath());
+            }
+            String[] keys = ArchivePrefetcher.createKeys(file.getUri().toString(),
+                    file.length(), file.lastModified(), paths);
+            ArchiveGalleryProvider.this.keys = keys;
+
             // Update size and notify changed
             size = entries.size();
             notifyStateChange(State.READY);
 
+            ArchivePrefetcher prefetcher = new ArchivePrefetcher(keys, PREFETCH_COUNT);
             while (!Thread.currentThread().isInterrupted()) {
                 int index;
                 synchronized (requests) {
                     if (requests.isEmpty()) {
-                        try {
-                            requests.wait();
-                        } catch (InterruptedException e) {
-                            // Interrupted
-                            break;
+                        index = GalleryPageAdapter.INVALID_INDEX;
+                    } else {
+                        index = requests.pop();
+                        extractingIndex.lazySet(index);
+                    }
+                }
+
+                if (index == GalleryPageAdapter.INVALID_INDEX) {
+                    // Prefetch entries after the last request, a request stops it
+                    int prefetchIndex = prefetcher.next(cache::contain);
+                    if (prefetchIndex != GalleryPageAdapter.INVALID_INDEX) {
+                        if (!extract(entries.get(prefetchIndex), keys[prefetchIndex], null, true) &&
+                                !hasRequest()) {
+                            // Not preempted, it is broken
+                            prefetcher.onFailed(prefetchIndex);
                         }
                         continue;
                     }
-                    index = requests.pop();
-                    extractingIndex.lazySet(index);
+
+                    synchronized (requests) {
+                        if (requests.isEmpty()) {
+                            try {
+                                requests.wait();
+                            } catch (InterruptedException e) {
+                                // Interrupted
+                                break;
+                            }
+                        }
+                    }
+                    continue;
                 }
 
                 // Check index valid
@@ -220,21 +316,27 @@ public class ArchiveGalleryProvider extends GalleryProvider {
                     notifyPageFailed(index, GetText.getString(R.string.error_out_of_range));
                     continue;
                 }
-
-                Pipe pipe = new Pipe(4 * 1024);
+                prefetcher.onRequest(index);
 
                 synchronized (streams) {
-                    if (streams.get(index) != null) {
+                    if (streams.containsKey(index)) {
+                        extractingIndex.lazySet(GalleryPageAdapter.INVALID_INDEX);
                         continue;
                     }
-                    streams.put(index, pipe.getInputStream());
-                    streams.notify();
                 }
 
+                if (cache.contain(keys[index])) {
+                    // Extracted before, no extraction
+                    addStream(index, null);
+                    extractingIndex.lazySet(GalleryPageAdapter.INVALID_INDEX);
+                    continue;
+                }
+
+                // Decode while extracting, the data is kept in cache too
+                Pipe pipe = new Pipe(PIPE_INITIAL_CAPACITY, PIPE_MAX_CAPACITY);
+                addStream(index, pipe.getInputStream());
                 try {
-                    entries.get(index).extract(pipe.getOutputStream());
-                } catch (ArchiveException e) {
-                    e.printStackTrace();
+                    extract(entries.get(index), keys[index], pipe.getOutputStream(), false);
                 } finally {
                     extractingIndex.lazySet(GalleryPageAdapter.INVALID_INDEX);
                 }
@@ -243,6 +345,26 @@ public class ArchiveGalleryProvider extends GalleryProvider {
     }
 
     private class DecodeTask implements Runnable {
+
+        @Nullable
+        private Bitmap decodeFromCache(int index) {
+            String[] keys = ArchiveGalleryProvider.this.keys;
+            InputStreamPipe pipe = keys != null ? cache.getInputStreamPipe(keys[index]) : null;
+            if (pipe == null) {
+                return null;
+            }
+            try {
+                pipe.obtain();
+                return PageDecoder.decode(pipe.open(), ArchiveGalleryProvider.this);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                pipe.close();
+                pipe.release();
+            }
+        }
+
         @Override
         public void run() {
             while (!Thread.currentThread().isInterrupted()) {
@@ -268,16 +390,94 @@ public class ArchiveGalleryProvider extends GalleryProvider {
                 }
 
                 try {
-                    Bitmap bitmap = BitmapFactory.decodeStream(stream);
+                    Bitmap bitmap;
+                    if (stream != null) {
+                        bitmap = PageDecoder.decode(stream, ArchiveGalleryProvider.this);
+                    } else {
+                        bitmap = decodeFromCache(index);
+                    }
                     if (bitmap != null) {
                         notifyPageSucceed(index, bitmap);
                     } else {
                         notifyPageFailed(index, GetText.getString(R.string.error_decoding_failed));
                     }
                 } finally {
+                    // Let the extractor go on if not all data is read
+                    IOUtils.closeQuietly(stream);
                     decodingIndex.lazySet(GalleryPageAdapter.INVALID_INDEX);
                 }
             }
         }
     }
+
+    /**
+     * Fails the prefetch once a request comes, the requested entry is
+     * extracted first and the prefetched one again later.
+     */
+    private class PreemptibleOutputStream extends OutputStream {
+
+        private final OutputStream mOut;
+
+        PreemptibleOutputStream(OutputStream out) {
+            mOut = out;
+        }
+
+        private void checkRequest() throws IOException {
+            if (hasRequest()) {
+                throw new InterruptedIOException("Preempted by a request");
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkRequest();
+            mOut.write(b);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            checkRequest();
+            mOut.write(b, off, len);
+        }
+    }
+
+    /**
+     * Writes to cache and decoder. The decoder may stop reading early,
+     * then the rest only goes to cache.
+     */
+    private static class TeeOutputStream extends OutputStream {
+
+        private final OutputStream mCache;
+        @Nullable
+        private OutputStream mStream;
+
+        TeeOutputStream(OutputStream cache, OutputStream stream) {
+            mCache = cache;
+            mStream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            mCache.write(b);
+            if (mStream != null) {
+                try {
+                    mStream.write(b);
+                } catch (IOException e) {
+                    mStream = null;
+                }
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            mCache.write(b, off, len);
+            if (mStream != null) {
+                try {
+                    mStream.write(b, off, len);
+                } catch (IOException e) {
+                    mStream = null;
+                }
+            }
+        }
+    }
 }
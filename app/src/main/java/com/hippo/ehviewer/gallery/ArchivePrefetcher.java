@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.gallery;
+
+import androidx.annotation.NonNull;
+
+import com.duzhaokun123.galleryview.GalleryPageAdapter;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cache keys of archive entries and the entries to extract ahead of the reader.
+ * <p>
+ * A key carries the uri, length and last modified time of the archive, so
+ * entries of a changed archive never hit the cache. Entries are prefetched
+ * from the last requested one in reading direction, which turns after
+ * {@link #TURN_MOVES} requests the other way in a row.
+ */
+final class ArchivePrefetcher {
+
+    // Requests against the direction in a row that turn it
+    static final int TURN_MOVES = 2;
+
+    interface Cache {
+        boolean contain(String key);
+    }
+
+    private final String[] mKeys;
+    private final int mCount;
+    private int mLastIndex = GalleryPageAdapter.INVALID_INDEX;
+    private int mDirection = 1;
+    private int mOppositeMoves;
+    // Entries failed to prefetch, don't try them again
+    private final Set<Integer> mFailed = new HashSet<>();
+
+    /**
+     * @param count entries to prefetch after the last request
+     */
+    ArchivePrefetcher(@NonNull String[] keys, int count) {
+        mKeys = keys;
+        mCount = count;
+    }
+
+    @NonNull
+    static String[] createKeys(@NonNull String uri, long length, long lastModified, @NonNull List<String> paths) {
+        String prefix = uri + ":" + length + ":" + lastModified + ":";
+        String[] keys = new String[paths.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = prefix + paths.get(i);
+        }
+        return keys;
+    }
+
+    void onRequest(int index) {
+        if (mLastIndex != GalleryPageAdapter.INVALID_INDEX && index != mLastIndex) {
+            int direction = index > mLastIndex ? 1 : -1;
+            if (direction == mDirection) {
+                mOppositeMoves = 0;
+            } else if (++mOppositeMoves >= TURN_MOVES) {
+                mDirection = direction;
+                mOppositeMoves = 0;
+            }
+        }
+        mLastIndex = index;
+    }
+
+    void onFailed(int index) {
+        mFailed.add(index);
+    }
+
+    /**
+     * @return the nearest entry to prefetch in reading direction,
+     * {@link GalleryPageAdapter#INVALID_INDEX} for none
+     */
+    int next(@NonNull Cache cache) {
+        if (mLastIndex == GalleryPageAdapter.INVALID_INDEX) {
+            return GalleryPageAdapter.INVALID_INDEX;
+        }
+        for (int i = 1; i <= mCount; i++) {
+            int index = mLastIndex + i * mDirection;
+            if (index < 0 || index >= mKeys.length) {
+                break;
+            }
+            if (!mFailed.contains(index) && !cache.contain(mKeys[index])) {
+                return index;
+            }
+        }
+        return GalleryPageAdapter.INVALID_INDEX;
+    }
+}
@@ -17,7 +17,6 @@
 package com.hippo.ehviewer.gallery;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Process;
 import android.util.Log;
 
@@ -254,8 +253,9 @@ public class DirGalleryProvider extends GalleryProvider implements Runnable {
 
             InputStream is = null;
             try {
-                is = files[index].openInputStream();
-                Bitmap image = BitmapFactory.decodeStream(is);
+                UniFile file = files[index];
+                is = file.openInputStream();
+                Bitmap image = PageDecoder.decode(is, file::openInputStream, this);
                 mDecodingIndex.lazySet(GalleryPageAdapter.INVALID_INDEX);
                 if (image != null) {
                     notifyPageSucceed(index, image);
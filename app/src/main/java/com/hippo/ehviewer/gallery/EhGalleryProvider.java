@@ -47,6 +47,7 @@ public class EhGalleryProvider extends GalleryProvider implements SpiderQueen.On
     public void start() {
         mSpiderQueen = SpiderQueen.obtainSpiderQueen(mContext, mGalleryInfo, SpiderQueen.MODE_READ);
         mSpiderQueen.addOnSpiderListener(this);
+        mSpiderQueen.setDecodeTarget(this);
 
         if (getSize() > 0)
             notifyStateChange(State.READY);
@@ -56,6 +57,7 @@ public class EhGalleryProvider extends GalleryProvider implements SpiderQueen.On
     public void stop() {
         if (mSpiderQueen != null) {
             mSpiderQueen.removeOnSpiderListener(this);
+            mSpiderQueen.removeDecodeTarget(this);
             // Activity recreate may called, so wait 3000s
             SimpleHandler.getInstance().postDelayed(new ReleaseTask(mSpiderQueen), 3000);
             mSpiderQueen = null;
@@ -115,6 +117,14 @@ public class EhGalleryProvider extends GalleryProvider implements SpiderQueen.On
         }
     }
 
+    @Override
+    public void setCurrentIndex(int index) {
+        super.setCurrentIndex(index);
+        if (mSpiderQueen != null) {
+            mSpiderQueen.setReadingIndex(index);
+        }
+    }
+
     @Override
     public int getSize() {
         if (mSpiderQueen != null) {
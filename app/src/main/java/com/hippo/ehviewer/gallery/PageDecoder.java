@@ -0,0 +1,185 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.gallery;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.duzhaokun123.galleryview.BitmapPool;
+import com.duzhaokun123.galleryview.GalleryProvider;
+import com.duzhaokun123.galleryview.GalleryView;
+import com.hippo.yorozuya.IOUtils;
+import com.hippo.yorozuya.MathUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes gallery pages no larger than the reader shows them.
+ * <p>
+ * The bounds are read first, then the page is downsampled to the viewport
+ * of the {@link GalleryProvider} with its scale mode. Only one pass over the
+ * stream is needed, so it also works for streams which can't be reopened.
+ * Pages with headers too large to be read twice are opened again if they can be.
+ */
+public final class PageDecoder {
+
+    // Enough for most image headers, BufferedInputStream only grows to what is read
+    private static final int MARK_LIMIT = 1024 * 1024;
+
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+
+    private PageDecoder() {
+    }
+
+    /**
+     * Opens the page again
+     */
+    public interface Reopener {
+        @NonNull
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * @param provider null for decoding in full size
+     * @return null for failed
+     */
+    @Nullable
+    public static Bitmap decode(@NonNull InputStream is, @Nullable GalleryProvider provider) {
+        return decode(is, null, provider);
+    }
+
+    /**
+     * @param reopener null if the page can't be opened again,
+     *                 then everything read for the bounds is kept in memory
+     * @param provider null for decoding in full size
+     * @return null for failed
+     */
+    @Nullable
+    public static Bitmap decode(@NonNull InputStream is, @Nullable Reopener reopener,
+                                @Nullable GalleryProvider provider) {
+        if (provider != null) {
+            return decode(is, reopener, provider.getViewportWidth(), provider.getViewportHeight(),
+                    provider.getScaleMode(), provider.getAllowHardwareBitmap(), provider.getBitmapPool());
+        } else {
+            return decode(is, reopener, 0, 0, GalleryView.SCALE_ORIGIN, true, null);
+        }
+    }
+
+    /**
+     * @param reopener       null if the page can't be opened again
+     * @param viewportWidth  0 for unknown
+     * @param viewportHeight 0 for unknown
+     * @param pool           bitmaps to decode into, only used for software bitmaps
+     * @return null for failed
+     */
+    @Nullable
+    public static Bitmap decode(@NonNull InputStream is, @Nullable Reopener reopener,
+                                int viewportWidth, int viewportHeight,
+                                @GalleryView.ScaleMode int scaleMode, boolean allowHardware, @Nullable BitmapPool pool) {
+        if (!is.markSupported()) {
+            is = new BufferedInputStream(is);
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        is.mark(reopener != null ? MARK_LIMIT : Integer.MAX_VALUE);
+        BitmapFactory.decodeStream(is, null, options);
+
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        InputStream reopened = null;
+        try {
+            is.reset();
+        } catch (IOException e) {
+            // Header is too large, the bounds are still right
+            if (reopener == null) {
+                return null;
+            }
+            try {
+                is = reopened = reopener.open();
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateSampleSize(width, height, viewportWidth, viewportHeight, scaleMode);
+        if (allowHardware) {
+            options.inPreferredConfig = Bitmap.Config.HARDWARE;
+        } else {
+            // JPEG has no alpha
+            options.inPreferredConfig = MIME_TYPE_JPEG.equals(options.outMimeType) ?
+                    Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            options.inMutable = true;
+            if (pool != null) {
+                options.inBitmap = pool.get(MathUtils.ceilDivide(width, options.inSampleSize),
+                        MathUtils.ceilDivide(height, options.inSampleSize), options.inPreferredConfig);
+            }
+        }
+
+        try {
+            return BitmapFactory.decodeStream(is, null, options);
+        } catch (IllegalArgumentException | OutOfMemoryError e) {
+            // Can't decode into inBitmap or too large
+            return null;
+        } finally {
+            IOUtils.closeQuietly(reopened);
+        }
+    }
+
+    /**
+     * @return the largest power of 2 which keeps the page no smaller than it is shown
+     */
+    public static int calculateSampleSize(int width, int height, int viewportWidth, int viewportHeight,
+                                          @GalleryView.ScaleMode int scaleMode) {
+        if (width <= 0 || height <= 0 || viewportWidth <= 0 || viewportHeight <= 0) {
+            return 1;
+        }
+
+        float scale;
+        switch (scaleMode) {
+            case GalleryView.SCALE_FIT:
+                scale = Math.min((float) viewportWidth / width, (float) viewportHeight / height);
+                break;
+            case GalleryView.SCALE_FIT_WIDTH:
+                scale = (float) viewportWidth / width;
+                break;
+            case GalleryView.SCALE_FIT_HEIGHT:
+                scale = (float) viewportHeight / height;
+                break;
+            case GalleryView.SCALE_ORIGIN:
+            case GalleryView.SCALE_FIXED:
+            default:
+                return 1;
+        }
+
+        int sampleSize = 1;
+        while (scale * sampleSize * 2 <= 1.0f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -21,75 +21,92 @@ import androidx.annotation.NonNull;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A byte channel between one writer thread and one reader thread.
+ * <p>
+ * The ring buffer starts small and doubles up to the max capacity when the
+ * writer finds it full, so a fast writer isn't held by a slow reader for
+ * small entries. A side is only signalled when it is waiting.
+ */
 class Pipe {
 
-    private final int capacity;
-    private final byte[] buffer;
+    private final int maxCapacity;
+    private byte[] buffer;
 
     private int head = 0;
-    private int tail = 0;
-    private boolean full = false;
+    private int count = 0;
 
     private boolean inClosed = false;
     private boolean outClosed = false;
 
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private boolean readerWaiting = false;
+    private boolean writerWaiting = false;
+
     private final InputStream inputStream = new InputStream() {
         @Override
         public int read() throws IOException {
-            synchronized (Pipe.this) {
-                byte[] bytes = new byte[1];
-                if (read(bytes, 0, 1) != -1) {
-                    return bytes[0];
-                } else {
+            lock.lock();
+            try {
+                if (!awaitData()) {
                     return -1;
                 }
+                int b = buffer[head] & 0xFF;
+                head = (head + 1) % buffer.length;
+                count--;
+                signalWriter();
+                return b;
+            } finally {
+                lock.unlock();
             }
         }
 
         @Override
         public int read(@NonNull byte[] b, int off, int len) throws IOException {
-            synchronized (Pipe.this) {
-                for (; ; ) {
-                    if (inClosed) {
-                        throw new IOException("The InputStream is closed");
-                    }
-                    if (len == 0) {
-                        return 0;
-                    }
-
-                    if (head == tail && !full) {
-                        if (outClosed) {
-                            // No bytes available and the OutputStream is closed. So it's the end.
-                            return -1;
-                        } else {
-                            // Wait for OutputStream write bytes
-                            try {
-                                Pipe.this.wait();
-                            } catch (InterruptedException e) {
-                                throw new IOException("The thread interrupted", e);
-                            }
-                        }
-                    } else {
-                        int read = Math.min(len, (head < tail ? tail : capacity) - head);
-                        System.arraycopy(buffer, head, b, off, read);
-                        head += read;
-                        if (head == capacity) {
-                            head = 0;
-                        }
-                        full = false;
-                        Pipe.this.notifyAll();
-                        return read;
-                    }
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                if (!awaitData()) {
+                    return -1;
                 }
+                int read = Math.min(len, count);
+                int first = Math.min(read, buffer.length - head);
+                System.arraycopy(buffer, head, b, off, first);
+                System.arraycopy(buffer, 0, b, off + first, read - first);
+                head = (head + read) % buffer.length;
+                count -= read;
+                signalWriter();
+                return read;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
             }
         }
 
         @Override
         public void close() {
-            synchronized (Pipe.this) {
+            lock.lock();
+            try {
                 inClosed = true;
-                Pipe.this.notifyAll();
+                signalWriter();
+            } finally {
+                lock.unlock();
             }
         }
     };
@@ -97,60 +114,57 @@ class Pipe {
     private final OutputStream outputStream = new OutputStream() {
         @Override
         public void write(int b) throws IOException {
-            synchronized (Pipe.this) {
-                byte[] bytes = new byte[]{(byte) b};
-                write(bytes, 0, 1);
+            lock.lock();
+            try {
+                awaitSpace();
+                buffer[(head + count) % buffer.length] = (byte) b;
+                count++;
+                signalReader();
+            } finally {
+                lock.unlock();
             }
         }
 
         @Override
         public void write(@NonNull byte[] b, int off, int len) throws IOException {
-            synchronized (Pipe.this) {
+            lock.lock();
+            try {
                 while (len != 0) {
-                    if (outClosed) {
-                        throw new IOException("The OutputStream is closed");
-                    }
-                    if (inClosed) {
-                        throw new IOException("The InputStream is closed");
-                    }
-
-                    if (head == tail && full) {
-                        // The buffer is full, wait for InputStream read bytes
-                        try {
-                            Pipe.this.wait();
-                        } catch (InterruptedException e) {
-                            throw new IOException("The thread interrupted", e);
-                        }
-                    } else {
-                        int write = Math.min(len, (head <= tail ? capacity : head) - tail);
-                        System.arraycopy(b, off, buffer, tail, write);
-                        off += write;
-                        len -= write;
-                        tail += write;
-                        if (tail == capacity) {
-                            tail = 0;
-                        }
-                        if (head == tail) {
-                            full = true;
-                        }
-                        Pipe.this.notifyAll();
-                    }
+                    awaitSpace();
+                    int tail = (head + count) % buffer.length;
+                    int write = Math.min(len, buffer.length - count);
+                    int first = Math.min(write, buffer.length - tail);
+                    System.arraycopy(b, off, buffer, tail, first);
+                    System.arraycopy(b, off + first, buffer, 0, write - first);
+                    off += write;
+                    len -= write;
+                    count += write;
+                    signalReader();
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
         @Override
         public void close() {
-            synchronized (Pipe.this) {
+            lock.lock();
+            try {
                 outClosed = true;
-                Pipe.this.notifyAll();
+                signalReader();
+            } finally {
+                lock.unlock();
             }
         }
     };
 
-    Pipe(int capacity) {
-        this.capacity = capacity;
-        this.buffer = new byte[capacity];
+    /**
+     * @param initialCapacity buffer size at first
+     * @param maxCapacity     the buffer never grows larger
+     */
+    Pipe(int initialCapacity, int maxCapacity) {
+        this.maxCapacity = Math.max(initialCapacity, maxCapacity);
+        this.buffer = new byte[initialCapacity];
     }
 
     InputStream getInputStream() {
@@ -160,4 +174,82 @@ class Pipe {
     OutputStream getOutputStream() {
         return outputStream;
     }
+
+    /**
+     * @return false for the end
+     */
+    private boolean awaitData() throws IOException {
+        while (true) {
+            if (inClosed) {
+                throw new IOException("The InputStream is closed");
+            }
+            if (count != 0) {
+                return true;
+            }
+            if (outClosed) {
+                // No bytes available and the OutputStream is closed. So it's the end.
+                return false;
+            }
+            // Wait for OutputStream write bytes
+            readerWaiting = true;
+            try {
+                notEmpty.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("The thread interrupted", e);
+            } finally {
+                readerWaiting = false;
+            }
+        }
+    }
+
+    private void awaitSpace() throws IOException {
+        while (true) {
+            if (outClosed) {
+                throw new IOException("The OutputStream is closed");
+            }
+            if (inClosed) {
+                throw new IOException("The InputStream is closed");
+            }
+            if (count != buffer.length) {
+                return;
+            }
+            if (buffer.length < maxCapacity) {
+                grow();
+                return;
+            }
+            // The buffer is full, wait for InputStream read bytes
+            writerWaiting = true;
+            try {
+                notFull.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("The thread interrupted", e);
+            } finally {
+                writerWaiting = false;
+            }
+        }
+    }
+
+    private void grow() {
+        byte[] newBuffer = new byte[Math.min(buffer.length * 2, maxCapacity)];
+        // The buffer is full, unwrap it from head
+        int first = buffer.length - head;
+        System.arraycopy(buffer, head, newBuffer, 0, first);
+        System.arraycopy(buffer, 0, newBuffer, first, head);
+        buffer = newBuffer;
+        head = 0;
+    }
+
+    private void signalReader() {
+        if (readerWaiting) {
+            notEmpty.signal();
+        }
+    }
+
+    private void signalWriter() {
+        if (writerWaiting) {
+            notFull.signal();
+        }
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The byte range of a {@code 206 Partial Content} response, parsed from
+ * {@code Content-Range: bytes <start>-<end>/<total>}.
+ */
+final class ContentRange {
+
+    final long start;
+    final long end;
+    // -1 for unknown
+    final long total;
+
+    private ContentRange(long start, long end, long total) {
+        this.start = start;
+        this.end = end;
+        this.total = total;
+    }
+
+    /**
+     * @return null if the header is missing or malformed
+     */
+    @Nullable
+    static ContentRange parse(@Nullable String header) {
+        if (header == null) {
+            return null;
+        }
+        header = header.trim();
+        if (!header.regionMatches(true, 0, "bytes ", 0, 6)) {
+            return null;
+        }
+        int dash = header.indexOf('-', 6);
+        int slash = header.indexOf('/', dash + 1);
+        if (dash < 0 || slash < 0) {
+            return null;
+        }
+        try {
+            long start = Long.parseLong(header.substring(6, dash).trim());
+            long end = Long.parseLong(header.substring(dash + 1, slash).trim());
+            String totalString = header.substring(slash + 1).trim();
+            long total = "*".equals(totalString) ? -1 : Long.parseLong(totalString);
+            if (start < 0 || end < start || (total >= 0 && end >= total)) {
+                return null;
+            }
+            return new ContentRange(start, end, total);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
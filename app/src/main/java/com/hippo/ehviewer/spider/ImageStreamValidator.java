@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Checks image data while it is downloaded, so it needn't be read again.
+ * <p>
+ * The first bytes must be the magic of JPEG, PNG, GIF or WebP. If a hash
+ * prefix is given, the SHA-1 of the whole data must start with it.
+ */
+class ImageStreamValidator {
+
+    static final int HEADER_SIZE = 12;
+
+    private static final byte[] MAGIC_JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] MAGIC_PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] MAGIC_GIF87A = {'G', 'I', 'F', '8', '7', 'a'};
+    private static final byte[] MAGIC_GIF89A = {'G', 'I', 'F', '8', '9', 'a'};
+    private static final byte[] MAGIC_RIFF = {'R', 'I', 'F', 'F'};
+    private static final byte[] MAGIC_WEBP = {'W', 'E', 'B', 'P'};
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final byte[] mHeader = new byte[HEADER_SIZE];
+    private int mHeaderLength;
+    private boolean mInvalid;
+    @Nullable
+    private final String mHashPrefix;
+    @Nullable
+    private final MessageDigest mDigest;
+
+    /**
+     * @param hashPrefix lowercase hex prefix of the SHA-1 of the data, null for no hash check
+     */
+    ImageStreamValidator(@Nullable String hashPrefix) {
+        MessageDigest digest = null;
+        if (hashPrefix != null) {
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                // Skip hash check
+            }
+        }
+        mHashPrefix = digest != null ? hashPrefix.toLowerCase(Locale.US) : null;
+        mDigest = digest;
+    }
+
+    /**
+     * Call it before the data is written.
+     *
+     * @return false if the data is known not to be an image
+     */
+    boolean update(@NonNull byte[] data, int offset, int length) {
+        if (mInvalid) {
+            return false;
+        }
+
+        if (mHeaderLength < HEADER_SIZE) {
+            int n = Math.min(HEADER_SIZE - mHeaderLength, length);
+            System.arraycopy(data, offset, mHeader, mHeaderLength, n);
+            mHeaderLength += n;
+            if (mHeaderLength == HEADER_SIZE && !isImageHeader(mHeader)) {
+                mInvalid = true;
+                return false;
+            }
+        }
+
+        if (mDigest != null) {
+            mDigest.update(data, offset, length);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if all data is an image with the expected hash
+     */
+    boolean finish() {
+        if (mInvalid || mHeaderLength < HEADER_SIZE) {
+            return false;
+        }
+        if (mDigest != null && mHashPrefix != null) {
+            return toHex(mDigest.digest()).startsWith(mHashPrefix);
+        }
+        return true;
+    }
+
+    static boolean isImageHeader(@NonNull byte[] header) {
+        return startsWith(header, 0, MAGIC_JPEG) ||
+                startsWith(header, 0, MAGIC_PNG) ||
+                startsWith(header, 0, MAGIC_GIF87A) ||
+                startsWith(header, 0, MAGIC_GIF89A) ||
+                (startsWith(header, 0, MAGIC_RIFF) && startsWith(header, 8, MAGIC_WEBP));
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (data.length < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Hands pTokens to the workers waiting for them.
+ * <p>
+ * A worker missing a pToken waits in {@link #waitPToken(SpiderInfo, int)} and
+ * the index goes to queen, which calls {@link #requestPTokens(SpiderInfo, int)}
+ * with it. A task fetches the preview page of the index, the ones after it are
+ * prefetched, then the task gets the pTokens still waited in its preview page
+ * one by one. Each waiter is resolved by the task of the preview page it was
+ * sent to, or sent back to queen if that task is gone.
+ */
+final class PTokenScheduler {
+
+    private static final String TAG = PTokenScheduler.class.getSimpleName();
+    private static final boolean DEBUG_LOG = false;
+
+    interface Fetcher {
+
+        /**
+         * Reads the pTokens in the preview page and puts them with
+         * {@link #putPToken(SpiderInfo, int, String)}.
+         *
+         * @return false if the preview page can't be read
+         */
+        boolean fetchPreviewPage(@NonNull SpiderInfo spiderInfo, int previewIndex);
+
+        /**
+         * Gets the pToken of the index the preview page doesn't have,
+         * it is put by the caller.
+         *
+         * @return null if failed
+         */
+        @Nullable
+        String fetchPToken(@NonNull SpiderInfo spiderInfo, int index);
+    }
+
+    // Guards pTokenMap, pages, previewPages and previewPerPage of SpiderInfo
+    final Object lock = new Object();
+
+    private final Fetcher mFetcher;
+    private final Executor mExecutor;
+    private final int mPrefetchPages;
+    // Indexes whose pToken is missing, taken by queen
+    private final BlockingQueue<Integer> mRequestQueue = new LinkedBlockingQueue<>();
+    // Futures of the pTokens waited by workers, guarded by lock
+    private final SparseArray<CompletableFuture<String>> mWaiters = new SparseArray<>();
+    // Preview page each waited index is dispatched to, guarded by lock.
+    // previewPerPage may change, so it is not computed again.
+    private final SparseIntArray mWaiterPreviews = new SparseIntArray();
+    // Preview pages being fetched, guarded by lock
+    private final Set<Integer> mFetchingPreviewPages = new HashSet<>();
+
+    /**
+     * @param executor runs the preview page tasks
+     * @param prefetchPages preview pages fetched after the one requested
+     */
+    PTokenScheduler(@NonNull Fetcher fetcher, @NonNull Executor executor, int prefetchPages) {
+        mFetcher = fetcher;
+        mExecutor = executor;
+        mPrefetchPages = prefetchPages;
+    }
+
+    // Must hold lock
+    static int getPreviewIndex(SpiderInfo spiderInfo, int index) {
+        int previewIndex;
+        if (spiderInfo.previewPerPage > 0) {
+            previewIndex = index / spiderInfo.previewPerPage;
+        } else {
+            previewIndex = 0;
+        }
+        if (spiderInfo.previewPages > 0) {
+            previewIndex = Math.min(previewIndex, spiderInfo.previewPages - 1);
+        }
+        return previewIndex;
+    }
+
+    // Must hold lock
+    private static boolean hasAllPTokens(SpiderInfo spiderInfo, int previewIndex) {
+        if (spiderInfo.previewPerPage <= 0) {
+            return false;
+        }
+        int start = previewIndex * spiderInfo.previewPerPage;
+        int end = Math.min(start + spiderInfo.previewPerPage, spiderInfo.pages);
+        for (int i = start; i < end; i++) {
+            if (spiderInfo.pTokenMap.get(i) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Must hold lock, wakes the workers waiting for the index
+    void putPToken(SpiderInfo spiderInfo, int index, String pToken) {
+        spiderInfo.pTokenMap.put(index, pToken);
+        CompletableFuture<String> future = mWaiters.get(index);
+        if (future != null) {
+            mWaiters.remove(index);
+            future.complete(pToken);
+        }
+        mWaiterPreviews.delete(index);
+    }
+
+    /**
+     * Waits for the index sent to queen by a worker.
+     */
+    int takeRequest() throws InterruptedException {
+        return mRequestQueue.take();
+    }
+
+    /**
+     * Fetches the preview page of the index and the ones after it, skips the ones being fetched.
+     * The task of the preview page of the index resolves its waiter.
+     */
+    void requestPTokens(SpiderInfo spiderInfo, int index) {
+        synchronized (lock) {
+            if (spiderInfo.pTokenMap.get(index) != null) {
+                return;
+            }
+
+            int previewIndex = getPreviewIndex(spiderInfo, index);
+            int lastPreviewIndex = previewIndex;
+            if (spiderInfo.previewPerPage > 0 && spiderInfo.previewPages > 0) {
+                lastPreviewIndex = Math.max(previewIndex,
+                        Math.min(previewIndex + mPrefetchPages, spiderInfo.previewPages - 1));
+            }
+
+            if (mWaiters.get(index) != null) {
+                mWaiterPreviews.put(index, previewIndex);
+            }
+            for (int i = previewIndex; i <= lastPreviewIndex; i++) {
+                if ((i == previewIndex || !hasAllPTokens(spiderInfo, i)) && mFetchingPreviewPages.add(i)) {
+                    mExecutor.execute(new PTokenTask(spiderInfo, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the pToken of the index.
+     *
+     * @return null if interrupted
+     */
+    @Nullable
+    String waitPToken(SpiderInfo spiderInfo, int index) {
+        CompletableFuture<String> future;
+        synchronized (lock) {
+            String pToken = spiderInfo.pTokenMap.get(index);
+            if (pToken != null) {
+                return pToken;
+            }
+            future = mWaiters.get(index);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                mWaiters.put(index, future);
+            }
+        }
+
+        // Queen takes it
+        mRequestQueue.add(index);
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            if (DEBUG_LOG) {
+                Log.d(TAG, Thread.currentThread().getName() + " Interrupted");
+            }
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // Never completed exceptionally
+            return null;
+        }
+    }
+
+    /**
+     * Fetches a preview page, then gets the pTokens still waited in it in other ways.
+     */
+    private class PTokenTask implements Runnable {
+
+        private final SpiderInfo mInfo;
+        private final int mPreviewIndex;
+
+        public PTokenTask(SpiderInfo spiderInfo, int previewIndex) {
+            mInfo = spiderInfo;
+            mPreviewIndex = previewIndex;
+        }
+
+        // Must hold lock
+        private List<Integer> getWaitingIndexes() {
+            List<Integer> list = new ArrayList<>();
+            for (int i = 0, n = mWaiterPreviews.size(); i < n; i++) {
+                int index = mWaiterPreviews.keyAt(i);
+                if (mWaiterPreviews.valueAt(i) == mPreviewIndex &&
+                        mInfo.pTokenMap.get(index) == null) {
+                    list.add(index);
+                }
+            }
+            return list;
+        }
+
+        // Must hold lock, sends the waiters no task resolves back to queen
+        private void requeueOrphanWaiters() {
+            for (int i = 0, n = mWaiters.size(); i < n; i++) {
+                int index = mWaiters.keyAt(i);
+                int previewIndex = mWaiterPreviews.get(index, -1);
+                if (previewIndex == -1 || !mFetchingPreviewPages.contains(previewIndex)) {
+                    mRequestQueue.add(index);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            SpiderInfo spiderInfo = mInfo;
+            mFetcher.fetchPreviewPage(spiderInfo, mPreviewIndex);
+
+            while (true) {
+                List<Integer> indexes;
+                synchronized (lock) {
+                    indexes = getWaitingIndexes();
+                    if (indexes.isEmpty() || Thread.currentThread().isInterrupted()) {
+                        mFetchingPreviewPages.remove(mPreviewIndex);
+                        requeueOrphanWaiters();
+                        return;
+                    }
+                }
+
+                for (int index : indexes) {
+                    String pToken = mFetcher.fetchPToken(spiderInfo, index);
+                    if (null == pToken) {
+                        // If failed, set the pToken "failed"
+                        pToken = SpiderInfo.TOKEN_FAILED;
+                    }
+                    synchronized (lock) {
+                        putPToken(spiderInfo, index, pToken);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pages for the workers of a gallery. Force requests are taken first, then requests,
+ * then preloads, at last the download cursor. Requests of the same priority are in order.
+ * <p>
+ * Any number of workers can poll it at the same time, nothing is locked while
+ * a worker takes the download cursor.
+ */
+class PageRequestQueue {
+
+    private static final int PRIORITY_FORCE = 0;
+    private static final int PRIORITY_REQUEST = 1;
+    private static final int PRIORITY_PRELOAD = 2;
+    private static final int PRIORITY_DOWNLOAD = 3;
+
+    private final PriorityBlockingQueue<Request> mQueue = new PriorityBlockingQueue<>();
+    private final AtomicLong mSequence = new AtomicLong();
+    // Next page to download, -1 for not in download mode
+    private final AtomicInteger mDownloadPage = new AtomicInteger(-1);
+
+    void addForce(int index) {
+        mQueue.add(new Request(index, PRIORITY_FORCE, mSequence.getAndIncrement()));
+    }
+
+    void add(int index) {
+        mQueue.add(new Request(index, PRIORITY_REQUEST, mSequence.getAndIncrement()));
+    }
+
+    /**
+     * Replaces all preloads.
+     */
+    void setPreloads(@NonNull List<Integer> indexes) {
+        mQueue.removeIf(r -> r.priority == PRIORITY_PRELOAD);
+        for (int index : indexes) {
+            mQueue.add(new Request(index, PRIORITY_PRELOAD, mSequence.getAndIncrement()));
+        }
+    }
+
+    /**
+     * Removes requests of the index, force requests and preloads are kept.
+     */
+    void cancel(int index) {
+        mQueue.removeIf(r -> r.priority == PRIORITY_REQUEST && r.index == index);
+    }
+
+    /**
+     * @return true if it is not in download mode before
+     */
+    boolean startDownload() {
+        return mDownloadPage.compareAndSet(-1, 0);
+    }
+
+    void stopDownload() {
+        mDownloadPage.set(-1);
+    }
+
+    /**
+     * @param size pages of the gallery
+     */
+    boolean hasRequest(int size) {
+        int page = mDownloadPage.get();
+        return !mQueue.isEmpty() || (page >= 0 && page < size);
+    }
+
+    /**
+     * @param size pages of the gallery
+     * @return null if there is no request. The index of a request may be invalid.
+     */
+    @Nullable
+    Request poll(int size) {
+        Request request = mQueue.poll();
+        if (request != null) {
+            return request;
+        }
+
+        while (true) {
+            int page = mDownloadPage.get();
+            if (page < 0 || page >= size) {
+                return null;
+            }
+            if (mDownloadPage.compareAndSet(page, page + 1)) {
+                return new Request(page, PRIORITY_DOWNLOAD, 0);
+            }
+        }
+    }
+
+    static final class Request implements Comparable<Request> {
+
+        final int index;
+        private final int priority;
+        private final long sequence;
+
+        private Request(int index, int priority, long sequence) {
+            this.index = index;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        boolean isForce() {
+            return priority == PRIORITY_FORCE;
+        }
+
+        @Override
+        public int compareTo(Request o) {
+            if (priority != o.priority) {
+                return Integer.compare(priority, o.priority);
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * What is known about the image of a staged partial file: its total length
+ * and the validators the server sent with it. A resumed try only continues
+ * the staged data if they tell it is the same image.
+ */
+final class PartialInfo {
+
+    // -1 for unknown
+    final long total;
+    @Nullable
+    final String etag;
+    @Nullable
+    final String lastModified;
+
+    PartialInfo(long total, @Nullable String etag, @Nullable String lastModified) {
+        this.total = total;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return the value of {@code If-Range}, null if no validator is known
+     */
+    @Nullable
+    String getIfRange() {
+        // Weak entity tags are not allowed in If-Range
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Whether the staged data can be resumed at all.
+     *
+     * @param hashed true if the whole image is checked against its hash when it completes
+     */
+    boolean canResume(boolean hashed) {
+        return hashed || getIfRange() != null || total >= 0;
+    }
+
+    /**
+     * Whether the range of a {@code 206} response continues the staged image.
+     *
+     * @param hashed true if the whole image is checked against its hash when it completes
+     */
+    boolean continues(ContentRange range, boolean hashed) {
+        if (total >= 0 && range.total >= 0) {
+            return total == range.total;
+        }
+        // The length can't tell, only the validator or the hash can
+        return hashed || getIfRange() != null;
+    }
+
+    void write(OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeLong(total);
+        dos.writeUTF(etag != null ? etag : "");
+        dos.writeUTF(lastModified != null ? lastModified : "");
+        dos.flush();
+    }
+
+    static PartialInfo read(InputStream is) throws IOException {
+        DataInputStream dis = new DataInputStream(is);
+        long total = dis.readLong();
+        String etag = dis.readUTF();
+        String lastModified = dis.readUTF();
+        return new PartialInfo(total, etag.isEmpty() ? null : etag,
+                lastModified.isEmpty() ? null : lastModified);
+    }
+}
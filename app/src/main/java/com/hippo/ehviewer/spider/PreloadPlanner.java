@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+/**
+ * Decides which pages to preload around the reading page.
+ * <p>
+ * It follows the reading direction, so reading right-to-left or going back
+ * is preloaded too. The direction turns after {@link #TURN_MOVES} moves the
+ * other way in a row, a single look back keeps the preloaded pages. The
+ * window grows from the preload setting when the reader turns pages faster
+ * than one page can be fetched, the fetch time comes from the measured
+ * throughput and page size. A jump far away from the last page only moves
+ * the window, it doesn't count as a page turn.
+ * <p>
+ * It also counts how often a shown page was already downloaded.
+ */
+final class PreloadPlanner {
+
+    // The window grows up to MAX_WINDOW_FACTOR times the preload setting
+    static final int MAX_WINDOW_FACTOR = 4;
+    static final int MAX_WINDOW = 100;
+    // Moves against the direction in a row that turn it
+    static final int TURN_MOVES = 2;
+    // Longer intervals are pauses, not page turns
+    private static final long MAX_TURN_INTERVAL = 30 * 1000;
+    private static final double SMOOTHING = 0.3;
+
+    private final int mBaseWindow;
+
+    private int mLastIndex = -1;
+    private long mLastShownTime;
+    private int mDirection = 1;
+    private int mOppositeMoves;
+    // Average page turn interval in ms, 0 for unknown
+    private double mTurnInterval;
+    // Average download throughput of a worker in bytes per ms, 0 for unknown
+    private double mThroughput;
+    // Average page size in bytes, 0 for unknown
+    private double mPageSize;
+
+    private int mShownPages;
+    private int mHitPages;
+
+    /**
+     * @param baseWindow preload number in settings, 0 for no preload
+     */
+    PreloadPlanner(int baseWindow) {
+        mBaseWindow = baseWindow;
+    }
+
+    private static double smooth(double average, double sample) {
+        return average <= 0 ? sample : average + (sample - average) * SMOOTHING;
+    }
+
+    /**
+     * @param downloaded true if the page was downloaded before it is shown
+     * @param time uptime in ms
+     */
+    synchronized void onPageShown(int index, boolean downloaded, long time) {
+        if (index == mLastIndex) {
+            return;
+        }
+
+        mShownPages++;
+        if (downloaded) {
+            mHitPages++;
+        }
+
+        if (mLastIndex >= 0) {
+            int delta = index - mLastIndex;
+            if (Math.abs(delta) <= getWindowInternal() + 1) {
+                int direction = delta > 0 ? 1 : -1;
+                if (direction == mDirection) {
+                    mOppositeMoves = 0;
+                } else if (++mOppositeMoves >= TURN_MOVES) {
+                    mDirection = direction;
+                    mOppositeMoves = 0;
+                }
+                long interval = (time - mLastShownTime) / Math.abs(delta);
+                if (interval > 0 && interval < MAX_TURN_INTERVAL) {
+                    mTurnInterval = smooth(mTurnInterval, interval);
+                }
+            }
+        }
+        mLastIndex = index;
+        mLastShownTime = time;
+    }
+
+    /**
+     * @param bytes bytes received by the worker
+     * @param pageSize size of the whole page, more than bytes if the download is resumed
+     * @param duration time in ms the worker spent on them
+     */
+    synchronized void onPageDownloaded(long bytes, long pageSize, long duration) {
+        if (bytes <= 0 || duration <= 0) {
+            return;
+        }
+        mThroughput = smooth(mThroughput, (double) bytes / duration);
+        mPageSize = smooth(mPageSize, Math.max(bytes, pageSize));
+    }
+
+    synchronized int getWindow() {
+        return getWindowInternal();
+    }
+
+    private int getWindowInternal() {
+        if (mBaseWindow <= 0) {
+            return 0;
+        }
+        if (mTurnInterval <= 0 || mThroughput <= 0) {
+            return mBaseWindow;
+        }
+        // Pages turned while one page is fetched, and the page being fetched
+        double fetchTime = mPageSize / mThroughput;
+        int window = (int) Math.ceil(fetchTime / mTurnInterval) + 1;
+        return Math.max(mBaseWindow, Math.min(window, Math.min(mBaseWindow * MAX_WINDOW_FACTOR, MAX_WINDOW)));
+    }
+
+    /**
+     * @param size pages of the gallery
+     * @return pages to preload after the index in reading direction, nearest first,
+     * and the page just behind it
+     */
+    synchronized int[] plan(int index, int size) {
+        int window = getWindowInternal();
+        if (window == 0) {
+            return new int[0];
+        }
+
+        int[] pages = new int[window + 1];
+        int count = 0;
+        for (int i = 1; i <= window; i++) {
+            int page = index + i * mDirection;
+            if (page < 0 || page >= size) {
+                break;
+            }
+            pages[count++] = page;
+        }
+        // Going back a page is common, keep it ready
+        int behind = index - mDirection;
+        if (behind >= 0 && behind < size) {
+            pages[count++] = behind;
+        }
+
+        if (count == pages.length) {
+            return pages;
+        }
+        int[] result = new int[count];
+        System.arraycopy(pages, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @return how often a shown page was downloaded already, -1 for no page shown
+     */
+    synchronized float getHitRate() {
+        return mShownPages == 0 ? -1f : (float) mHitPages / mShownPages;
+    }
+}
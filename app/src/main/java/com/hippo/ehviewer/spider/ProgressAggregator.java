@@ -0,0 +1,138 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the per-read download progress of pages.
+ * <p>
+ * Workers report every read with {@link #update(int, long, long, int)}. Byte
+ * counts are accumulated per page, and at most once a frame one snapshot of
+ * every changed page is published by the worker which crosses the frame
+ * boundary. {@link #flush(int)} publishes the rest of a page before its
+ * success or failure is notified, so no byte is lost and no stale progress
+ * comes after it.
+ */
+final class ProgressAggregator {
+
+    // One frame at 60 fps
+    static final long DEFAULT_INTERVAL_NANOS = 16_666_667L;
+
+    interface Callback {
+
+        /**
+         * @param contentLength -1 for unknown
+         * @param bytesRead bytes read since the last snapshot of the page
+         */
+        void onPageDownload(int index, long contentLength, long receivedSize, int bytesRead);
+    }
+
+    private static final class Progress {
+        private final int index;
+        private long contentLength;
+        private long receivedSize;
+        private int bytesRead;
+        private boolean dirty;
+
+        private Progress(int index) {
+            this.index = index;
+        }
+
+        private Progress snapshot() {
+            Progress snapshot = new Progress(index);
+            snapshot.contentLength = contentLength;
+            snapshot.receivedSize = receivedSize;
+            snapshot.bytesRead = bytesRead;
+            return snapshot;
+        }
+    }
+
+    private final Callback mCallback;
+    private final long mIntervalNanos;
+    // Guarded by itself
+    private final HashMap<Integer, Progress> mProgressMap = new HashMap<>();
+    // Makes snapshots of a page delivered in order
+    private final Object mPublishLock = new Object();
+    private final AtomicLong mNextPublishTime = new AtomicLong(System.nanoTime());
+
+    ProgressAggregator(Callback callback) {
+        this(callback, DEFAULT_INTERVAL_NANOS);
+    }
+
+    ProgressAggregator(Callback callback, long intervalNanos) {
+        mCallback = callback;
+        mIntervalNanos = intervalNanos;
+    }
+
+    void update(int index, long contentLength, long receivedSize, int bytesRead) {
+        synchronized (mProgressMap) {
+            Progress progress = mProgressMap.get(index);
+            if (progress == null) {
+                progress = new Progress(index);
+                mProgressMap.put(index, progress);
+            }
+            progress.contentLength = contentLength;
+            progress.receivedSize = receivedSize;
+            progress.bytesRead += bytesRead;
+            progress.dirty = true;
+        }
+
+        long now = System.nanoTime();
+        long next = mNextPublishTime.get();
+        // Align to frame boundaries, only one worker publishes a frame
+        if (now - next >= 0 && mNextPublishTime.compareAndSet(next, now - Math.floorMod(now, mIntervalNanos) + mIntervalNanos)) {
+            publish();
+        }
+    }
+
+    /**
+     * Publishes the pending progress of the page and forgets it.
+     */
+    void flush(int index) {
+        synchronized (mPublishLock) {
+            Progress progress;
+            synchronized (mProgressMap) {
+                progress = mProgressMap.remove(index);
+            }
+            if (progress != null && progress.dirty) {
+                mCallback.onPageDownload(index, progress.contentLength, progress.receivedSize, progress.bytesRead);
+            }
+        }
+    }
+
+    private void publish() {
+        synchronized (mPublishLock) {
+            List<Progress> snapshots = new ArrayList<>();
+            synchronized (mProgressMap) {
+                for (Progress progress : mProgressMap.values()) {
+                    if (progress.dirty) {
+                        snapshots.add(progress.snapshot());
+                        progress.bytesRead = 0;
+                        progress.dirty = false;
+                    }
+                }
+            }
+            for (Progress snapshot : snapshots) {
+                mCallback.onPageDownload(snapshot.index, snapshot.contentLength, snapshot.receivedSize, snapshot.bytesRead);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.hippo.ehviewer.spider;
 
 import android.content.Context;
 import android.graphics.BitmapFactory;
+import android.util.SparseArray;
 import android.webkit.MimeTypeMap;
 
 import androidx.annotation.Nullable;
@@ -41,18 +42,34 @@ import com.hippo.yorozuya.MathUtils;
 import com.hippo.yorozuya.Utilities;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Locale;
 
 public final class SpiderDen {
 
+    // Keep partial images for a week, they may be resumed later
+    private static final long PARTIAL_FILE_MAX_AGE = 7 * 24 * 60 * 60 * 1000L;
+    // Drop the oldest partial images once they take more space
+    private static final long PARTIAL_DIR_MAX_SIZE = 32 * 1024 * 1024L;
+    // Suffix of the file beside a partial image which keeps its PartialInfo
+    private static final String PARTIAL_INFO_SUFFIX = ".info";
+
     @Nullable
     private static SimpleDiskCache sCache;
     @Nullable
+    private static File sPartialDir;
+    @Nullable
     private final UniFile mDownloadDir;
     private final long mGid;
     private volatile int mMode = SpiderQueen.MODE_READ;
+    // Page index to image filename in download dir, null for not listed yet
+    @Nullable
+    private SparseArray<String> mDownloadDirIndex;
 
     public SpiderDen(GalleryInfo galleryInfo) {
         mGid = galleryInfo.gid;
@@ -62,6 +79,52 @@ public final class SpiderDen {
     public static void initialize(Context context) {
         sCache = new SimpleDiskCache(new File(context.getCacheDir(), "image"),
                 MathUtils.clamp(Settings.getReadCacheSize(), 40, 1280) * 1024 * 1024);
+        sPartialDir = new File(context.getCacheDir(), "partial");
+        removeStalePartialFiles(sPartialDir);
+        trimPartialFiles(sPartialDir);
+    }
+
+    private static void removeStalePartialFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() > PARTIAL_FILE_MAX_AGE) {
+                file.delete();
+            }
+        }
+    }
+
+    private static synchronized void trimPartialFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= PARTIAL_DIR_MAX_SIZE) {
+            return;
+        }
+        // Oldest first
+        Arrays.sort(files, (lhs, rhs) -> Long.compare(lhs.lastModified(), rhs.lastModified()));
+        for (File file : files) {
+            if (size <= PARTIAL_DIR_MAX_SIZE) {
+                break;
+            }
+            if (file.getName().endsWith(PARTIAL_INFO_SUFFIX)) {
+                // Goes with its partial image
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                getPartialInfoFile(file).delete();
+            }
+        }
     }
 
     public static UniFile getGalleryDownloadDir(GalleryInfo galleryInfo) {
@@ -116,16 +179,68 @@ public final class SpiderDen {
         return String.format(Locale.US, "%08d%s", index + 1, extension);
     }
 
+    /**
+     * @return the page index of the image filename, -1 for not an image
+     */
+    private static int parseImageFilename(String filename) {
+        if (filename == null || filename.length() <= 8) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = 0; i < 8; i++) {
+            char c = filename.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        if (number < 1 || !Utilities.contain(GalleryProvider.Companion.getSUPPORT_IMAGE_EXTENSIONS(), filename.substring(8))) {
+            return -1;
+        }
+        return number - 1;
+    }
+
+    /**
+     * Lists the download dir once, then keeps the index up to date.
+     * Must be called with the lock held.
+     */
+    private SparseArray<String> getDownloadDirIndex(UniFile dir) {
+        if (mDownloadDirIndex == null) {
+            SparseArray<String> index = new SparseArray<>();
+            UniFile[] files = dir.listFiles();
+            if (files != null) {
+                for (UniFile file : files) {
+                    String name = file.getName();
+                    int i = parseImageFilename(name);
+                    if (i >= 0 && index.get(i) == null) {
+                        index.put(i, name);
+                    }
+                }
+            }
+            mDownloadDirIndex = index;
+        }
+        return mDownloadDirIndex;
+    }
+
     @Nullable
-    private static UniFile findImageFile(UniFile dir, int index) {
-        for (String extension : GalleryProvider.Companion.getSUPPORT_IMAGE_EXTENSIONS()) {
-            String filename = generateImageFilename(index, extension);
-            UniFile file = dir.findFile(filename);
-            if (file != null) {
-                return file;
+    private UniFile findImageFile(UniFile dir, int index) {
+        String filename;
+        synchronized (this) {
+            filename = getDownloadDirIndex(dir).get(index);
+        }
+        return filename != null ? dir.subFile(filename) : null;
+    }
+
+    @Nullable
+    private UniFile createImageFile(UniFile dir, int index, String extension) {
+        String filename = generateImageFilename(index, extension);
+        UniFile file = dir.createFile(filename);
+        if (file != null) {
+            synchronized (this) {
+                getDownloadDirIndex(dir).put(index, filename);
             }
         }
-        return null;
+        return file;
     }
 
     public void setMode(@SpiderQueen.Mode int mode) {
@@ -219,7 +334,7 @@ public final class SpiderDen {
             // Fix extension
             extension = fixExtension(extension);
             // Copy from cache to download dir
-            UniFile file = dir.createFile(generateImageFilename(index, extension));
+            UniFile file = createImageFile(dir, index, extension);
             if (file == null) {
                 return false;
             }
@@ -260,15 +375,17 @@ public final class SpiderDen {
             return false;
         }
 
-        boolean result = false;
-        for (int i = 0, n = GalleryProvider.Companion.getSUPPORT_IMAGE_EXTENSIONS().length; i < n; i++) {
-            String filename = generateImageFilename(index, GalleryProvider.Companion.getSUPPORT_IMAGE_EXTENSIONS()[i]);
-            UniFile file = dir.subFile(filename);
-            if (file != null) {
-                result |= file.delete();
-            }
+        String filename;
+        synchronized (this) {
+            SparseArray<String> downloadDirIndex = getDownloadDirIndex(dir);
+            filename = downloadDirIndex.get(index);
+            downloadDirIndex.remove(index);
         }
-        return result;
+        if (filename == null) {
+            return false;
+        }
+        UniFile file = dir.subFile(filename);
+        return file != null && file.delete();
     }
 
     public boolean remove(int index) {
@@ -298,7 +415,7 @@ public final class SpiderDen {
         }
 
         extension = fixExtension('.' + extension);
-        UniFile file = dir.createFile(generateImageFilename(index, extension));
+        UniFile file = createImageFile(dir, index, extension);
         if (file != null) {
             return new UniFileOutputStreamPipe(file);
         } else {
@@ -322,6 +439,94 @@ public final class SpiderDen {
         }
     }
 
+    /**
+     * Returns the staging file of the image data received by a failed try,
+     * the next try resumes from it. It is only written by
+     * {@link #savePartialFile(int, File, PartialInfo)}, a complete image never
+     * passes through it.
+     *
+     * @param origin true for the origin image, it is kept apart from the resampled one
+     * @return null if the staging dir is not available
+     */
+    @Nullable
+    public File getPartialFile(int index, boolean origin) {
+        File dir = sPartialDir;
+        if (dir == null || !FileUtils.ensureDirectory(dir)) {
+            return null;
+        }
+        return new File(dir, String.format(Locale.US, "%d-%08d%s.part", mGid, index + 1, origin ? "-o" : ""));
+    }
+
+    private static File getPartialInfoFile(File file) {
+        return new File(file.getPath() + PARTIAL_INFO_SUFFIX);
+    }
+
+    /**
+     * Copies the incomplete image data of the page to the staging file and
+     * keeps the info of the image beside it, then trims the staging dir to
+     * {@link #PARTIAL_DIR_MAX_SIZE}.
+     */
+    void savePartialFile(int index, File file, PartialInfo info) {
+        InputStreamPipe pipe = openInputStreamPipe(index);
+        if (pipe == null) {
+            deletePartialFile(file);
+            return;
+        }
+
+        OutputStream os = null;
+        OutputStream infoOs = null;
+        boolean saved = false;
+        try {
+            pipe.obtain();
+            os = new FileOutputStream(file);
+            IOUtils.copy(pipe.open(), os);
+            os.flush();
+            infoOs = new FileOutputStream(getPartialInfoFile(file));
+            info.write(infoOs);
+            saved = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            IOUtils.closeQuietly(os);
+            IOUtils.closeQuietly(infoOs);
+            pipe.close();
+            pipe.release();
+        }
+        if (!saved) {
+            deletePartialFile(file);
+            return;
+        }
+
+        File dir = sPartialDir;
+        if (dir != null) {
+            trimPartialFiles(dir);
+        }
+    }
+
+    /**
+     * @return null if the staging file has no readable info
+     */
+    @Nullable
+    PartialInfo readPartialInfo(File file) {
+        InputStream is = null;
+        try {
+            is = new FileInputStream(getPartialInfoFile(file));
+            return PartialInfo.read(is);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Deletes the staging file and its info.
+     */
+    void deletePartialFile(File file) {
+        file.delete();
+        getPartialInfoFile(file).delete();
+    }
+
     @Nullable
     private InputStreamPipe openCacheInputStreamPipe(int index) {
         if (sCache == null) {
@@ -16,6 +16,7 @@
 
 package com.hippo.ehviewer.spider;
 
+import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.SparseArray;
@@ -27,17 +28,42 @@ import com.hippo.unifile.UniFile;
 import com.hippo.yorozuya.IOUtils;
 import com.hippo.yorozuya.NumberUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
+/**
+ * Version 3 is binary, a header and then a fixed-width token slot for each page,
+ * so a token can be patched in place. Version 1 and 2 are text, they can only be read.
+ */
 public class SpiderInfo {
 
     static final String TOKEN_FAILED = "failed";
     private static final String TAG = SpiderInfo.class.getSimpleName();
     private static final String VERSION_STR = "VERSION";
     private static final int VERSION = 2;
+
+    // "EHSI", can't be the start of text version
+    private static final int MAGIC = 0x45485349;
+    private static final int BINARY_VERSION = 3;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_GID = 8;
+    private static final int OFFSET_START_PAGE = 16;
+    private static final int OFFSET_PREVIEW_PAGES = 20;
+    private static final int OFFSET_PREVIEW_PER_PAGE = 24;
+    private static final int OFFSET_PAGES = 28;
+    private static final int OFFSET_TOKEN = 32;
+    // Length byte and ascii chars
+    static final int SLOT_SIZE = 16;
+    static final int HEADER_SIZE = OFFSET_TOKEN + SLOT_SIZE;
     public int startPage = 0;
     public long gid = -1;
     public String token = null;
@@ -51,6 +77,11 @@ public class SpiderInfo {
             return null;
         }
 
+        File rawFile = getRawFile(file);
+        if (rawFile != null) {
+            return read(rawFile);
+        }
+
         InputStream is = null;
         try {
             is = file.openInputStream();
@@ -62,6 +93,33 @@ public class SpiderInfo {
         }
     }
 
+    @Nullable
+    public static SpiderInfo read(@NonNull File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the file if it's a plain file which can be memory-mapped
+     */
+    @Nullable
+    private static File getRawFile(@NonNull UniFile file) {
+        Uri uri = file.getUri();
+        if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+            return new File(uri.getPath());
+        } else {
+            return null;
+        }
+    }
+
     private static int getStartPage(String str) {
         if (null == str) {
             return 0;
@@ -93,12 +151,101 @@ public class SpiderInfo {
     }
 
     @Nullable
-    @SuppressWarnings("InfiniteLoopStatement")
     public static SpiderInfo read(@Nullable InputStream is) {
         if (null == is) {
             return null;
         }
 
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            IOUtils.copy(is, os);
+        } catch (IOException e) {
+            return null;
+        }
+        return read(ByteBuffer.wrap(os.toByteArray()));
+    }
+
+    @Nullable
+    private static SpiderInfo read(@NonNull ByteBuffer buffer) {
+        if (buffer.limit() >= 4 && buffer.getInt(OFFSET_MAGIC) == MAGIC) {
+            return readBinary(buffer);
+        }
+
+        byte[] bytes;
+        if (buffer.hasArray()) {
+            bytes = buffer.array();
+        } else {
+            bytes = new byte[buffer.limit()];
+            buffer.get(bytes);
+        }
+        return readText(new ByteArrayInputStream(bytes));
+    }
+
+    @Nullable
+    private static SpiderInfo readBinary(@NonNull ByteBuffer buffer) {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(OFFSET_VERSION) != BINARY_VERSION) {
+            return null;
+        }
+
+        SpiderInfo spiderInfo = new SpiderInfo();
+        spiderInfo.gid = buffer.getLong(OFFSET_GID);
+        spiderInfo.startPage = Math.max(buffer.getInt(OFFSET_START_PAGE), 0);
+        spiderInfo.previewPages = buffer.getInt(OFFSET_PREVIEW_PAGES);
+        spiderInfo.previewPerPage = buffer.getInt(OFFSET_PREVIEW_PER_PAGE);
+        spiderInfo.pages = buffer.getInt(OFFSET_PAGES);
+        spiderInfo.token = getSlot(buffer, OFFSET_TOKEN);
+        if (spiderInfo.gid == -1 || spiderInfo.token == null || spiderInfo.pages <= 0) {
+            return null;
+        }
+
+        // Slots of a truncated file are lost
+        int count = Math.min(spiderInfo.pages, (buffer.limit() - HEADER_SIZE) / SLOT_SIZE);
+        spiderInfo.pTokenMap = new SparseArray<>(spiderInfo.pages);
+        for (int i = 0; i < count; i++) {
+            String pToken = getSlot(buffer, HEADER_SIZE + i * SLOT_SIZE);
+            if (pToken != null) {
+                spiderInfo.pTokenMap.put(i, pToken);
+            }
+        }
+        return spiderInfo;
+    }
+
+    @Nullable
+    private static String getSlot(@NonNull ByteBuffer buffer, int offset) {
+        int length = buffer.get(offset) & 0xff;
+        if (length == 0 || length >= SLOT_SIZE) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (buffer.get(offset + 1 + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Only writes the bytes which are different, so mapped pages stay clean.
+     */
+    private static void putSlot(@NonNull ByteBuffer buffer, int offset, @NonNull String value) {
+        int length = value.length();
+        if (length >= SLOT_SIZE) {
+            Log.e(TAG, "Token is too long, token = " + value);
+            return;
+        }
+        if ((buffer.get(offset) & 0xff) != length) {
+            buffer.put(offset, (byte) length);
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = (byte) value.charAt(i);
+            if (buffer.get(offset + 1 + i) != b) {
+                buffer.put(offset + 1 + i, b);
+            }
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("InfiniteLoopStatement")
+    private static SpiderInfo readText(@NonNull InputStream is) {
         SpiderInfo spiderInfo = null;
         try {
             spiderInfo = new SpiderInfo();
@@ -164,44 +311,98 @@ public class SpiderInfo {
         }
     }
 
+    private int getBinarySize() {
+        return HEADER_SIZE + Math.max(pages, 0) * SLOT_SIZE;
+    }
+
+    private void putBinary(@NonNull ByteBuffer buffer) {
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, BINARY_VERSION);
+        buffer.putLong(OFFSET_GID, gid);
+        buffer.putInt(OFFSET_START_PAGE, Math.max(startPage, 0)); // Avoid negative
+        buffer.putInt(OFFSET_PREVIEW_PAGES, previewPages);
+        buffer.putInt(OFFSET_PREVIEW_PER_PAGE, previewPerPage);
+        buffer.putInt(OFFSET_PAGES, pages);
+        putSlot(buffer, OFFSET_TOKEN, token);
+        for (int i = 0; i < pTokenMap.size(); i++) {
+            int key = pTokenMap.keyAt(i);
+            String value = pTokenMap.valueAt(i);
+            if (key < 0 || key >= pages || TOKEN_FAILED.equals(value) || TextUtils.isEmpty(value)) {
+                continue;
+            }
+            putSlot(buffer, HEADER_SIZE + key * SLOT_SIZE, value);
+        }
+    }
+
+    // Whether the file is of this gallery, its slots can be patched
+    private boolean isSameGallery(@NonNull ByteBuffer buffer) {
+        return buffer.getInt(OFFSET_MAGIC) == MAGIC &&
+                buffer.getInt(OFFSET_VERSION) == BINARY_VERSION &&
+                buffer.getLong(OFFSET_GID) == gid &&
+                buffer.getInt(OFFSET_PAGES) == pages &&
+                token.equals(getSlot(buffer, OFFSET_TOKEN));
+    }
+
+    /**
+     * @return a copy which can be written while this one is changing
+     */
+    @NonNull
+    public SpiderInfo copy() {
+        SpiderInfo spiderInfo = new SpiderInfo();
+        spiderInfo.startPage = startPage;
+        spiderInfo.gid = gid;
+        spiderInfo.token = token;
+        spiderInfo.pages = pages;
+        spiderInfo.previewPages = previewPages;
+        spiderInfo.previewPerPage = previewPerPage;
+        spiderInfo.pTokenMap = pTokenMap != null ? pTokenMap.clone() : null;
+        return spiderInfo;
+    }
+
     public void write(@NonNull OutputStream os) {
-        OutputStreamWriter writer = null;
         try {
-            writer = new OutputStreamWriter(os);
-            writer.write(VERSION_STR);
-            writer.write(Integer.toString(VERSION));
-            writer.write("\n");
-            writer.write(String.format("%08x", Math.max(startPage, 0))); // Avoid negative
-            writer.write("\n");
-            writer.write(Long.toString(gid));
-            writer.write("\n");
-            writer.write(token);
-            writer.write("\n");
-            writer.write("1");
-            writer.write("\n");
-            writer.write(Integer.toString(previewPages));
-            writer.write("\n");
-            writer.write(Integer.toString(previewPerPage));
-            writer.write("\n");
-            writer.write(Integer.toString(pages));
-            writer.write("\n");
-            for (int i = 0; i < pTokenMap.size(); i++) {
-                Integer key = pTokenMap.keyAt(i);
-                String value = pTokenMap.valueAt(i);
-                if (TOKEN_FAILED.equals(value) || TextUtils.isEmpty(value)) {
-                    continue;
-                }
-                writer.write(Integer.toString(key));
-                writer.write(" ");
-                writer.write(value);
-                writer.write("\n");
-            }
-            writer.flush();
+            ByteBuffer buffer = ByteBuffer.allocate(getBinarySize());
+            putBinary(buffer);
+            os.write(buffer.array());
+            os.flush();
         } catch (IOException e) {
             // Ignore
         } finally {
-            IOUtils.closeQuietly(writer);
             IOUtils.closeQuietly(os);
         }
     }
+
+    /**
+     * A plain file is memory-mapped and only the changed tokens are written,
+     * other files are rewritten.
+     */
+    public void write(@NonNull UniFile file) throws IOException {
+        File rawFile = getRawFile(file);
+        if (rawFile != null) {
+            write(rawFile);
+        } else {
+            write(file.openOutputStream());
+        }
+    }
+
+    public void write(@NonNull File file) throws IOException {
+        int size = getBinarySize();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = null;
+            if (channel.size() == size) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (!isSameGallery(buffer)) {
+                    buffer = null;
+                }
+            }
+            if (buffer == null) {
+                // Text version or another gallery, start from empty slots
+                raf.setLength(0);
+                raf.setLength(size);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            putBinary(buffer);
+        }
+    }
 }
@@ -21,6 +21,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.SparseArray;
@@ -50,6 +51,9 @@ import com.hippo.ehviewer.client.parser.GalleryMultiPageViewerPTokenParser;
 import com.hippo.ehviewer.client.parser.GalleryPageApiParser;
 import com.hippo.ehviewer.client.parser.GalleryPageParser;
 import com.hippo.ehviewer.client.parser.GalleryPageUrlParser;
+import com.hippo.ehviewer.gallery.PageDecoder;
+import com.hippo.network.HostLimiter;
+import com.hippo.network.HostTrafficStats;
 import com.hippo.streampipe.InputStreamPipe;
 import com.hippo.streampipe.OutputStreamPipe;
 import com.hippo.unifile.UniFile;
@@ -64,18 +68,17 @@ import com.hippo.yorozuya.collect.SparseJLArray;
 import com.hippo.yorozuya.thread.PriorityThread;
 import com.hippo.yorozuya.thread.PriorityThreadFactory;
 
-import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -83,6 +86,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import okhttp3.Call;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -97,12 +101,16 @@ public final class SpiderQueen implements Runnable {
     public static final int STATE_DOWNLOADING = 1;
     public static final int STATE_FINISHED = 2;
     public static final int STATE_FAILED = 3;
-    public static final int DECODE_THREAD_NUM = 1;
+    public static final int DECODE_THREAD_MAX = 4;
     public static final String SPIDER_INFO_FILENAME = ".ehviewer";
     private static final String TAG = SpiderQueen.class.getSimpleName();
     private static final AtomicInteger sIdGenerator = new AtomicInteger();
     private static final boolean DEBUG_LOG = false;
     private static final boolean DEBUG_PTOKEN = true;
+    // Preview pages fetched at the same time
+    private static final int PTOKEN_THREAD_NUM = 3;
+    // Preview pages fetched after the one requested
+    private static final int PTOKEN_PREFETCH_PAGES = 2;
     private static final String[] URL_509_SUFFIX_ARRAY = {
             "/509.gif",
             "/509s.gif"
@@ -110,27 +118,30 @@ public final class SpiderQueen implements Runnable {
     private static final SparseJLArray<SpiderQueen> sQueenMap = new SparseJLArray<>();
     @NonNull
     private final OkHttpClient mHttpClient;
+    private final OkHttpClient mImageHttpClient;
+    // Caps the image requests to a host
+    private final HostLimiter mImageHostLimiter;
+    private final HostTrafficStats mImageTrafficStats;
     @NonNull
     private final SimpleDiskCache mSpiderInfoCache;
     @NonNull
     private final GalleryInfo mGalleryInfo;
     @NonNull
     private final SpiderDen mSpiderDen;
-    private final Object mQueenLock = new Object();
-    private final Thread[] mDecodeThreadArray = new Thread[DECODE_THREAD_NUM];
-    private final int[] mDecodeIndexArray = new int[DECODE_THREAD_NUM];
-    private final Queue<Integer> mDecodeRequestQueue = new LinkedList<>();
+    private final int mDecodeThreadNum;
+    private final Thread[] mDecodeThreadArray;
+    private final int[] mDecodeIndexArray;
+    // Decoders take the index nearest to mReadingIndex first
+    private final List<Integer> mDecodeRequestQueue = new ArrayList<>();
     private final Object mWorkerLock = new Object();
-    private final Object mPTokenLock = new Object();
+    private final Object mPTokenLock;
     private final AtomicReference<SpiderInfo> mSpiderInfo = new AtomicReference<>();
-    private final Queue<Integer> mRequestPTokenQueue = new ConcurrentLinkedQueue<>();
+    private final ThreadPoolExecutor mPTokenPoolExecutor;
+    // Hands pTokens to the waiting workers
+    private final PTokenScheduler mPTokenScheduler;
     private final Object mPageStateLock = new Object();
-    // Store request page. The index may be invalid
-    private final Queue<Integer> mRequestPageQueue = new LinkedList<>();
-    // Store preload page. The index may be invalid
-    private final Queue<Integer> mRequestPageQueue2 = new LinkedList<>();
-    // Store force request page. The index may be invalid
-    private final Queue<Integer> mForceRequestPageQueue = new LinkedList<>();
+    // Request, preload, force request pages and download cursor for workers
+    private final PageRequestQueue mPageRequestQueue = new PageRequestQueue();
     private final AtomicInteger mDownloadedPages = new AtomicInteger(0);
     private final AtomicInteger mFinishedPages = new AtomicInteger(0);
     private final Object showKeyLock = new Object();
@@ -138,38 +149,63 @@ public final class SpiderQueen implements Runnable {
     private final ConcurrentHashMap<Integer, String> mPageErrorMap = new ConcurrentHashMap<>();
     // Store page download percent
     private final ConcurrentHashMap<Integer, Float> mPagePercentMap = new ConcurrentHashMap<>();
+    // Coalesces page download progress to at most one snapshot a frame
+    private final ProgressAggregator mProgressAggregator = new ProgressAggregator(this::notifyPageDownload);
     private final List<OnSpiderListener> mSpiderListeners = new ArrayList<>();
     private final int mWorkerMaxCount;
     private final int mPreloadNumber;
+    // Preloads follow reading direction and speed
+    private final PreloadPlanner mPreloadPlanner;
     private final int mDownloadDelay;
     private int mReadReference = 0;
     private int mDownloadReference = 0;
+    // Downloading galleries share the TransferLimiter
+    private volatile boolean mDownloadMode;
     // It mQueenThread is null, failed or stopped
     @Nullable
     private volatile Thread mQueenThread;
     private ThreadPoolExecutor mWorkerPoolExecutor;
     private int mWorkerCount;
     private volatile int[] mPageStateArray;
-    // For download, when it go to mPageStateArray.size(), done
-    private volatile int mDownloadPage = -1;
+    // The page showing in reader
+    private volatile int mReadingIndex = GalleryPageAdapter.INVALID_INDEX;
+    // Pages are decoded to fit it
+    @Nullable
+    private volatile GalleryProvider mDecodeTarget;
     private final AtomicReference<String> showKey = new AtomicReference<>();
 
     private SpiderQueen(EhApplication application, @NonNull GalleryInfo galleryInfo) {
         mHttpClient = EhApplication.getOkHttpClient(application);
+        mImageHttpClient = EhApplication.getImageOkHttpClient(application);
+        mImageHostLimiter = EhApplication.getImageHostLimiter(application);
+        mImageTrafficStats = EhApplication.getImageTrafficStats(application);
         mSpiderInfoCache = EhApplication.getSpiderInfoCache(application);
         mGalleryInfo = galleryInfo;
         mSpiderDen = new SpiderDen(mGalleryInfo);
 
         mWorkerMaxCount = MathUtils.clamp(Settings.getMultiThreadDownload(), 1, 10);
         mPreloadNumber = MathUtils.clamp(Settings.getPreloadImage(), 0, 100);
+        mPreloadPlanner = new PreloadPlanner(mPreloadNumber);
 
-        for (int i = 0; i < DECODE_THREAD_NUM; i++) {
+        int decodeThreadNum = Settings.getDecodeThread();
+        if (decodeThreadNum == Settings.DECODE_THREAD_AUTO) {
+            decodeThreadNum = Runtime.getRuntime().availableProcessors();
+        }
+        mDecodeThreadNum = MathUtils.clamp(decodeThreadNum, 1, DECODE_THREAD_MAX);
+        mDecodeThreadArray = new Thread[mDecodeThreadNum];
+        mDecodeIndexArray = new int[mDecodeThreadNum];
+        for (int i = 0; i < mDecodeThreadNum; i++) {
             mDecodeIndexArray[i] = GalleryPageAdapter.INVALID_INDEX;
         }
 
         mWorkerPoolExecutor = new ThreadPoolExecutor(mWorkerMaxCount, mWorkerMaxCount,
                 0, TimeUnit.SECONDS, new LinkedBlockingDeque<>(),
                 new PriorityThreadFactory(SpiderWorker.class.getSimpleName(), Process.THREAD_PRIORITY_BACKGROUND));
+        mPTokenPoolExecutor = new ThreadPoolExecutor(PTOKEN_THREAD_NUM, PTOKEN_THREAD_NUM,
+                0, TimeUnit.SECONDS, new LinkedBlockingDeque<>(),
+                new PriorityThreadFactory(PTokenScheduler.class.getSimpleName(), Process.THREAD_PRIORITY_BACKGROUND));
+        mPTokenScheduler = new PTokenScheduler(new PTokenFetcher(), mPTokenPoolExecutor, PTOKEN_PREFETCH_PAGES);
+        mPTokenLock = mPTokenScheduler.lock;
         mDownloadDelay = Settings.getDownloadDelay();
     }
 
@@ -319,18 +355,14 @@ public final class SpiderQueen implements Runnable {
         }
 
         mSpiderDen.setMode(mode);
+        mDownloadMode = mode == MODE_DOWNLOAD;
 
         // Update download page
         boolean intoDownloadMode = false;
-        synchronized (mRequestPageQueue) {
-            if (mode == MODE_DOWNLOAD) {
-                if (mDownloadPage < 0) {
-                    mDownloadPage = 0;
-                    intoDownloadMode = true;
-                }
-            } else {
-                mDownloadPage = -1;
-            }
+        if (mode == MODE_DOWNLOAD) {
+            intoDownloadMode = mPageRequestQueue.startDownload();
+        } else {
+            mPageRequestQueue.stopDownload();
         }
 
         if (intoDownloadMode && mPageStateArray != null) {
@@ -439,18 +471,8 @@ public final class SpiderQueen implements Runnable {
     }
 
     private void tryToEnsureWorkers() {
-        boolean startWorkers = false;
-        synchronized (mRequestPageQueue) {
-            if (mPageStateArray != null &&
-                    (!mForceRequestPageQueue.isEmpty() ||
-                            !mRequestPageQueue.isEmpty() ||
-                            !mRequestPageQueue2.isEmpty() ||
-                            mDownloadPage >= 0 && mDownloadPage < mPageStateArray.length)) {
-                startWorkers = true;
-            }
-        }
-
-        if (startWorkers) {
+        int[] pageStateArray = mPageStateArray;
+        if (pageStateArray != null && mPageRequestQueue.hasRequest(pageStateArray.length)) {
             ensureWorkers();
         }
     }
@@ -460,14 +482,80 @@ public final class SpiderQueen implements Runnable {
             return;
         }
 
-        synchronized (mRequestPageQueue) {
-            mRequestPageQueue.remove(index);
+        mPageRequestQueue.cancel(index);
+        synchronized (mDecodeRequestQueue) {
+            mDecodeRequestQueue.remove(Integer.valueOf(index));
+        }
+    }
+
+    @UiThread
+    public void setDecodeTarget(@NonNull GalleryProvider provider) {
+        mDecodeTarget = provider;
+    }
+
+    @UiThread
+    public void removeDecodeTarget(@NonNull GalleryProvider provider) {
+        if (mDecodeTarget == provider) {
+            mDecodeTarget = null;
+        }
+    }
+
+    /**
+     * Decode requests too far away from the reading index are cancelled,
+     * the page will be requested again when it is shown.
+     * Preloads are planned again around the index.
+     */
+    public void setReadingIndex(int index) {
+        mReadingIndex = index;
+        if (index != GalleryPageAdapter.INVALID_INDEX && mQueenThread != null) {
+            mPreloadPlanner.onPageShown(index, getPageState(index) == STATE_FINISHED, SystemClock.uptimeMillis());
+            updatePreloads(index);
+            tryToEnsureWorkers();
         }
         synchronized (mDecodeRequestQueue) {
-            mDecodeRequestQueue.remove(index);
+            Iterator<Integer> iterator = mDecodeRequestQueue.iterator();
+            while (iterator.hasNext()) {
+                if (isFarFromReadingIndex(iterator.next())) {
+                    iterator.remove();
+                }
+            }
         }
     }
 
+    /**
+     * @return how often a shown page was downloaded already, -1 for no page shown
+     */
+    public float getPreloadHitRate() {
+        return mPreloadPlanner.getHitRate();
+    }
+
+    /**
+     * Replaces preloads with the plan around the index, stale ones are cancelled.
+     */
+    private void updatePreloads(int index) {
+        int[] pageStateArray = mPageStateArray;
+        int size;
+        if (pageStateArray != null) {
+            size = pageStateArray.length;
+        } else {
+            size = Integer.MAX_VALUE;
+        }
+        int[] pages = mPreloadPlanner.plan(index, size);
+        List<Integer> preloads = new ArrayList<>(pages.length);
+        for (int page : pages) {
+            if (STATE_NONE == getPageState(page)) {
+                preloads.add(page);
+            }
+        }
+        mPageRequestQueue.setPreloads(preloads);
+    }
+
+    private boolean isFarFromReadingIndex(int index) {
+        int readingIndex = mReadingIndex;
+        return readingIndex != GalleryPageAdapter.INVALID_INDEX &&
+                Math.abs(index - readingIndex) > mPreloadNumber + 1;
+    }
+
     /**
      * @return String for error<br>
      * Float for download percent<br>
@@ -490,31 +578,18 @@ public final class SpiderQueen implements Runnable {
         }
 
         // Add to request
-        synchronized (mRequestPageQueue) {
-            if (state == STATE_NONE) {
-                if (force) {
-                    mForceRequestPageQueue.add(index);
-                } else {
-                    mRequestPageQueue.add(index);
-                }
+        if (state == STATE_NONE) {
+            if (force) {
+                mPageRequestQueue.addForce(index);
+            } else {
+                mPageRequestQueue.add(index);
             }
+        }
 
-            // Add next some pages to request queue
-            if (addNeighbor) {
-                mRequestPageQueue2.clear();
-                int[] pageStateArray = mPageStateArray;
-                int size;
-                if (pageStateArray != null) {
-                    size = pageStateArray.length;
-                } else {
-                    size = Integer.MAX_VALUE;
-                }
-                for (int i = index + 1, n = index + 1 + mPreloadNumber; i < n && i < size; i++) {
-                    if (STATE_NONE == getPageState(i)) {
-                        mRequestPageQueue2.add(i);
-                    }
-                }
-            }
+        // Add some pages around the reading page to request queue
+        if (addNeighbor) {
+            int readingIndex = mReadingIndex;
+            updatePreloads(readingIndex != GalleryPageAdapter.INVALID_INDEX ? readingIndex : index);
         }
 
         Object result;
@@ -536,7 +611,8 @@ public final class SpiderQueen implements Runnable {
                 break;
             case STATE_FINISHED:
                 synchronized (mDecodeRequestQueue) {
-                    if (!contain(mDecodeIndexArray, index) && !mDecodeRequestQueue.contains(index)) {
+                    if (!contain(mDecodeIndexArray, index) && !mDecodeRequestQueue.contains(index) &&
+                            !isFarFromReadingIndex(index)) {
                         mDecodeRequestQueue.add(index);
                         mDecodeRequestQueue.notify();
                     }
@@ -725,23 +801,25 @@ public final class SpiderQueen implements Runnable {
     }
 
     private void readPreviews(String body, int index, SpiderInfo spiderInfo) throws ParseException {
-        spiderInfo.pages = GalleryDetailParser.parsePages(body);
-        spiderInfo.previewPages = GalleryDetailParser.parsePreviewPages(body);
+        int pages = GalleryDetailParser.parsePages(body);
+        int previewPages = GalleryDetailParser.parsePreviewPages(body);
         PreviewSet previewSet = GalleryDetailParser.parsePreviewSet(body);
 
-        if (previewSet.size() > 0) {
-            if (index == 0) {
-                spiderInfo.previewPerPage = previewSet.size();
-            } else {
-                spiderInfo.previewPerPage = previewSet.getPosition(0) / index;
+        synchronized (mPTokenLock) {
+            spiderInfo.pages = pages;
+            spiderInfo.previewPages = previewPages;
+            if (previewSet.size() > 0) {
+                if (index == 0) {
+                    spiderInfo.previewPerPage = previewSet.size();
+                } else {
+                    spiderInfo.previewPerPage = previewSet.getPosition(0) / index;
+                }
             }
-        }
 
-        for (int i = 0, n = previewSet.size(); i < n; i++) {
-            GalleryPageUrlParser.Result result = GalleryPageUrlParser.parse(previewSet.getPageUrlAt(i));
-            if (result != null) {
-                synchronized (mPTokenLock) {
-                    spiderInfo.pTokenMap.put(result.page, result.pToken);
+            for (int i = 0, n = previewSet.size(); i < n; i++) {
+                GalleryPageUrlParser.Result result = GalleryPageUrlParser.parse(previewSet.getPageUrlAt(i));
+                if (result != null) {
+                    mPTokenScheduler.putPToken(spiderInfo, result.page, result.pToken);
                 }
             }
         }
@@ -768,12 +846,7 @@ public final class SpiderQueen implements Runnable {
         }
     }
 
-    private String getPTokenFromMultiPageViewer(int index) {
-        SpiderInfo spiderInfo = mSpiderInfo.get();
-        if (spiderInfo == null) {
-            return null;
-        }
-
+    private String getPTokenFromMultiPageViewer(SpiderInfo spiderInfo, int index) {
         try {
             String url = EhUrl.getGalleryMultiPageViewerUrl(
                     mGalleryInfo.gid, mGalleryInfo.token);
@@ -789,7 +862,7 @@ public final class SpiderQueen implements Runnable {
 
             for (int i = 0; i < list.size(); i++) {
                 synchronized (mPTokenLock) {
-                    spiderInfo.pTokenMap.put(i, list.get(i));
+                    mPTokenScheduler.putPToken(spiderInfo, i, list.get(i));
                 }
             }
 
@@ -804,30 +877,34 @@ public final class SpiderQueen implements Runnable {
         }
     }
 
-    private String getPTokenFromInternet(int index) {
-        SpiderInfo spiderInfo = mSpiderInfo.get();
-        if (spiderInfo == null) {
+    private String getPTokenFromInternet(SpiderInfo spiderInfo, int index) {
+        int previewIndex;
+        synchronized (mPTokenLock) {
+            previewIndex = PTokenScheduler.getPreviewIndex(spiderInfo, index);
+        }
+        if (!getPTokensFromInternet(spiderInfo, previewIndex, index)) {
             return null;
         }
 
-        // Check previewIndex
-        int previewIndex;
-        if (spiderInfo.previewPerPage >= 0) {
-            previewIndex = index / spiderInfo.previewPerPage;
-        } else {
-            previewIndex = 0;
-        }
-        if (spiderInfo.previewPages > 0) {
-            previewIndex = Math.min(previewIndex, spiderInfo.previewPages - 1);
+        String pToken;
+        synchronized (mPTokenLock) {
+            pToken = spiderInfo.pTokenMap.get(index);
         }
+        return pToken;
+    }
 
+    /**
+     * Reads pTokens in the preview page.
+     *
+     * @param index the page wanted, only for log
+     */
+    private boolean getPTokensFromInternet(SpiderInfo spiderInfo, int previewIndex, int index) {
         try {
             String url = EhUrl.getGalleryDetailUrl(
                     mGalleryInfo.gid, mGalleryInfo.token, previewIndex, false);
             String referer = EhUrl.getReferer();
             if (DEBUG_PTOKEN) {
-                Log.d(TAG, "index " + index + ", previewIndex " + previewIndex +
-                        ", previewPerPage " + spiderInfo.previewPerPage + ", url " + url);
+                Log.d(TAG, "index " + index + ", previewIndex " + previewIndex + ", url " + url);
             }
             Request request = new EhRequestBuilder(url, referer).build();
             Response response = mHttpClient.newCall(request).execute();
@@ -836,25 +913,26 @@ public final class SpiderQueen implements Runnable {
 
             // Save to local
             writeSpiderInfoToLocal(spiderInfo);
-
-            String pToken;
-            synchronized (mPTokenLock) {
-                pToken = spiderInfo.pTokenMap.get(index);
-            }
-            return pToken;
+            return true;
         } catch (Throwable e) {
             ExceptionUtils.throwIfFatal(e);
-            return null;
+            return false;
         }
     }
 
     private synchronized void writeSpiderInfoToLocal(@NonNull SpiderInfo spiderInfo) {
         // Write to download dir
+        // Workers keep putting pTokens, write a snapshot without holding the lock
+        SpiderInfo snapshot;
+        synchronized (mPTokenLock) {
+            snapshot = spiderInfo.copy();
+        }
+
         UniFile downloadDir = mSpiderDen.getDownloadDir();
         if (downloadDir != null) {
             UniFile file = downloadDir.createFile(SPIDER_INFO_FILENAME);
             try {
-                spiderInfo.write(file.openOutputStream());
+                snapshot.write(file);
             } catch (Throwable e) {
                 ExceptionUtils.throwIfFatal(e);
                 // Ignore
@@ -865,7 +943,7 @@ public final class SpiderQueen implements Runnable {
         OutputStreamPipe pipe = mSpiderInfoCache.getOutputStreamPipe(Long.toString(mGalleryInfo.gid));
         try {
             pipe.obtain();
-            spiderInfo.write(pipe.open());
+            snapshot.write(pipe.open());
         } catch (IOException e) {
             // Ignore
         } finally {
@@ -919,7 +997,7 @@ public final class SpiderQueen implements Runnable {
         tryToEnsureWorkers();
 
         // Start decoder
-        for (int i = 0; i < DECODE_THREAD_NUM; i++) {
+        for (int i = 0; i < mDecodeThreadNum; i++) {
             Thread decoderThread = new PriorityThread(new SpiderDecoder(i),
                     "SpiderDecoder-" + i, Process.THREAD_PRIORITY_DEFAULT);
             mDecodeThreadArray[i] = decoderThread;
@@ -928,56 +1006,15 @@ public final class SpiderQueen implements Runnable {
 
         // handle pToken request
         while (!Thread.currentThread().isInterrupted()) {
-            Integer index = mRequestPTokenQueue.poll();
-
-            if (index == null) {
+            int index;
+            try {
                 // No request index, wait here
-                synchronized (mQueenLock) {
-                    try {
-                        mQueenLock.wait();
-                    } catch (InterruptedException e) {
-                        break;
-                    }
-                }
-                continue;
-            }
-
-            // Check it in spider info
-            String pToken;
-            synchronized (mPTokenLock) {
-                pToken = spiderInfo.pTokenMap.get(index);
-            }
-            if (pToken != null) {
-                // Get pToken from spider info, notify worker
-                synchronized (mWorkerLock) {
-                    mWorkerLock.notifyAll();
-                }
-                continue;
-            }
-
-            // Get pToken from internet
-            pToken = getPTokenFromInternet(index);
-            if (null == pToken) {
-                // Preview size may changed, so try to get pToken twice
-                pToken = getPTokenFromInternet(index);
-            }
-
-            if (null == pToken) {
-                // Multi-page viewer enabled maybe
-                pToken = getPTokenFromMultiPageViewer(index);
-            }
-
-            if (null == pToken) {
-                // If failed, set the pToken "failed"
-                synchronized (mPTokenLock) {
-                    spiderInfo.pTokenMap.put(index, SpiderInfo.TOKEN_FAILED);
-                }
+                index = mPTokenScheduler.takeRequest();
+            } catch (InterruptedException e) {
+                break;
             }
 
-            // Notify worker
-            synchronized (mWorkerLock) {
-                mWorkerLock.notifyAll();
-            }
+            mPTokenScheduler.requestPTokens(spiderInfo, index);
         }
     }
 
@@ -1004,8 +1041,15 @@ public final class SpiderQueen implements Runnable {
             mWorkerPoolExecutor.shutdownNow();
             mWorkerPoolExecutor = null;
         }
+        mPTokenPoolExecutor.shutdownNow();
         notifyFinish();
 
+        // Image throughput per host since the app started
+        for (String host : mImageTrafficStats.getHosts()) {
+            Log.i(TAG, "Image traffic of " + host + ": " + mImageTrafficStats.getBytes(host) +
+                    " bytes, " + mImageTrafficStats.getBytesPerSecond(host) + " bytes/s");
+        }
+
         if (DEBUG_LOG) {
             Log.i(TAG, Thread.currentThread().getName() + ": end");
         }
@@ -1020,6 +1064,11 @@ public final class SpiderQueen implements Runnable {
     }
 
     private void updatePageState(int index, @State int state, String error) {
+        if (isStateDone(state)) {
+            // Progress must not come after success or failure
+            mProgressAggregator.flush(index);
+        }
+
         int oldState;
         synchronized (mPageStateLock) {
             oldState = mPageStateArray[index];
@@ -1095,6 +1144,22 @@ public final class SpiderQueen implements Runnable {
         void onGetImageFailure(int index, String error);
     }
 
+    @NonNull
+    private InputStream openPageStream(int index) throws IOException {
+        InputStreamPipe pipe = mSpiderDen.openInputStreamPipe(index);
+        if (pipe == null) {
+            throw new IOException("Can't find page " + index);
+        }
+        pipe.obtain();
+        try {
+            return new AutoCloseInputStream(pipe, pipe.open());
+        } catch (IOException e) {
+            pipe.close();
+            pipe.release();
+            throw e;
+        }
+    }
+
     private static class AutoCloseInputStream extends InputStream {
 
         private final InputStreamPipe mPipe;
@@ -1122,6 +1187,27 @@ public final class SpiderQueen implements Runnable {
         }
     }
 
+    private class PTokenFetcher implements PTokenScheduler.Fetcher {
+
+        @Override
+        public boolean fetchPreviewPage(@NonNull SpiderInfo spiderInfo, int previewIndex) {
+            return getPTokensFromInternet(spiderInfo, previewIndex, -1);
+        }
+
+        @Nullable
+        @Override
+        public String fetchPToken(@NonNull SpiderInfo spiderInfo, int index) {
+            // Preview size may changed, so try to get pToken twice
+            String pToken = getPTokenFromInternet(spiderInfo, index);
+
+            if (null == pToken) {
+                // Multi-page viewer enabled maybe
+                pToken = getPTokenFromMultiPageViewer(spiderInfo, index);
+            }
+            return pToken;
+        }
+    }
+
     private class SpiderWorker implements Runnable {
 
         private final long mGid;
@@ -1173,6 +1259,17 @@ public final class SpiderQueen implements Runnable {
             return result;
         }
 
+        private void copyPartialFile(File file, OutputStream os, ImageStreamValidator validator,
+                byte[] buffer) throws IOException {
+            try (InputStream is = new FileInputStream(file)) {
+                int bytesRead;
+                while ((bytesRead = is.read(buffer)) != -1) {
+                    validator.update(buffer, 0, bytesRead);
+                    os.write(buffer, 0, bytesRead);
+                }
+            }
+        }
+
         // false for stop
         private boolean downloadImage(long gid, int index, String pToken, String previousPToken, boolean force) {
             String skipHathKey = null;
@@ -1271,12 +1368,16 @@ public final class SpiderQueen implements Runnable {
 
                 String targetImageUrl;
                 String referer;
+                // pToken is the head of the SHA-1 of the origin image
+                String hashPrefix;
                 if (Settings.getDownloadOriginImage() && !TextUtils.isEmpty(originImageUrl)) {
                     targetImageUrl = originImageUrl;
                     referer = EhUrl.getPageUrl(gid, index, pToken);
+                    hashPrefix = pToken;
                 } else {
                     targetImageUrl = imageUrl;
                     referer = null;
+                    hashPrefix = null;
                 }
                 if (targetImageUrl == null) {
                     error = "TargetImageUrl error";
@@ -1287,19 +1388,69 @@ public final class SpiderQueen implements Runnable {
                 }
 
                 // Download image
+                TransferLimiter limiter = mDownloadMode ? TransferLimiter.getInstance() : null;
+                if (limiter != null && !limiter.acquireConnection()) {
+                    error = "Interrupted";
+                    interrupt = true;
+                    break;
+                }
                 InputStream is = null;
+                HttpUrl hostPermit = null;
+                boolean finished = false;
                 try {
                     if (DEBUG_LOG) {
                         Log.d(TAG, "Start download image " + index);
                     }
 
-                    // disable Call Timeout for image-downloading requests
-                    Call call = mHttpClient.newBuilder()
-                            .callTimeout(0, TimeUnit.SECONDS).build()
-                            .newCall(new EhRequestBuilder(targetImageUrl, referer).build());
+                    // Resume from the data received by the last try
+                    File partialFile = mSpiderDen.getPartialFile(index, hashPrefix != null);
+                    if (partialFile == null) {
+                        error = GetText.getString(R.string.error_write_failed);
+                        break;
+                    }
+                    long offset = partialFile.length();
+                    PartialInfo partialInfo = null;
+                    if (offset > 0) {
+                        partialInfo = mSpiderDen.readPartialInfo(partialFile);
+                        if (partialInfo == null || !partialInfo.canResume(hashPrefix != null)) {
+                            // Nothing could tell whether the staged data is of the same image,
+                            // the retry may be sent to another host
+                            mSpiderDen.deletePartialFile(partialFile);
+                            offset = 0;
+                        }
+                    }
+                    EhRequestBuilder builder = new EhRequestBuilder(targetImageUrl, referer);
+                    if (offset > 0) {
+                        builder.addHeader("Range", "bytes=" + offset + "-");
+                        // The whole image is sent instead if it has changed
+                        String ifRange = partialInfo.getIfRange();
+                        if (ifRange != null) {
+                            builder.addHeader("If-Range", ifRange);
+                        }
+                    }
+
+                    Request request = builder.build();
+                    if (!mImageHostLimiter.acquire(request.url())) {
+                        error = "Interrupted";
+                        interrupt = true;
+                        break;
+                    }
+                    hostPermit = request.url();
+
+                    long startTime = SystemClock.uptimeMillis();
+                    Call call = mImageHttpClient.newCall(request);
                     Response response = call.execute();
                     ResponseBody responseBody = response.body();
 
+                    if (response.code() == 416) {
+                        // Staged data is longer than the image
+                        response.close();
+                        mSpiderDen.deletePartialFile(partialFile);
+                        error = "Bad code: " + response.code();
+                        forceHtml = true;
+                        continue;
+                    }
+
                     if (response.code() >= 400) {
                         // Maybe 404
                         response.close();
@@ -1314,6 +1465,38 @@ public final class SpiderQueen implements Runnable {
                         continue;
                     }
 
+                    long contentLength = responseBody.contentLength();
+                    // Length of the whole image, -1 for unknown
+                    long total = contentLength;
+                    if (offset > 0) {
+                        if (response.code() == 206) {
+                            ContentRange range = ContentRange.parse(response.header("Content-Range"));
+                            if (range == null || range.start != offset ||
+                                    !partialInfo.continues(range, hashPrefix != null)) {
+                                // Not the rest of the staged image
+                                response.close();
+                                mSpiderDen.deletePartialFile(partialFile);
+                                error = "Bad range";
+                                forceHtml = true;
+                                continue;
+                            }
+                            contentLength = range.total >= 0 ? range.total : range.end + 1;
+                            total = range.total >= 0 ? range.total : partialInfo.total;
+                        } else {
+                            // Range is not supported or the image has changed,
+                            // the whole image is sent
+                            offset = 0;
+                        }
+                    }
+                    String etag = response.header("ETag");
+                    String lastModified = response.header("Last-Modified");
+                    if (offset > 0 && etag == null && lastModified == null) {
+                        // Validators of the staged image are still valid for it
+                        etag = partialInfo.etag;
+                        lastModified = partialInfo.lastModified;
+                    }
+                    PartialInfo stagedInfo = new PartialInfo(total, etag, lastModified);
+
                     // Get extension
                     String extension = null;
                     MediaType mediaType = responseBody.contentType();
@@ -1326,23 +1509,34 @@ public final class SpiderQueen implements Runnable {
                     }
 
                     OutputStreamPipe osPipe = null;
+                    // Whether the received data is staged to resume from if this try fails
+                    boolean stage = false;
                     try {
                         // Get out put pipe
                         osPipe = mSpiderDen.openOutputStreamPipe(index, extension);
-                        if (osPipe == null) {
+                        if (null == osPipe) {
                             // Can't get pipe
                             error = GetText.getString(R.string.error_write_failed);
                             response.close();
                             break;
                         }
-
-                        long contentLength = responseBody.contentLength();
-                        is = responseBody.byteStream();
                         osPipe.obtain();
                         OutputStream os = osPipe.open();
 
+                        // Check data while downloading, so it needn't be read again
+                        ImageStreamValidator validator = new ImageStreamValidator(hashPrefix);
                         final byte[] data = new byte[1024 * 4];
-                        long receivedSize = 0;
+                        if (offset > 0) {
+                            // The staged data goes first, the hash covers it too
+                            copyPartialFile(partialFile, os, validator, data);
+                        } else {
+                            mSpiderDen.deletePartialFile(partialFile);
+                        }
+
+                        is = responseBody.byteStream();
+                        long receivedSize = offset;
+                        boolean notImage = false;
+                        stage = true;
 
                         while (!Thread.currentThread().isInterrupted()) {
                             int bytesRead = is.read(data);
@@ -1350,18 +1544,35 @@ public final class SpiderQueen implements Runnable {
                                 response.close();
                                 break;
                             }
+                            if (!validator.update(data, 0, bytesRead)) {
+                                // Maybe plain text error page
+                                response.close();
+                                notImage = true;
+                                break;
+                            }
                             os.write(data, 0, bytesRead);
                             receivedSize += bytesRead;
+                            if (limiter != null) {
+                                limiter.throttle(bytesRead);
+                            }
                             // Update page percent
                             if (contentLength > 0) {
                                 mPagePercentMap.put(index, (float) receivedSize / contentLength);
                             }
                             // Notify listener
-                            notifyPageDownload(index, contentLength, receivedSize, bytesRead);
+                            mProgressAggregator.update(index, contentLength, receivedSize, bytesRead);
                         }
                         os.flush();
 
-                        // check download size
+                        if (notImage) {
+                            stage = false;
+                            mSpiderDen.deletePartialFile(partialFile);
+                            error = GetText.getString(R.string.error_reading_failed);
+                            forceHtml = true;
+                            continue;
+                        }
+
+                        // check download size, keep the received data to resume from
                         if (contentLength >= 0) {
                             if (receivedSize < contentLength) {
                                 Log.e(TAG, "Can't download all of image data");
@@ -1372,54 +1583,38 @@ public final class SpiderQueen implements Runnable {
                                 Log.w(TAG, "Received data is more than contentLength");
                             }
                         }
-                    } finally {
-                        if (osPipe != null) {
-                            osPipe.close();
-                            osPipe.release();
-                        }
-                    }
 
-                    InputStreamPipe isPipe = null;
-                    try {
-                        // Get InputStreamPipe
-                        isPipe = mSpiderDen.openInputStreamPipe(index);
-                        if (isPipe == null) {
-                            // Can't get pipe
-                            error = GetText.getString(R.string.error_reading_failed);
+                        // Check interrupted
+                        if (Thread.currentThread().isInterrupted()) {
+                            interrupt = true;
+                            error = "Interrupted";
                             break;
                         }
+                        stage = false;
 
-                        // Check plain txt
-                        isPipe.obtain();
-                        InputStream inputStream = new BufferedInputStream(isPipe.open());
-                        boolean isPlainTxt = true;
-                        for (; ; ) {
-                            int b = inputStream.read();
-                            if (b == -1) {
-                                break;
-                            }
-                            if (b > 126) {
-                                isPlainTxt = false;
-                                break;
-                            }
-                        }
-                        if (isPlainTxt) {
+                        // Check image header and hash
+                        if (!validator.finish()) {
+                            Log.e(TAG, "Invalid image data");
+                            mSpiderDen.deletePartialFile(partialFile);
                             error = GetText.getString(R.string.error_reading_failed);
                             forceHtml = true;
                             continue;
                         }
+
+                        mPreloadPlanner.onPageDownloaded(receivedSize - offset, receivedSize,
+                                SystemClock.uptimeMillis() - startTime);
+                        if (offset > 0) {
+                            mSpiderDen.deletePartialFile(partialFile);
+                        }
                     } finally {
-                        if (isPipe != null) {
-                            isPipe.close();
-                            isPipe.release();
+                        if (osPipe != null) {
+                            osPipe.close();
+                            osPipe.release();
+                        }
+                        // Failed partway, keep what is received for the next try
+                        if (stage) {
+                            mSpiderDen.savePartialFile(index, partialFile, stagedInfo);
                         }
-                    }
-
-                    // Check interrupted
-                    if (Thread.currentThread().isInterrupted()) {
-                        interrupt = true;
-                        error = "Interrupted";
-                        break;
                     }
 
                     if (DEBUG_LOG) {
@@ -1428,26 +1623,37 @@ public final class SpiderQueen implements Runnable {
 
                     // Download finished
                     updatePageState(index, STATE_FINISHED);
-                    try {
-                        Thread.sleep(mDownloadDelay);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    return true;
+                    finished = true;
                 } catch (IOException e) {
                     e.printStackTrace();
                     error = GetText.getString(R.string.error_socket);
                     forceHtml = true;
                 } finally {
                     IOUtils.closeQuietly(is);
+                    if (hostPermit != null) {
+                        mImageHostLimiter.release(hostPermit);
+                    }
+                    if (limiter != null) {
+                        limiter.releaseConnection();
+                    }
 
                     if (DEBUG_LOG) {
                         Log.d(TAG, "End download image " + index);
                     }
                 }
+
+                if (finished) {
+                    // Wait without the connection and the host permit, other workers can use them
+                    try {
+                        Thread.sleep(mDownloadDelay);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    return true;
+                }
             }
 
-            // Remove download failed image
+            // Remove download failed image, the staged data is kept to resume from
             mSpiderDen.remove(index);
 
             updatePageState(index, STATE_FAILED, error);
@@ -1464,30 +1670,19 @@ public final class SpiderQueen implements Runnable {
             int size = mPageStateArray.length;
 
             // Get request index
-            int index;
+            PageRequestQueue.Request request = mPageRequestQueue.poll(size);
+            if (request == null) {
+                // No index any more, stop
+                return false;
+            }
+            int index = request.index;
             // From force request
-            boolean force = false;
-            synchronized (mRequestPageQueue) {
-                if (!mForceRequestPageQueue.isEmpty()) {
-                    index = mForceRequestPageQueue.remove();
-                    force = true;
-                } else if (!mRequestPageQueue.isEmpty()) {
-                    index = mRequestPageQueue.remove();
-                } else if (!mRequestPageQueue2.isEmpty()) {
-                    index = mRequestPageQueue2.remove();
-                } else if (mDownloadPage >= 0 && mDownloadPage < size) {
-                    index = mDownloadPage;
-                    mDownloadPage++;
-                } else {
-                    // No index any more, stop
-                    return false;
-                }
+            boolean force = request.isForce();
 
-                // Check out of range
-                if (index < 0 || index >= size) {
-                    // Invalid index
-                    return true;
-                }
+            // Check out of range
+            if (index < 0 || index >= size) {
+                // Invalid index
+                return true;
             }
 
             synchronized (mPageStateLock) {
@@ -1520,35 +1715,8 @@ public final class SpiderQueen implements Runnable {
                 }
             }
 
-            String pToken = null;
             // Get token
-            while (!Thread.currentThread().isInterrupted()) {
-                synchronized (mPTokenLock) {
-                    pToken = spiderInfo.pTokenMap.get(index);
-                }
-                if (pToken == null) {
-                    mRequestPTokenQueue.add(index);
-                    // Notify Queen
-                    synchronized (mQueenLock) {
-                        mQueenLock.notify();
-                    }
-                    // Wait
-                    synchronized (mWorkerLock) {
-                        try {
-                            mWorkerLock.wait();
-                        } catch (InterruptedException e) {
-                            // Interrupted
-                            if (DEBUG_LOG) {
-                                Log.d(TAG, Thread.currentThread().getName() + " Interrupted");
-                            }
-                            break;
-                        }
-                    }
-                } else {
-                    break;
-                }
-            }
-
+            String pToken = mPTokenScheduler.waitPToken(spiderInfo, index);
             if (pToken == null) {
                 // Interrupted
                 // Get token failed
@@ -1559,31 +1727,8 @@ public final class SpiderQueen implements Runnable {
             String previousPToken = null;
             int previousIndex = index - 1;
             // Get token
-            while (previousIndex >= 0 && !Thread.currentThread().isInterrupted()) {
-                synchronized (mPTokenLock) {
-                    previousPToken = spiderInfo.pTokenMap.get(previousIndex);
-                }
-                if (previousPToken == null) {
-                    mRequestPTokenQueue.add(previousIndex);
-                    // Notify Queen
-                    synchronized (mQueenLock) {
-                        mQueenLock.notify();
-                    }
-                    // Wait
-                    synchronized (mWorkerLock) {
-                        try {
-                            mWorkerLock.wait();
-                        } catch (InterruptedException e) {
-                            // Interrupted
-                            if (DEBUG_LOG) {
-                                Log.d(TAG, Thread.currentThread().getName() + " Interrupted");
-                            }
-                            break;
-                        }
-                    }
-                } else {
-                    break;
-                }
+            if (previousIndex >= 0) {
+                previousPToken = mPTokenScheduler.waitPToken(spiderInfo, previousIndex);
             }
 
             if (SpiderInfo.TOKEN_FAILED.equals(pToken)) {
@@ -1641,6 +1786,24 @@ public final class SpiderQueen implements Runnable {
             }
         }
 
+        // Must be called with mDecodeRequestQueue locked and not empty
+        private int removeNearestDecodeRequest() {
+            int readingIndex = mReadingIndex;
+            if (readingIndex == GalleryPageAdapter.INVALID_INDEX) {
+                return mDecodeRequestQueue.remove(0);
+            }
+            int nearest = 0;
+            int nearestDistance = Integer.MAX_VALUE;
+            for (int i = 0, n = mDecodeRequestQueue.size(); i < n; i++) {
+                int distance = Math.abs(mDecodeRequestQueue.get(i) - readingIndex);
+                if (distance < nearestDistance) {
+                    nearest = i;
+                    nearestDistance = distance;
+                }
+            }
+            return mDecodeRequestQueue.remove(nearest);
+        }
+
         @Override
         public void run() {
             if (DEBUG_LOG) {
@@ -1659,7 +1822,7 @@ public final class SpiderQueen implements Runnable {
                         }
                         continue;
                     }
-                    index = mDecodeRequestQueue.remove();
+                    index = removeNearestDecodeRequest();
                     mDecodeIndexArray[mThreadIndex] = index;
                 }
 
@@ -1696,7 +1859,9 @@ public final class SpiderQueen implements Runnable {
                 }
 
                 if (is != null) {
-                    image = BitmapFactory.decodeStream(is);
+                    final int pageIndex = index;
+                    image = PageDecoder.decode(is, () -> openPageStream(pageIndex), mDecodeTarget);
+                    IOUtils.closeQuietly(is);
                     if (image == null) {
                         error = GetText.getString(R.string.error_decoding_failed);
                     }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import android.os.SystemClock;
+
+import com.hippo.ehviewer.Settings;
+import com.hippo.yorozuya.MathUtils;
+
+/**
+ * Global connection and bandwidth cap shared by all downloading galleries.
+ */
+public final class TransferLimiter {
+
+    private static final int MAX_CONNECTIONS = 20;
+
+    private static final TransferLimiter sInstance = new TransferLimiter();
+
+    private final Object mConnectionLock = new Object();
+    private int mConnectionCount;
+
+    private final Object mBandwidthLock = new Object();
+    // Bytes per second, 0 for no limit
+    private volatile long mBandwidth;
+    private long mAvailableBytes;
+    private long mLastRefillTime;
+
+    private TransferLimiter() {
+    }
+
+    public static TransferLimiter getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Blocks until the connection count is under the cap.
+     *
+     * @return false if interrupted
+     */
+    public boolean acquireConnection() {
+        mBandwidth = Math.max(Settings.getDownloadSpeedLimit(), 0) * 1024L;
+        int maxConnections = MathUtils.clamp(Settings.getDownloadMaxConnections(), 1, MAX_CONNECTIONS);
+        synchronized (mConnectionLock) {
+            while (mConnectionCount >= maxConnections) {
+                try {
+                    mConnectionLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            mConnectionCount++;
+            return true;
+        }
+    }
+
+    public void releaseConnection() {
+        synchronized (mConnectionLock) {
+            mConnectionCount--;
+            mConnectionLock.notify();
+        }
+    }
+
+    /**
+     * Sleeps as long as it takes to keep all transfers under the bandwidth cap.
+     * The interrupt flag is kept if interrupted.
+     */
+    public void throttle(int bytes) {
+        long bandwidth = mBandwidth;
+        if (bandwidth <= 0) {
+            return;
+        }
+
+        long sleep;
+        synchronized (mBandwidthLock) {
+            long now = SystemClock.elapsedRealtime();
+            // Allow a burst of one second at most
+            mAvailableBytes = Math.min(bandwidth,
+                    mAvailableBytes + (now - mLastRefillTime) * bandwidth / 1000);
+            mLastRefillTime = now;
+            mAvailableBytes -= bytes;
+            sleep = mAvailableBytes < 0 ? -mAvailableBytes * 1000 / bandwidth : 0;
+        }
+
+        if (sleep > 0) {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -322,6 +322,7 @@ public class GalleryActivity extends EhActivity implements SeekBar.OnSeekBarChan
             finish();
             return;
         }
+        mGalleryProvider.setAllowHardwareBitmap(Settings.getHardwareBitmap());
         mGalleryProvider.start();
 
         // Get start page
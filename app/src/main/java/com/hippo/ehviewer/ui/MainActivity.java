@@ -49,7 +49,7 @@ import com.hippo.drawerlayout.DrawerLayout;
 import com.hippo.ehviewer.AppConfig;
 import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.Settings;
-import com.hippo.ehviewer.client.EhTagDatabase;
+import com.hippo.ehviewer.client.EhTagDatabaseManager;
 import com.hippo.ehviewer.client.EhUrlOpener;
 import com.hippo.ehviewer.client.EhUtils;
 import com.hippo.ehviewer.client.data.ListUrlBuilder;
@@ -342,7 +342,7 @@ public final class MainActivity extends StageActivity
             onRestore(savedInstanceState);
         }
 
-        EhTagDatabase.update(this);
+        EhTagDatabaseManager.update(this);
     }
 
     private void checkDownloadLocation() {
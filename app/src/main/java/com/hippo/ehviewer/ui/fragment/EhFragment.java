@@ -27,7 +27,7 @@ import androidx.preference.Preference;
 import com.hippo.ehviewer.EhApplication;
 import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.Settings;
-import com.hippo.ehviewer.client.EhTagDatabase;
+import com.hippo.ehviewer.client.EhTagDatabaseManager;
 
 public class EhFragment extends BasePreferenceFragment {
 
@@ -52,7 +52,7 @@ public class EhFragment extends BasePreferenceFragment {
         showTagTranslations.setOnPreferenceChangeListener(this);
         blackDarkTheme.setOnPreferenceChangeListener(this);
 
-        if (!EhTagDatabase.isPossible(requireActivity())) {
+        if (!EhTagDatabaseManager.isPossible(requireActivity())) {
             getPreferenceScreen().removePreference(showTagTranslations);
             getPreferenceScreen().removePreference(tagTranslationsSource);
         }
@@ -76,7 +76,7 @@ public class EhFragment extends BasePreferenceFragment {
             requireActivity().setResult(Activity.RESULT_OK);
         } else if (Settings.KEY_SHOW_TAG_TRANSLATIONS.equals(key)) {
             if (Boolean.TRUE.equals(newValue)) {
-                EhTagDatabase.update(requireActivity());
+                EhTagDatabaseManager.update(requireActivity());
             }
         } else if (Settings.KEY_BLACK_DARK_THEME.equals(key)) {
             if ((requireActivity().getResources().getConfiguration().uiMode & Configuration.UI_MODE_NIGHT_YES) > 0) {
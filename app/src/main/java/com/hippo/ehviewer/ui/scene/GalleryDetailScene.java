@@ -82,9 +82,11 @@ import com.hippo.ehviewer.Settings;
 import com.hippo.ehviewer.UrlOpener;
 import com.hippo.ehviewer.client.EhCacheKeyFactory;
 import com.hippo.ehviewer.client.EhClient;
+import com.hippo.ehviewer.client.EhConfig;
 import com.hippo.ehviewer.client.EhFilter;
 import com.hippo.ehviewer.client.EhRequest;
 import com.hippo.ehviewer.client.EhTagDatabase;
+import com.hippo.ehviewer.client.EhTagDatabaseManager;
 import com.hippo.ehviewer.client.EhUrl;
 import com.hippo.ehviewer.client.EhUtils;
 import com.hippo.ehviewer.client.data.GalleryComment;
@@ -873,7 +875,7 @@ public class GalleryDetailScene extends BaseScene implements View.OnClickListene
             mThumb.load(EhCacheKeyFactory.getThumbKey(gi.gid), gi.thumb);
             mTitle.setText(EhUtils.getSuitableTitle(gi));
             mUploader.setText(gi.uploader);
-            mCategory.setText(EhUtils.getCategory(gi.category));
+            mCategory.setText(EhConfig.getCategory(gi.category));
             mCategory.setTextColor(EhUtils.getCategoryColor(gi.category));
             updateDownloadText();
         }
@@ -918,7 +920,7 @@ public class GalleryDetailScene extends BaseScene implements View.OnClickListene
         mThumb.load(EhCacheKeyFactory.getThumbKey(gd.gid), gd.thumb);
         mTitle.setText(EhUtils.getSuitableTitle(gd));
         mUploader.setText(gd.uploader);
-        mCategory.setText(EhUtils.getCategory(gd.category));
+        mCategory.setText(EhConfig.getCategory(gd.category));
         mCategory.setTextColor(EhUtils.getCategoryColor(gd.category));
         updateDownloadText();
 
@@ -959,7 +961,7 @@ public class GalleryDetailScene extends BaseScene implements View.OnClickListene
             mNoTags.setVisibility(View.GONE);
         }
 
-        EhTagDatabase ehTags = Settings.getShowTagTranslations() ? EhTagDatabase.getInstance(context) : null;
+        EhTagDatabase ehTags = Settings.getShowTagTranslations() ? EhTagDatabaseManager.getInstance(context) : null;
         int colorTag = AttrResources.getAttrColor(context, R.attr.tagBackgroundColor);
         int colorName = AttrResources.getAttrColor(context, R.attr.tagGroupBackgroundColor);
         for (GalleryTagGroup tg : tagGroups) {
@@ -36,8 +36,8 @@ import com.hippo.easyrecyclerview.LinearDividerItemDecoration;
 import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.Settings;
 import com.hippo.ehviewer.UrlOpener;
+import com.hippo.ehviewer.client.EhConfig;
 import com.hippo.ehviewer.client.EhUrl;
-import com.hippo.ehviewer.client.EhUtils;
 import com.hippo.ehviewer.client.data.GalleryDetail;
 import com.hippo.util.ClipboardUtil;
 import com.hippo.yorozuya.AssertUtils;
@@ -104,7 +104,7 @@ public final class GalleryInfoScene extends ToolbarScene {
         mKeys.add(getString(R.string.key_thumb));
         mValues.add(gd.thumb);
         mKeys.add(getString(R.string.key_category));
-        mValues.add(EhUtils.getCategory(gd.category));
+        mValues.add(EhConfig.getCategory(gd.category));
         mKeys.add(getString(R.string.key_uploader));
         mValues.add(gd.uploader);
         mKeys.add(getString(R.string.key_posted));
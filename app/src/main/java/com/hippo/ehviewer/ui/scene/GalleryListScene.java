@@ -85,6 +85,7 @@ import com.hippo.ehviewer.FavouriteStatusRouter;
 import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.Settings;
 import com.hippo.ehviewer.client.EhClient;
+import com.hippo.ehviewer.client.EhConfig;
 import com.hippo.ehviewer.client.EhRequest;
 import com.hippo.ehviewer.client.EhUrl;
 import com.hippo.ehviewer.client.EhUtils;
@@ -278,7 +279,7 @@ public final class GalleryListScene extends BaseScene
         } else if (!TextUtils.isEmpty(keyword)) {
             return keyword;
         } else if (MathUtils.hammingWeight(category) == 1) {
-            return EhUtils.getCategory(category);
+            return EhConfig.getCategory(category);
         } else {
             return null;
         }
@@ -1549,6 +1550,13 @@ public final class GalleryListScene extends BaseScene
         }
     }
 
+    private void onGetGalleryListProgress(GalleryInfo info, int taskId) {
+        if (mHelper != null && mSearchBarMover != null &&
+                mHelper.isCurrentTask(taskId)) {
+            mHelper.onGetPartialData(taskId, Collections.singletonList(info));
+        }
+    }
+
     private void onGetGalleryListFailure(Exception e, int taskId) {
         if (mHelper != null && mSearchBarMover != null &&
                 mHelper.isCurrentTask(taskId)) {
@@ -1561,7 +1569,8 @@ public final class GalleryListScene extends BaseScene
     private @interface State {
     }
 
-    private static class GetGalleryListListener extends EhCallback<GalleryListScene, GalleryListParser.Result> {
+    private static class GetGalleryListListener extends EhCallback<GalleryListScene, GalleryListParser.Result>
+            implements EhClient.ProgressCallback<GalleryListParser.Result, GalleryInfo> {
 
         private final int mTaskId;
 
@@ -1578,6 +1587,14 @@ public final class GalleryListScene extends BaseScene
             }
         }
 
+        @Override
+        public void onProgress(GalleryInfo info) {
+            GalleryListScene scene = getScene();
+            if (scene != null) {
+                scene.onGetGalleryListProgress(info, mTaskId);
+            }
+        }
+
         @Override
         public void onFailure(Exception e) {
             GalleryListScene scene = getScene();
@@ -63,6 +63,7 @@ import com.hippo.ehviewer.FavouriteStatusRouter;
 import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.Settings;
 import com.hippo.ehviewer.client.EhCacheKeyFactory;
+import com.hippo.ehviewer.client.EhConfig;
 import com.hippo.ehviewer.client.EhUtils;
 import com.hippo.ehviewer.client.data.GalleryInfo;
 import com.hippo.ehviewer.dao.DownloadInfo;
@@ -630,7 +631,7 @@ public class HistoryScene extends ToolbarScene {
             holder.uploader.setText(gi.uploader);
             holder.rating.setRating(gi.rating);
             TextView category = holder.category;
-            String newCategoryText = EhUtils.getCategory(gi.category);
+            String newCategoryText = EhConfig.getCategory(gi.category);
             if (!newCategoryText.contentEquals(category.getText())) {
                 category.setText(newCategoryText);
                 category.setBackgroundColor(EhUtils.getCategoryColor(gi.category));
@@ -50,6 +50,7 @@ import com.hippo.easyrecyclerview.EasyRecyclerView;
 import com.hippo.easyrecyclerview.LinearDividerItemDecoration;
 import com.hippo.ehviewer.R;
 import com.hippo.ehviewer.client.EhTagDatabase;
+import com.hippo.ehviewer.client.EhTagDatabaseManager;
 import com.hippo.view.ViewTransition;
 import com.hippo.yorozuya.AnimationUtils;
 import com.hippo.yorozuya.LayoutUtils;
@@ -182,7 +183,7 @@ public class SearchBar extends MaterialCardView implements View.OnClickListener,
             suggestions.add(new KeywordSuggestion(keyword));
         }
 
-        EhTagDatabase ehTagDatabase = EhTagDatabase.getInstance(getContext());
+        EhTagDatabase ehTagDatabase = EhTagDatabaseManager.getInstance(getContext());
         if (!TextUtils.isEmpty(text) && ehTagDatabase != null && !text.endsWith(" ")) {
             String[] s = text.split(" ");
             if (s.length > 0) {
@@ -225,6 +225,19 @@ class CookieDatabase {
         cookieIdMap.remove(cookie);
     }
 
+    /**
+     * Runs the database operations in one transaction.
+     */
+    public void runInTransaction(Runnable runnable) {
+        db.beginTransaction();
+        try {
+            runnable.run();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     public void clear() {
         db.delete(TABLE_COOKIE, null, null);
         cookieIdMap.clear();
@@ -24,13 +24,15 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import com.hippo.util.IoThreadPoolExecutor;
 import com.hippo.yorozuya.ObjectUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.Cookie;
 import okhttp3.CookieJar;
@@ -38,30 +40,22 @@ import okhttp3.HttpUrl;
 
 public class CookieRepository implements CookieJar {
 
-    /**
-     * Quick and dirty pattern to differentiate IP addresses from hostnames. This is an approximation
-     * of Android's private InetAddress#isNumeric API.
-     * <p>
-     * This matches IPv6 addresses as a hex string containing at least one colon, and possibly
-     * including dots after the first colon. It matches IPv4 addresses as strings containing only
-     * decimal digits and dots. This pattern matches strings like "a:.23" and "54" that are neither IP
-     * addresses nor hostnames; they will be verified as IP addresses (which is a more strict
-     * verification).
-     */
-    private static final Pattern VERIFY_AS_IP_ADDRESS = Pattern.compile("([0-9a-fA-F]*:[0-9a-fA-F:.]*)|([\\d.]+)");
     private final CookieDatabase db;
+    // Guarded by this
     private final Map<String, CookieSet> map;
+    // Copied from map on every change
+    private volatile CookieSnapshot snapshot;
+    private final AtomicBoolean purgeScheduled = new AtomicBoolean();
+    // Database operations not done yet, in order. Guarded by itself
+    private final List<Runnable> pendingDbOps = new ArrayList<>();
+    private boolean flushScheduled;
+    // Guarded by db
+    private boolean closed;
 
     public CookieRepository(Context context, String name) {
         db = new CookieDatabase(context, name);
         map = db.getAllCookies();
-    }
-
-    /**
-     * Returns true if `host` is not a host name and might be an IP address.
-     */
-    private static boolean verifyAsIpAddress(String host) {
-        return VERIFY_AS_IP_ADDRESS.matcher(host).matches();
+        updateSnapshot();
     }
 
     // okhttp3.Cookie.domainMatch(HttpUrl, String)
@@ -74,7 +68,76 @@ public class CookieRepository implements CookieJar {
 
         return urlHost.endsWith(domain)
                 && urlHost.charAt(urlHost.length() - domain.length() - 1) == '.'
-                && !verifyAsIpAddress(urlHost); // As in 'example.com' matching 'www.example.com'.
+                && !CookieSnapshot.verifyAsIpAddress(urlHost); // As in 'example.com' matching 'www.example.com'.
+    }
+
+    // Call it with this locked
+    private void updateSnapshot() {
+        Map<String, List<Cookie>> newSnapshot = new HashMap<>(map.size());
+        for (Map.Entry<String, CookieSet> entry : map.entrySet()) {
+            List<Cookie> cookies = new ArrayList<>(entry.getValue().values());
+            if (!cookies.isEmpty()) {
+                Collections.sort(cookies, CookieSnapshot.PATH_COMPARATOR);
+                newSnapshot.put(entry.getKey(), Collections.unmodifiableList(cookies));
+            }
+        }
+        snapshot = new CookieSnapshot(newSnapshot);
+    }
+
+    /**
+     * Database operations are done in background in order, batched in transactions.
+     */
+    private void enqueueDbOp(Runnable op) {
+        synchronized (pendingDbOps) {
+            pendingDbOps.add(op);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                IoThreadPoolExecutor.getInstance().execute(this::flushDbOps);
+            }
+        }
+    }
+
+    private void flushDbOps() {
+        synchronized (db) {
+            List<Runnable> ops;
+            synchronized (pendingDbOps) {
+                ops = new ArrayList<>(pendingDbOps);
+                pendingDbOps.clear();
+                flushScheduled = false;
+            }
+            if (ops.isEmpty() || closed) {
+                return;
+            }
+            db.runInTransaction(() -> {
+                for (Runnable op : ops) {
+                    op.run();
+                }
+            });
+        }
+    }
+
+    private void schedulePurge() {
+        if (purgeScheduled.compareAndSet(false, true)) {
+            IoThreadPoolExecutor.getInstance().execute(this::purgeExpired);
+        }
+    }
+
+    private synchronized void purgeExpired() {
+        purgeScheduled.set(false);
+        List<Cookie> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (CookieSet set : map.values()) {
+            set.removeExpired(now, expired);
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (Cookie cookie : expired) {
+            if (cookie.persistent()) {
+                enqueueDbOp(() -> db.remove(cookie));
+            }
+        }
+        updateSnapshot();
     }
 
     public synchronized void addCookie(Cookie cookie) {
@@ -109,15 +172,20 @@ public class CookieRepository implements CookieJar {
         }
 
         if (toRemove != null) {
-            db.remove(toRemove);
+            Cookie removed = toRemove;
+            enqueueDbOp(() -> db.remove(removed));
         }
         if (toAdd != null) {
+            Cookie added = toAdd;
             if (toUpdate != null) {
-                db.update(toUpdate, toAdd);
+                Cookie updated = toUpdate;
+                enqueueDbOp(() -> db.update(updated, added));
             } else {
-                db.add(toAdd);
+                enqueueDbOp(() -> db.add(added));
             }
         }
+
+        updateSnapshot();
     }
 
     public String getCookieHeader(HttpUrl url) {
@@ -133,30 +201,17 @@ public class CookieRepository implements CookieJar {
         return cookieHeader.toString();
     }
 
-    public synchronized List<Cookie> getCookies(HttpUrl url) {
-        List<Cookie> accepted = new ArrayList<>();
-        List<Cookie> expired = new ArrayList<>();
-
-        for (Map.Entry<String, CookieSet> entry : map.entrySet()) {
-            String domain = entry.getKey();
-            CookieSet cookieSet = entry.getValue();
-            if (domainMatch(url, domain)) {
-                cookieSet.get(url, accepted, expired);
-            }
-        }
-
-        for (Cookie cookie : expired) {
-            if (cookie.persistent()) {
-                db.remove(cookie);
-            }
+    /**
+     * Lock-free. Looks up the host and its parent domains in the snapshot.
+     * The result must not be modified.
+     */
+    public List<Cookie> getCookies(HttpUrl url) {
+        CookieSnapshot snapshot = this.snapshot;
+        List<Cookie> cookies = snapshot.get(url, System.currentTimeMillis());
+        if (snapshot.hasExpired()) {
+            schedulePurge();
         }
-
-        // RFC 6265 Section-5.4 step 2, sort the cookie-list
-        // Cookies with longer paths are listed before cookies with shorter paths.
-        // Ignore creation-time, we don't store them.
-        Collections.sort(accepted, (o1, o2) -> o2.path().length() - o1.path().length());
-
-        return accepted;
+        return cookies;
     }
 
     public boolean contains(HttpUrl url, String name) {
@@ -173,11 +228,16 @@ public class CookieRepository implements CookieJar {
      */
     public synchronized void clear() {
         map.clear();
-        db.clear();
+        updateSnapshot();
+        enqueueDbOp(db::clear);
     }
 
     public synchronized void close() {
-        db.close();
+        synchronized (db) {
+            flushDbOps();
+            closed = true;
+            db.close();
+        }
     }
 
     @Override
@@ -23,13 +23,13 @@ package com.hippo.network;
 import com.hippo.util.HashCodeUtils;
 import com.hippo.yorozuya.ObjectUtils;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import okhttp3.Cookie;
-import okhttp3.HttpUrl;
 
 class CookieSet {
 
@@ -54,22 +54,23 @@ class CookieSet {
     }
 
     /**
-     * Get cookies for the url. Fill {@code accepted} and {@code expired}.
+     * Removes expired cookies and fills them into {@code expired}.
      */
-    public void get(HttpUrl url, List<Cookie> accepted, List<Cookie> expired) {
-        long now = System.currentTimeMillis();
+    public void removeExpired(long now, List<Cookie> expired) {
         Iterator<Map.Entry<Key, Cookie>> iterator = map.entrySet().iterator();
         while (iterator.hasNext()) {
             Cookie cookie = iterator.next().getValue();
             if (cookie.expiresAt() <= now) {
                 iterator.remove();
                 expired.add(cookie);
-            } else if (cookie.matches(url)) {
-                accepted.add(cookie);
             }
         }
     }
 
+    public Collection<Cookie> values() {
+        return map.values();
+    }
+
     static class Key {
 
         private final String name;
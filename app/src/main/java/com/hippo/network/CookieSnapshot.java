@@ -0,0 +1,160 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import okhttp3.Cookie;
+import okhttp3.HttpUrl;
+
+/**
+ * Cookies of a {@link CookieRepository} at one time, replaced on every change.
+ * <p>
+ * Results of hosts whose cookies all have the root path only depend on host
+ * and scheme, so they are cached until the first cookie in them expires.
+ */
+final class CookieSnapshot {
+
+    /**
+     * Quick and dirty pattern to differentiate IP addresses from hostnames. This is an approximation
+     * of Android's private InetAddress#isNumeric API.
+     * <p>
+     * This matches IPv6 addresses as a hex string containing at least one colon, and possibly
+     * including dots after the first colon. It matches IPv4 addresses as strings containing only
+     * decimal digits and dots. This pattern matches strings like "a:.23" and "54" that are neither IP
+     * addresses nor hostnames; they will be verified as IP addresses (which is a more strict
+     * verification).
+     */
+    private static final Pattern VERIFY_AS_IP_ADDRESS = Pattern.compile("([0-9a-fA-F]*:[0-9a-fA-F:.]*)|([\\d.]+)");
+    // RFC 6265 Section-5.4 step 2, sort the cookie-list
+    // Cookies with longer paths are listed before cookies with shorter paths.
+    // Ignore creation-time, we don't store them.
+    static final Comparator<Cookie> PATH_COMPARATOR = (o1, o2) -> o2.path().length() - o1.path().length();
+
+    // Domain to cookies sorted by path. Never modified
+    private final Map<String, List<Cookie>> cookies;
+    // Host to result of get(), dropped with the snapshot
+    private final Map<String, CachedCookies> httpCache = new ConcurrentHashMap<>();
+    private final Map<String, CachedCookies> httpsCache = new ConcurrentHashMap<>();
+    // An expired cookie is seen, the repository should purge
+    private volatile boolean hasExpired;
+
+    /**
+     * @param cookies domain to cookies sorted by {@link #PATH_COMPARATOR}, never modified
+     */
+    CookieSnapshot(Map<String, List<Cookie>> cookies) {
+        this.cookies = cookies;
+    }
+
+    /**
+     * Returns true if `host` is not a host name and might be an IP address.
+     */
+    static boolean verifyAsIpAddress(String host) {
+        return VERIFY_AS_IP_ADDRESS.matcher(host).matches();
+    }
+
+    boolean hasExpired() {
+        return hasExpired;
+    }
+
+    /**
+     * Lock-free. The result must not be modified.
+     */
+    List<Cookie> get(HttpUrl url, long now) {
+        String host = url.host();
+        Map<String, CachedCookies> cache = url.isHttps() ? httpsCache : httpCache;
+        CachedCookies cached = cache.get(host);
+        if (cached != null && now < cached.expiresAt) {
+            return cached.cookies;
+        }
+
+        CachedCookies result = match(url, now);
+        if (result.expiresAt != CachedCookies.NOT_CACHEABLE) {
+            cache.put(host, result);
+        }
+        return result.cookies;
+    }
+
+    /**
+     * Looks up the host and its parent domains without the cache.
+     */
+    CachedCookies match(HttpUrl url, long now) {
+        List<Cookie> accepted = new ArrayList<>();
+        boolean expired = false;
+        boolean cacheable = true;
+        int matchedDomains = 0;
+        long expiresAt = Long.MAX_VALUE;
+
+        String host = url.host();
+        // IP addresses only match themselves
+        boolean matchParent = !verifyAsIpAddress(host);
+        for (String domain = host; domain != null; ) {
+            List<Cookie> cookies = this.cookies.get(domain);
+            if (cookies != null) {
+                matchedDomains++;
+                for (int i = 0, n = cookies.size(); i < n; i++) {
+                    Cookie cookie = cookies.get(i);
+                    if (!"/".equals(cookie.path())) {
+                        cacheable = false;
+                    }
+                    if (cookie.expiresAt() <= now) {
+                        expired = true;
+                    } else if (cookie.matches(url)) {
+                        accepted.add(cookie);
+                        expiresAt = Math.min(expiresAt, cookie.expiresAt());
+                    }
+                }
+            }
+
+            int index = domain.indexOf('.');
+            domain = matchParent && index != -1 ? domain.substring(index + 1) : null;
+        }
+
+        if (expired) {
+            hasExpired = true;
+        }
+
+        // Cookies of one domain are sorted already
+        if (matchedDomains > 1) {
+            Collections.sort(accepted, PATH_COMPARATOR);
+        }
+
+        return new CachedCookies(Collections.unmodifiableList(accepted),
+                cacheable && !expired ? expiresAt : CachedCookies.NOT_CACHEABLE);
+    }
+
+    static final class CachedCookies {
+
+        static final long NOT_CACHEABLE = Long.MIN_VALUE;
+
+        final List<Cookie> cookies;
+        // Time of the first cookie expires, NOT_CACHEABLE if it can't be cached
+        final long expiresAt;
+
+        CachedCookies(List<Cookie> cookies, long expiresAt) {
+            this.cookies = cookies;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.network;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Caps the requests to a host at the same time. OkHttp's Dispatcher only
+ * caps async calls, it is for the threads calling execute().
+ */
+public class HostLimiter {
+
+    private final int mMaxPerHost;
+    private final ConcurrentHashMap<String, Semaphore> mSemaphoreMap = new ConcurrentHashMap<>();
+
+    public HostLimiter(int maxPerHost) {
+        mMaxPerHost = maxPerHost;
+    }
+
+    private Semaphore getSemaphore(String host) {
+        Semaphore semaphore = mSemaphoreMap.get(host);
+        if (semaphore == null) {
+            semaphore = new Semaphore(mMaxPerHost, true);
+            Semaphore old = mSemaphoreMap.putIfAbsent(host, semaphore);
+            if (old != null) {
+                semaphore = old;
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * Blocks until the host of the url is under the cap.
+     * Call {@link #release(HttpUrl)} with the same url after it.
+     *
+     * @return false if interrupted, the interrupt flag is kept
+     */
+    public boolean acquire(@NonNull HttpUrl url) {
+        try {
+            getSemaphore(url.host()).acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release(@NonNull HttpUrl url) {
+        getSemaphore(url.host()).release();
+    }
+}
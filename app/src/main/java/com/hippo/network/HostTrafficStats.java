@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.network;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+
+/**
+ * Counts response body bytes and the time spent reading them, per host.
+ * Set it as the event listener factory of an OkHttpClient.
+ */
+public class HostTrafficStats implements EventListener.Factory {
+
+    private final ConcurrentHashMap<String, Stats> mStatsMap = new ConcurrentHashMap<>();
+
+    @NonNull
+    @Override
+    public EventListener create(@NonNull Call call) {
+        return new Listener(call.request().url().host());
+    }
+
+    @NonNull
+    public List<String> getHosts() {
+        return new ArrayList<>(mStatsMap.keySet());
+    }
+
+    public long getBytes(@NonNull String host) {
+        Stats stats = mStatsMap.get(host);
+        return stats != null ? stats.bytes.get() : 0;
+    }
+
+    /**
+     * @return average bytes per second while reading response bodies, 0 for unknown
+     */
+    public long getBytesPerSecond(@NonNull String host) {
+        Stats stats = mStatsMap.get(host);
+        if (stats == null) {
+            return 0;
+        }
+        long time = stats.time.get();
+        return time > 0 ? stats.bytes.get() * 1000 / time : 0;
+    }
+
+    public void clear() {
+        mStatsMap.clear();
+    }
+
+    private Stats getStats(String host) {
+        Stats stats = mStatsMap.get(host);
+        if (stats == null) {
+            stats = new Stats();
+            Stats old = mStatsMap.putIfAbsent(host, stats);
+            if (old != null) {
+                stats = old;
+            }
+        }
+        return stats;
+    }
+
+    private static class Stats {
+        final AtomicLong bytes = new AtomicLong();
+        // Milliseconds
+        final AtomicLong time = new AtomicLong();
+    }
+
+    private class Listener extends EventListener {
+
+        private final String mHost;
+        private long mBodyStartTime;
+
+        Listener(String host) {
+            mHost = host;
+        }
+
+        @Override
+        public void responseBodyStart(@NonNull Call call) {
+            mBodyStartTime = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void responseBodyEnd(@NonNull Call call, long byteCount) {
+            Stats stats = getStats(mHost);
+            stats.bytes.addAndGet(byteCount);
+            stats.time.addAndGet(SystemClock.elapsedRealtime() - mBodyStartTime);
+        }
+    }
+}
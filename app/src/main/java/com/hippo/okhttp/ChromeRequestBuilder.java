@@ -16,6 +16,7 @@
 
 package com.hippo.okhttp;
 
+import okhttp3.Headers;
 import okhttp3.Request;
 
 public class ChromeRequestBuilder extends Request.Builder {
@@ -30,10 +31,15 @@ public class ChromeRequestBuilder extends Request.Builder {
     private static final String CHROME_ACCEPT_LANGUAGE =
             "en-US,en;q=0.5";
 
+    // Checked once, copied into every request
+    private static final Headers CHROME_HEADERS = new Headers.Builder()
+            .add("User-Agent", CHROME_USER_AGENT)
+            .add("Accept", CHROME_ACCEPT)
+            .add("Accept-Language", CHROME_ACCEPT_LANGUAGE)
+            .build();
+
     public ChromeRequestBuilder(String url) {
         url(url);
-        addHeader("User-Agent", CHROME_USER_AGENT);
-        addHeader("Accept", CHROME_ACCEPT);
-        addHeader("Accept-Language", CHROME_ACCEPT_LANGUAGE);
+        headers(CHROME_HEADERS);
     }
 }
@@ -254,12 +254,28 @@ public class ContentLayout extends FrameLayout {
         private int mCurrentTaskType;
         private int mCurrentTaskPage;
         private int mNextPageScrollSize;
+        /**
+         * Where the data of the current task starts if part of its page
+         * is shown before it is complete, otherwise -1.
+         * The part is always at the end of <code>mData</code>.
+         */
+        private int mPartialStart = -1;
+        /**
+         * The pages which the part of a refreshing page takes the place of,
+         * they come back if the page never completes. Null if nothing is taken.
+         */
+        private ArrayList<E> mReplacedData;
+        private IntList mReplacedPageDivider;
+        private int mReplacedStartPage;
+        private int mReplacedEndPage;
+        private int mReplacedPages;
+        private int mReplacedNextPage;
         private String mEmptyString = "No hint";
         private final SwipeRefreshLayout.OnRefreshListener mOnRefreshListener = new SwipeRefreshLayout.OnRefreshListener() {
             @Override
             public void onRefresh() {
                 if (mStartPage > 0) {
-                    mCurrentTaskId = mIdGenerator.nextId();
+                    mCurrentTaskId = nextTaskId();
                     mCurrentTaskType = TYPE_PRE_PAGE_KEEP_POS;
                     mCurrentTaskPage = mStartPage - 1;
                     getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -271,25 +287,26 @@ public class ContentLayout extends FrameLayout {
         private final RecyclerView.OnScrollListener mOnScrollListener = new RecyclerView.OnScrollListener() {
             @Override
             public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
-                if (!mRefreshLayout.isRefreshing() && !recyclerView.canScrollVertically(1) && mEndPage < mPages) {
+                if (!mRefreshLayout.isRefreshing() && mPartialStart == -1 &&
+                        !recyclerView.canScrollVertically(1) && mEndPage < mPages) {
                     // Get next page
                     mBottomProgress.show();
                     if (mEndPage < mPages) {
                         // Get next page
                         // Fill pages before NextPage with empty list
                         while (mNextPage > mEndPage && mEndPage < mPages) {
-                            mCurrentTaskId = mIdGenerator.nextId();
+                            mCurrentTaskId = nextTaskId();
                             mCurrentTaskType = TYPE_NEXT_PAGE_KEEP_POS;
                             mCurrentTaskPage = mEndPage;
                             onGetPageData(mCurrentTaskId, mPages, mNextPage, Collections.emptyList());
                         }
-                        mCurrentTaskId = mIdGenerator.nextId();
+                        mCurrentTaskId = nextTaskId();
                         mCurrentTaskType = TYPE_NEXT_PAGE_KEEP_POS;
                         mCurrentTaskPage = mEndPage;
                         getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
                     } else if (mEndPage == mPages) {
                         // Refresh last page
-                        mCurrentTaskId = mIdGenerator.nextId();
+                        mCurrentTaskId = nextTaskId();
                         mCurrentTaskType = TYPE_REFRESH_PAGE;
                         mCurrentTaskPage = mEndPage - 1;
                         getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -456,9 +473,131 @@ public class ContentLayout extends FrameLayout {
         protected void onClearData() {
         }
 
+        private int nextTaskId() {
+            // The part of the page of the last task is never completed
+            if (removePartialData(true)) {
+                notifyDataSetChanged();
+            }
+            return mIdGenerator.nextId();
+        }
+
+        /**
+         * Removes the shown part of the page of the current task without notifying.
+         *
+         * @param restore true to bring back the pages the part took the place of
+         * @return false if there is no part shown
+         */
+        private boolean removePartialData(boolean restore) {
+            if (mPartialStart == -1) {
+                return false;
+            }
+            List<E> partial = mData.subList(mPartialStart, mData.size());
+            onRemoveData(partial);
+            partial.clear();
+            mPartialStart = -1;
+
+            if (mReplacedData != null) {
+                if (restore) {
+                    mData = mReplacedData;
+                    mPageDivider = mReplacedPageDivider;
+                    mStartPage = mReplacedStartPage;
+                    mEndPage = mReplacedEndPage;
+                    mPages = mReplacedPages;
+                    mNextPage = mReplacedNextPage;
+                    onAddData(mData);
+                }
+                mReplacedData = null;
+                mReplacedPageDivider = null;
+            }
+            return true;
+        }
+
+        /**
+         * Shows part of the page of the current task before
+         * {@link #onGetPageData(int, int, int, List)} gives the whole page.
+         * Only refreshing, getting next page and going somewhere show it.
+         */
+        public void onGetPartialData(int taskId, List<E> data) {
+            if (mCurrentTaskId != taskId || data.isEmpty()) {
+                return;
+            }
+
+            boolean first = mPartialStart == -1;
+            int oldDataSize = mData.size();
+            switch (mCurrentTaskType) {
+                case TYPE_REFRESH:
+                case TYPE_SOMEWHERE:
+                    if (first) {
+                        // The page replaces all data, keep it in case the page never completes
+                        mReplacedData = mData;
+                        mReplacedPageDivider = mPageDivider;
+                        mReplacedStartPage = mStartPage;
+                        mReplacedEndPage = mEndPage;
+                        mReplacedPages = mPages;
+                        mReplacedNextPage = mNextPage;
+                        mData = new ArrayList<>();
+                        mPageDivider = new IntList();
+                        mStartPage = 0;
+                        mEndPage = 0;
+                        mPages = 0;
+                        mNextPage = 0;
+                        onClearData();
+                        mPartialStart = 0;
+                        mData.addAll(data);
+                        onAddData(data);
+                        notifyDataSetChanged();
+
+                        // Ui change, show content, the rest is still loading
+                        mRefreshLayout.setRefreshing(false);
+                        mBottomProgress.show();
+                        showContent();
+
+                        if (mRecyclerView.isAttachedToWindow()) {
+                            // RecyclerView scroll
+                            mRecyclerView.stopScroll();
+                            LayoutManagerUtils.scrollToPositionWithOffset(mRecyclerView.getLayoutManager(), 0, 0);
+                            onScrollToPosition(0);
+                        }
+                    } else {
+                        mData.addAll(data);
+                        onAddData(data);
+                        notifyItemRangeInserted(oldDataSize, data.size());
+                    }
+                    break;
+                case TYPE_NEXT_PAGE:
+                case TYPE_NEXT_PAGE_KEEP_POS:
+                    data = new ArrayList<>(data);
+                    removeDuplicateData(data, (first ? oldDataSize : mPartialStart) - CHECK_DUPLICATE_RANGE, oldDataSize);
+                    if (data.isEmpty()) {
+                        break;
+                    }
+                    if (first) {
+                        mPartialStart = oldDataSize;
+                    }
+                    mData.addAll(data);
+                    onAddData(data);
+                    notifyItemRangeInserted(oldDataSize, data.size());
+
+                    if (first && mRecyclerView.isAttachedToWindow()) {
+                        // RecyclerView scroll
+                        if (mCurrentTaskType == TYPE_NEXT_PAGE_KEEP_POS) {
+                            mRecyclerView.stopScroll();
+                            mRecyclerView.smoothScrollBy(0, mNextPageScrollSize);
+                        } else {
+                            mRecyclerView.stopScroll();
+                            LayoutManagerUtils.scrollToPositionWithOffset(mRecyclerView.getLayoutManager(), oldDataSize, 0);
+                            onScrollToPosition(oldDataSize);
+                        }
+                    }
+                    break;
+            }
+        }
+
         public void onGetPageData(int taskId, int pages, int nextPage, List<E> data) {
             if (mCurrentTaskId == taskId) {
                 int dataSize;
+                // The whole page takes the place of the part, without scrolling again
+                boolean partial = removePartialData(false);
 
                 switch (mCurrentTaskType) {
                     case TYPE_REFRESH:
@@ -486,7 +625,7 @@ public class ContentLayout extends FrameLayout {
                                 showProgressBar();
 
                                 // Get next page
-                                mCurrentTaskId = mIdGenerator.nextId();
+                                mCurrentTaskId = nextTaskId();
                                 mCurrentTaskType = TYPE_NEXT_PAGE_KEEP_POS;
                                 mCurrentTaskPage = mEndPage;
                                 getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -504,7 +643,7 @@ public class ContentLayout extends FrameLayout {
                             showContent();
 
                             // RecyclerView scroll
-                            if (mRecyclerView.isAttachedToWindow()) {
+                            if (!partial && mRecyclerView.isAttachedToWindow()) {
                                 mRecyclerView.stopScroll();
                                 LayoutManagerUtils.scrollToPositionWithOffset(mRecyclerView.getLayoutManager(), 0, 0);
                                 onScrollToPosition(0);
@@ -547,7 +686,7 @@ public class ContentLayout extends FrameLayout {
                                 // Keep UI
 
                                 // Get previous
-                                mCurrentTaskId = mIdGenerator.nextId();
+                                mCurrentTaskId = nextTaskId();
                                 // Keep mCurrentTaskType
                                 mCurrentTaskPage = mStartPage - 1;
                                 getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -587,6 +726,9 @@ public class ContentLayout extends FrameLayout {
                         mPages = Math.max(mEndPage, pages);
 
                         if (data.isEmpty()) {
+                            if (partial) {
+                                notifyDataSetChanged();
+                            }
                             if (true || mEndPage >= mPages) { // OK, that's all
                                 if (mData.isEmpty()) {
                                     // Ui change, show empty string
@@ -610,7 +752,7 @@ public class ContentLayout extends FrameLayout {
                                 // Keep UI
 
                                 // Get next page
-                                mCurrentTaskId = mIdGenerator.nextId();
+                                mCurrentTaskId = nextTaskId();
                                 // Keep mCurrentTaskType
                                 mCurrentTaskPage = mEndPage;
                                 getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -618,14 +760,18 @@ public class ContentLayout extends FrameLayout {
                         } else {
                             mData.addAll(data);
                             onAddData(data);
-                            notifyItemRangeInserted(oldDataSize, dataSize);
+                            if (partial) {
+                                notifyDataSetChanged();
+                            } else {
+                                notifyItemRangeInserted(oldDataSize, dataSize);
+                            }
 
                             // Ui change, show content
                             mRefreshLayout.setRefreshing(false);
                             mBottomProgress.hide();
                             showContent();
 
-                            if (mRecyclerView.isAttachedToWindow()) {
+                            if (!partial && mRecyclerView.isAttachedToWindow()) {
                                 if (mCurrentTaskType == TYPE_NEXT_PAGE_KEEP_POS) {
                                     mRecyclerView.stopScroll();
                                     mRecyclerView.smoothScrollBy(0, mNextPageScrollSize);
@@ -662,7 +808,7 @@ public class ContentLayout extends FrameLayout {
                                 showProgressBar();
 
                                 // Get next page
-                                mCurrentTaskId = mIdGenerator.nextId();
+                                mCurrentTaskId = nextTaskId();
                                 mCurrentTaskType = TYPE_NEXT_PAGE_KEEP_POS;
                                 mCurrentTaskPage = mEndPage;
                                 getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -679,7 +825,7 @@ public class ContentLayout extends FrameLayout {
                             mBottomProgress.hide();
                             showContent();
 
-                            if (mRecyclerView.isAttachedToWindow()) {
+                            if (!partial && mRecyclerView.isAttachedToWindow()) {
                                 // RecyclerView scroll
                                 mRecyclerView.stopScroll();
                                 LayoutManagerUtils.scrollToPositionWithOffset(mRecyclerView.getLayoutManager(), 0, 0);
@@ -741,6 +887,11 @@ public class ContentLayout extends FrameLayout {
 
         public void onGetException(int taskId, Exception e) {
             if (mCurrentTaskId == taskId) {
+                // The pages before a refresh come back, like a refresh which shows nothing early
+                boolean partial = removePartialData(true);
+                if (partial) {
+                    notifyDataSetChanged();
+                }
                 mRefreshLayout.setRefreshing(false);
                 mBottomProgress.hide();
 
@@ -752,7 +903,7 @@ public class ContentLayout extends FrameLayout {
                     readableError = getContext().getString(R.string.error_unknown);
                 }
 
-                if (mViewTransition.getShownViewIndex() == 0) {
+                if (mViewTransition.getShownViewIndex() == 0 && !(partial && mData.isEmpty())) {
                     Toast.makeText(getContext(), readableError, Toast.LENGTH_SHORT).show();
                 } else {
                     showText(readableError);
@@ -808,14 +959,14 @@ public class ContentLayout extends FrameLayout {
                     break;
             }
 
-            mCurrentTaskId = mIdGenerator.nextId();
+            mCurrentTaskId = nextTaskId();
             mCurrentTaskType = type;
             mCurrentTaskPage = page;
             getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
         }
 
         private void doRefresh() {
-            mCurrentTaskId = mIdGenerator.nextId();
+            mCurrentTaskId = nextTaskId();
             mCurrentTaskType = TYPE_REFRESH;
             mCurrentTaskPage = 0;
             getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -838,7 +989,7 @@ public class ContentLayout extends FrameLayout {
         }
 
         private void cancelCurrentTask() {
-            mCurrentTaskId = mIdGenerator.nextId();
+            mCurrentTaskId = nextTaskId();
             mRefreshLayout.setRefreshing(false);
             mBottomProgress.hide();
         }
@@ -902,7 +1053,7 @@ public class ContentLayout extends FrameLayout {
                 mRefreshLayout.setRefreshing(false);
                 mBottomProgress.hide();
 
-                mCurrentTaskId = mIdGenerator.nextId();
+                mCurrentTaskId = nextTaskId();
                 mCurrentTaskType = TYPE_PRE_PAGE;
                 mCurrentTaskPage = page;
                 getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -910,7 +1061,7 @@ public class ContentLayout extends FrameLayout {
                 mRefreshLayout.setRefreshing(false);
                 mBottomProgress.hide();
 
-                mCurrentTaskId = mIdGenerator.nextId();
+                mCurrentTaskId = nextTaskId();
                 mCurrentTaskType = TYPE_NEXT_PAGE;
                 mCurrentTaskPage = page;
                 getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -918,7 +1069,7 @@ public class ContentLayout extends FrameLayout {
                 mRefreshLayout.setRefreshing(false);
                 mBottomProgress.hide();
 
-                mCurrentTaskId = mIdGenerator.nextId();
+                mCurrentTaskId = nextTaskId();
                 mCurrentTaskType = TYPE_SOMEWHERE;
                 mCurrentTaskPage = page;
                 getPageData(mCurrentTaskId, mCurrentTaskType, mCurrentTaskPage);
@@ -938,14 +1089,21 @@ public class ContentLayout extends FrameLayout {
                 app.removeGlobalStuff(mSavedDataId);
                 mSavedDataId = IntIdGenerator.INVALID_ID;
             }
-            mSavedDataId = app.putGlobalStuff(mData);
+            // The part of a page is not saved, its task is dropped
+            boolean replaced = mReplacedData != null;
+            if (replaced) {
+                mSavedDataId = app.putGlobalStuff(mReplacedData);
+            } else {
+                mSavedDataId = app.putGlobalStuff(mPartialStart == -1 ? mData :
+                        new ArrayList<>(mData.subList(0, mPartialStart)));
+            }
             bundle.putInt(KEY_DATA, mSavedDataId);
 
             bundle.putInt(KEY_NEXT_ID, mIdGenerator.nextId());
-            bundle.putParcelable(KEY_PAGE_DIVIDER, mPageDivider);
-            bundle.putInt(KEY_START_PAGE, mStartPage);
-            bundle.putInt(KEY_END_PAGE, mEndPage);
-            bundle.putInt(KEY_PAGES, mPages);
+            bundle.putParcelable(KEY_PAGE_DIVIDER, replaced ? mReplacedPageDivider : mPageDivider);
+            bundle.putInt(KEY_START_PAGE, replaced ? mReplacedStartPage : mStartPage);
+            bundle.putInt(KEY_END_PAGE, replaced ? mReplacedEndPage : mEndPage);
+            bundle.putInt(KEY_PAGES, replaced ? mReplacedPages : mPages);
             return bundle;
         }
 
@@ -18,9 +18,12 @@ package com.hippo.ehviewer.client;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import androidx.core.util.Pair;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import okio.BufferedSource;
 import okio.Okio;
 import org.junit.Test;
@@ -51,4 +54,25 @@ public class EhTagDatabaseTest {
     assertEquals("1234", db.getTranslation("abcd"));
     assertNull(db.getTranslation("21"));
   }
+
+  @Test
+  public void suggest() throws IOException {
+    InputStream resource = EhTagDatabaseTest.class.getResourceAsStream("EhTagDatabaseTest");
+
+    EhTagDatabase db;
+    try (BufferedSource source = Okio.buffer(Okio.source(resource))) {
+      db = new EhTagDatabase("EhTagDatabaseTest", source);
+    }
+
+    List<Pair<String, String>> hints = db.suggest("23");
+    assertEquals(4, hints.size());
+    assertEquals(new Pair<>("abc", "123"), hints.get(0));
+    assertEquals(new Pair<>("abcd", "1234"), hints.get(1));
+    assertEquals(new Pair<>("123", "abc"), hints.get(2));
+    assertEquals(new Pair<>("1234", "abcd"), hints.get(3));
+
+    assertEquals(new Pair<>("a", "1"), db.suggest("1").get(0));
+    assertEquals(8, db.suggest(" ").size());
+    assertTrue(db.suggest("x").isEmpty());
+  }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class FilterMatcherTest {
+
+  @Test
+  public void testTitle() {
+    FilterMatcher matcher = new FilterMatcher(Arrays.asList("he", "she", "his", "hers", "abcd", "bc"),
+        Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    assertTrue(matcher.matchTitle("ushers"));
+    assertTrue(matcher.matchTitle("this"));
+    assertTrue(matcher.matchTitle("xabcx"));
+    assertTrue(matcher.matchTitle("abce"));
+    assertFalse(matcher.matchTitle("hi"));
+    assertFalse(matcher.matchTitle("acbd"));
+    assertFalse(matcher.matchTitle(""));
+    assertFalse(matcher.matchTitle(null));
+  }
+
+  @Test
+  public void testEmptyTitle() {
+    FilterMatcher matcher = new FilterMatcher(Collections.singletonList(""),
+        Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    assertTrue(matcher.matchTitle("anything"));
+    assertFalse(FilterMatcher.EMPTY.matchTitle("anything"));
+  }
+
+  @Test
+  public void testUploader() {
+    FilterMatcher matcher = new FilterMatcher(Collections.emptyList(),
+        Collections.singletonList("Uploader"), Collections.emptyList(), Collections.emptyList());
+    assertTrue(matcher.matchUploader("Uploader"));
+    assertFalse(matcher.matchUploader("uploader"));
+    assertFalse(matcher.matchUploader(null));
+  }
+
+  @Test
+  public void testTag() {
+    FilterMatcher matcher = new FilterMatcher(Collections.emptyList(), Collections.emptyList(),
+        Arrays.asList("female:big", "small"), Collections.emptyList());
+    assertTrue(matcher.hasTagFilters());
+    assertTrue(matcher.matchTags(new String[] {"female:big"}));
+    assertTrue(matcher.matchTags(new String[] {"language:english", "big"}));
+    assertTrue(matcher.matchTags(new String[] {"male:small"}));
+    assertTrue(matcher.matchTags(new String[] {"small"}));
+    assertFalse(matcher.matchTags(new String[] {"male:big"}));
+    assertFalse(matcher.matchTags(new String[] {"female:bigger"}));
+    assertFalse(matcher.matchTags(null));
+  }
+
+  @Test
+  public void testTagNamespace() {
+    FilterMatcher matcher = new FilterMatcher(Collections.emptyList(), Collections.emptyList(),
+        Collections.emptyList(), Collections.singletonList("female"));
+    assertTrue(matcher.hasTagFilters());
+    assertTrue(matcher.matchTagNamespaces(new String[] {"male:big", "female:big"}));
+    assertFalse(matcher.matchTagNamespaces(new String[] {"male:big", "fem:big", "female"}));
+    assertFalse(FilterMatcher.EMPTY.hasTagFilters());
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.client.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.hippo.ehviewer.client.data.GalleryDetail;
+import com.hippo.ehviewer.client.data.NormalPreviewSet;
+import java.io.InputStream;
+import okio.BufferedSource;
+import okio.Okio;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class GalleryDetailParserTest {
+
+  private static String readBody() throws Exception {
+    InputStream resource = GalleryDetailParserTest.class.getResourceAsStream("GalleryDetailParserTest.html");
+    BufferedSource source = Okio.buffer(Okio.source(resource));
+    return source.readUtf8();
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    GalleryDetail gd = GalleryDetailParser.parse(readBody());
+
+    assertEquals(1363978, gd.gid);
+    assertEquals("e6fc7d1a8a", gd.token);
+    assertEquals("(C95) [rurudot (rurudo)] Innocence", gd.title);
+    assertEquals(11, gd.pages);
+    assertEquals(3, gd.torrentCount);
+    assertEquals(2, gd.newerVersions.size());
+    assertEquals(6, gd.tags.length);
+    assertEquals("halo", gd.tags[4].getTagAt(2));
+    assertEquals(3, gd.comments.comments.length);
+    assertTrue(gd.comments.hasMore);
+    assertEquals(1, gd.previewPages);
+    assertTrue(gd.previewSet instanceof NormalPreviewSet);
+    assertEquals(11, gd.previewSet.size());
+  }
+}
@@ -16,14 +16,22 @@
 
 package com.hippo.ehviewer.client.parser;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import com.hippo.ehviewer.client.EhUtils;
+import com.hippo.ehviewer.client.data.GalleryInfo;
 import edu.emory.mathcs.backport.java.util.Arrays;
+import java.io.FilterReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 import okio.BufferedSource;
 import okio.Okio;
@@ -68,11 +76,15 @@ public class GalleryListParserTest {
     this.file = file;
   }
 
-  @Test
-  public void testParse() throws Exception {
+  private String readBody() throws Exception {
     InputStream resource = GalleryPageApiParserTest.class.getResourceAsStream(file);
     BufferedSource source = Okio.buffer(Okio.source(resource));
-    String body = source.readUtf8();
+    return source.readUtf8();
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    String body = readBody();
 
     GalleryListParser.Result result = GalleryListParser.parse(body);
 
@@ -107,4 +119,63 @@ public class GalleryListParserTest {
       assertNotEquals(0, gi.pages);
     });
   }
+
+  @Test
+  public void testStreamParse() throws Exception {
+    String body = readBody();
+    GalleryListParser.Result expected = GalleryListParser.parse(body);
+    GalleryListParser.Result actual = GalleryListStreamParser.parse(new StringReader(body));
+
+    assertEquals(expected.pages, actual.pages);
+    assertEquals(expected.nextPage, actual.nextPage);
+    assertEquals(expected.noWatchedTags, actual.noWatchedTags);
+    assertEquals(expected.galleryInfoList.size(), actual.galleryInfoList.size());
+    for (int i = 0; i < expected.galleryInfoList.size(); i++) {
+      GalleryInfo e = expected.galleryInfoList.get(i);
+      GalleryInfo a = actual.galleryInfoList.get(i);
+      assertEquals(e.gid, a.gid);
+      assertEquals(e.token, a.token);
+      assertEquals(e.title, a.title);
+      assertArrayEquals(e.simpleTags, a.simpleTags);
+      assertEquals(e.category, a.category);
+      assertEquals(e.thumb, a.thumb);
+      assertEquals(e.thumbWidth, a.thumbWidth);
+      assertEquals(e.thumbHeight, a.thumbHeight);
+      assertEquals(e.posted, a.posted);
+      assertEquals(e.favoriteSlot, a.favoriteSlot);
+      assertEquals(e.rating, a.rating, 0.0f);
+      assertEquals(e.rated, a.rated);
+      assertEquals(e.uploader, a.uploader);
+      assertEquals(e.pages, a.pages);
+      assertEquals(e.simpleLanguage, a.simpleLanguage);
+    }
+  }
+
+  @Test
+  public void testStreamRows() throws Exception {
+    String body = readBody();
+    int[] read = new int[1];
+    Reader reader = new FilterReader(new StringReader(body)) {
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = super.read(cbuf, off, len);
+        if (n > 0) {
+          read[0] += n;
+        }
+        return n;
+      }
+    };
+    List<GalleryInfo> rows = new ArrayList<>();
+    int[] readAtFirstRow = {-1};
+    GalleryListParser.Result result = GalleryListStreamParser.parse(reader, info -> {
+      if (rows.isEmpty()) {
+        readAtFirstRow[0] = read[0];
+      }
+      rows.add(info);
+    });
+
+    assertEquals(result.galleryInfoList, rows);
+    // The first row is out before the page is read up
+    assertTrue(readAtFirstRow[0] < body.length());
+  }
 }
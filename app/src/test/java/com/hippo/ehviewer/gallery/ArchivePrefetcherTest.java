@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.gallery;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.duzhaokun123.galleryview.GalleryPageAdapter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class ArchivePrefetcherTest {
+
+  private static final String URI = "content://archive/1";
+  private static final List<String> PATHS = Arrays.asList("01.jpg", "02.jpg", "03.jpg", "04.jpg",
+      "05.jpg", "06.jpg", "07.jpg", "08.jpg", "09.jpg", "10.jpg");
+
+  private static String[] keys() {
+    return ArchivePrefetcher.createKeys(URI, 1000, 2000, PATHS);
+  }
+
+  @Test
+  public void testKeys() {
+    String[] keys = keys();
+    assertEquals(PATHS.size(), keys.length);
+    assertEquals(URI + ":1000:2000:01.jpg", keys[0]);
+    // The same archive hits the cache
+    assertArrayEquals(keys, keys());
+
+    // A changed archive doesn't
+    Set<String> cached = new HashSet<>(Arrays.asList(keys));
+    for (String key : ArchivePrefetcher.createKeys(URI, 1001, 2000, PATHS)) {
+      assertFalse(cached.contains(key));
+    }
+    for (String key : ArchivePrefetcher.createKeys(URI, 1000, 2001, PATHS)) {
+      assertFalse(cached.contains(key));
+    }
+    for (String key : ArchivePrefetcher.createKeys("content://archive/2", 1000, 2000, PATHS)) {
+      assertFalse(cached.contains(key));
+    }
+  }
+
+  @Test
+  public void testNoRequest() {
+    ArchivePrefetcher prefetcher = new ArchivePrefetcher(keys(), 3);
+    assertEquals(GalleryPageAdapter.INVALID_INDEX, prefetcher.next(key -> false));
+  }
+
+  @Test
+  public void testCacheHit() {
+    String[] keys = keys();
+    Set<String> cached = new HashSet<>();
+    ArchivePrefetcher prefetcher = new ArchivePrefetcher(keys, 3);
+    prefetcher.onRequest(2);
+    assertEquals(3, prefetcher.next(cached::contains));
+
+    // Extracted ones are skipped
+    cached.add(keys[3]);
+    cached.add(keys[4]);
+    assertEquals(5, prefetcher.next(cached::contains));
+    cached.add(keys[5]);
+    assertEquals(GalleryPageAdapter.INVALID_INDEX, prefetcher.next(cached::contains));
+
+    // Not past the last entry
+    prefetcher.onRequest(9);
+    assertEquals(GalleryPageAdapter.INVALID_INDEX, prefetcher.next(cached::contains));
+  }
+
+  @Test
+  public void testFailed() {
+    ArchivePrefetcher prefetcher = new ArchivePrefetcher(keys(), 3);
+    prefetcher.onRequest(0);
+    prefetcher.onFailed(1);
+    assertEquals(2, prefetcher.next(key -> false));
+  }
+
+  @Test
+  public void testDirection() {
+    ArchivePrefetcher prefetcher = new ArchivePrefetcher(keys(), 3);
+    prefetcher.onRequest(5);
+    prefetcher.onRequest(6);
+    // A single look back keeps the direction
+    prefetcher.onRequest(5);
+    assertEquals(6, prefetcher.next(key -> false));
+    // Reading backward turns it
+    prefetcher.onRequest(4);
+    assertEquals(3, prefetcher.next(key -> false));
+    prefetcher.onRequest(0);
+    assertEquals(GalleryPageAdapter.INVALID_INDEX, prefetcher.next(key -> false));
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.gallery;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import org.junit.Test;
+
+public class PipeTest {
+
+  @Test
+  public void testSingleByte() throws IOException {
+    Pipe pipe = new Pipe(4, 4);
+    OutputStream os = pipe.getOutputStream();
+    os.write(0xFF);
+    os.write(0x80);
+    os.write(0);
+    os.close();
+
+    InputStream is = pipe.getInputStream();
+    assertEquals(0xFF, is.read());
+    assertEquals(0x80, is.read());
+    assertEquals(0, is.read());
+    assertEquals(-1, is.read());
+  }
+
+  @Test
+  public void testGrow() throws IOException {
+    Pipe pipe = new Pipe(8, 64);
+    OutputStream os = pipe.getOutputStream();
+    InputStream is = pipe.getInputStream();
+    byte[] data = new byte[40];
+    new Random(0).nextBytes(data);
+
+    // Wrap around, then grow while full
+    os.write(data, 0, 6);
+    byte[] read = new byte[40];
+    assertEquals(4, is.read(read, 0, 4));
+    os.write(data, 6, 34);
+    assertEquals(36, is.available());
+    os.close();
+
+    int n = 4;
+    int r;
+    while ((r = is.read(read, n, read.length - n)) > 0) {
+      n += r;
+    }
+    assertEquals(40, n);
+    assertArrayEquals(data, read);
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    Pipe pipe = new Pipe(16, 1024);
+    byte[] data = new byte[1024 * 1024];
+    new Random(1).nextBytes(data);
+
+    Thread writer = new Thread(() -> {
+      try (OutputStream os = pipe.getOutputStream()) {
+        Random random = new Random(2);
+        for (int off = 0; off < data.length; ) {
+          int len = Math.min(data.length - off, random.nextInt(3000));
+          os.write(data, off, len);
+          off += len;
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    writer.start();
+
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    InputStream is = pipe.getInputStream();
+    byte[] buffer = new byte[777];
+    int read;
+    while ((read = is.read(buffer)) != -1) {
+      result.write(buffer, 0, read);
+    }
+    writer.join();
+    assertArrayEquals(data, result.toByteArray());
+  }
+
+  @Test
+  public void testReaderClosed() throws Exception {
+    Pipe pipe = new Pipe(4, 4);
+    OutputStream os = pipe.getOutputStream();
+    os.write(new byte[4]);
+    Thread reader = new Thread(() -> {
+      try {
+        pipe.getInputStream().close();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    reader.start();
+    boolean thrown = false;
+    try {
+      // Blocked until the reader closes
+      os.write(1);
+    } catch (IOException e) {
+      thrown = true;
+    }
+    reader.join();
+    assertTrue(thrown);
+  }
+}
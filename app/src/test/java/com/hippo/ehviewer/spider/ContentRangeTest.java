@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ContentRangeTest {
+
+  @Test
+  public void testParse() {
+    ContentRange range = ContentRange.parse("bytes 1024-4095/4096");
+    assertEquals(1024, range.start);
+    assertEquals(4095, range.end);
+    assertEquals(4096, range.total);
+
+    range = ContentRange.parse("Bytes 0-99/*");
+    assertEquals(0, range.start);
+    assertEquals(99, range.end);
+    assertEquals(-1, range.total);
+  }
+
+  @Test
+  public void testMalformed() {
+    assertNull(ContentRange.parse(null));
+    assertNull(ContentRange.parse("bytes */4096"));
+    assertNull(ContentRange.parse("items 0-1/2"));
+    assertNull(ContentRange.parse("bytes 10-5/100"));
+    assertNull(ContentRange.parse("bytes 0-100/100"));
+    assertNull(ContentRange.parse("bytes a-b/c"));
+  }
+}
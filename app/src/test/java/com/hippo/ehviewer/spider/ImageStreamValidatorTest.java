@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class ImageStreamValidatorTest {
+
+  private static final byte[] JPEG = {
+      (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F', 'I', 'F', 0, 1, 1, 0
+  };
+
+  @Test
+  public void testImageHeader() {
+    assertTrue(validate(JPEG, null));
+    assertTrue(validate("GIF89a\u0001\u0000\u0001\u0000\u0000\u0000".getBytes(StandardCharsets.ISO_8859_1), null));
+    assertTrue(validate("RIFF\u0000\u0000\u0000\u0000WEBPVP8 ".getBytes(StandardCharsets.ISO_8859_1), null));
+    assertFalse(validate("RIFF\u0000\u0000\u0000\u0000WAVEfmt ".getBytes(StandardCharsets.ISO_8859_1), null));
+  }
+
+  @Test
+  public void testPlainText() {
+    byte[] text = "You have exceeded your image viewing limits.".getBytes(StandardCharsets.US_ASCII);
+    ImageStreamValidator validator = new ImageStreamValidator(null);
+    assertFalse(validator.update(text, 0, text.length));
+    assertFalse(validator.finish());
+  }
+
+  @Test
+  public void testTooShort() {
+    assertFalse(validate(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}, null));
+  }
+
+  @Test
+  public void testSplitHeader() {
+    ImageStreamValidator validator = new ImageStreamValidator(null);
+    for (int i = 0; i < JPEG.length; i += 3) {
+      assertTrue(validator.update(JPEG, i, Math.min(3, JPEG.length - i)));
+    }
+    assertTrue(validator.finish());
+  }
+
+  @Test
+  public void testHash() {
+    // sha1 of JPEG is 9d505c742c...
+    assertTrue(validate(JPEG, "9d505c742c"));
+    assertTrue(validate(JPEG, "9D505C742C"));
+    assertFalse(validate(JPEG, "0000000000"));
+  }
+
+  private static boolean validate(byte[] data, String hashPrefix) {
+    ImageStreamValidator validator = new ImageStreamValidator(hashPrefix);
+    return validator.update(data, 0, data.length) && validator.finish();
+  }
+}
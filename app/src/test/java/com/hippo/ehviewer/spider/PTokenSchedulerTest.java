@@ -0,0 +1,217 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.util.SparseArray;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PTokenSchedulerTest {
+
+  private static final int PAGES = 2000;
+  private static final int PREVIEW_PER_PAGE = 40;
+  private static final int PREVIEW_PAGES = PAGES / PREVIEW_PER_PAGE;
+
+  private static String pTokenOf(int index) {
+    return "p" + index;
+  }
+
+  // Not in its preview page, the fallback gets it
+  private static boolean isMissing(int index) {
+    return index % 17 == 0;
+  }
+
+  // The fallback fails too
+  private static boolean isFailed(int index) {
+    return index % 34 == 0;
+  }
+
+  // The first fetch of the preview page fails
+  private static boolean isFlaky(int previewIndex) {
+    return previewIndex % 7 == 3;
+  }
+
+  private static SpiderInfo newSpiderInfo() {
+    SpiderInfo spiderInfo = new SpiderInfo();
+    spiderInfo.pages = PAGES;
+    spiderInfo.previewPages = PREVIEW_PAGES;
+    spiderInfo.previewPerPage = PREVIEW_PER_PAGE;
+    spiderInfo.pTokenMap = new SparseArray<>(PAGES);
+    return spiderInfo;
+  }
+
+  /**
+   * Stub of the preview page and multi-page viewer requests, it checks that
+   * a preview page is never fetched by two tasks at the same time.
+   */
+  private static class StubFetcher implements PTokenScheduler.Fetcher {
+
+    private final AtomicIntegerArray mFetching = new AtomicIntegerArray(PREVIEW_PAGES);
+    private final AtomicIntegerArray mFetched = new AtomicIntegerArray(PREVIEW_PAGES);
+    private final AtomicIntegerArray mFallbacks = new AtomicIntegerArray(PAGES);
+    private final List<Throwable> mErrors;
+    private PTokenScheduler mScheduler;
+
+    StubFetcher(List<Throwable> errors) {
+      mErrors = errors;
+    }
+
+    @Override
+    public boolean fetchPreviewPage(SpiderInfo spiderInfo, int previewIndex) {
+      if (mFetching.incrementAndGet(previewIndex) != 1) {
+        mErrors.add(new AssertionError("Preview page " + previewIndex + " is fetched twice"));
+      }
+      try {
+        sleep(previewIndex);
+        if (mFetched.getAndIncrement(previewIndex) == 0 && isFlaky(previewIndex)) {
+          return false;
+        }
+        synchronized (mScheduler.lock) {
+          int start = previewIndex * PREVIEW_PER_PAGE;
+          for (int i = start; i < start + PREVIEW_PER_PAGE; i++) {
+            if (!isMissing(i)) {
+              mScheduler.putPToken(spiderInfo, i, pTokenOf(i));
+            }
+          }
+        }
+        return true;
+      } finally {
+        mFetching.decrementAndGet(previewIndex);
+      }
+    }
+
+    @Override
+    public String fetchPToken(SpiderInfo spiderInfo, int index) {
+      mFallbacks.incrementAndGet(index);
+      sleep(index);
+      return isFailed(index) ? null : pTokenOf(index);
+    }
+
+    private static void sleep(int seed) {
+      if (seed % 3 == 0) {
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Workers take pages from a PageRequestQueue and wait for the pTokens of
+   * the page and the one before it like SpiderWorker, queen dispatches the
+   * missing ones to preview page tasks. Some pTokens are only found by the
+   * fallback, some are never found, and some preview pages fail once.
+   */
+  @Test
+  public void testStress() throws Exception {
+    final int workers = 10;
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    final StubFetcher fetcher = new StubFetcher(errors);
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    final PTokenScheduler scheduler = new PTokenScheduler(fetcher, executor, 2);
+    fetcher.mScheduler = scheduler;
+    final SpiderInfo spiderInfo = newSpiderInfo();
+    final PageRequestQueue queue = new PageRequestQueue();
+    final AtomicReferenceArray<String> results = new AtomicReferenceArray<>(PAGES);
+
+    Thread queen = new Thread(() -> {
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          scheduler.requestPTokens(spiderInfo, scheduler.takeRequest());
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    });
+    queen.start();
+
+    // Jump around like a reader besides the download cursor
+    Random random = new Random(0);
+    for (int i = 0; i < 200; i++) {
+      queue.add(random.nextInt(PAGES));
+    }
+    queue.startDownload();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      threads.add(new Thread(() -> {
+        try {
+          PageRequestQueue.Request request;
+          while ((request = queue.poll(PAGES)) != null) {
+            int index = request.index;
+            String pToken = scheduler.waitPToken(spiderInfo, index);
+            if (index > 0) {
+              scheduler.waitPToken(spiderInfo, index - 1);
+            }
+            results.set(index, pToken);
+          }
+        } catch (Throwable e) {
+          errors.add(e);
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join(60000);
+      assertFalse("A worker is still waiting", thread.isAlive());
+    }
+    queen.interrupt();
+    queen.join(10000);
+    executor.shutdownNow();
+
+    assertTrue(errors.toString(), errors.isEmpty());
+    for (int i = 0; i < PAGES; i++) {
+      String expected = isFailed(i) ? SpiderInfo.TOKEN_FAILED : pTokenOf(i);
+      assertEquals(expected, results.get(i));
+      assertEquals(expected, spiderInfo.pTokenMap.get(i));
+      if (isMissing(i)) {
+        assertEquals(1, fetcher.mFallbacks.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testPreviewIndex() {
+    SpiderInfo spiderInfo = newSpiderInfo();
+    assertEquals(0, PTokenScheduler.getPreviewIndex(spiderInfo, 0));
+    assertEquals(1, PTokenScheduler.getPreviewIndex(spiderInfo, PREVIEW_PER_PAGE));
+    // Clamped to the last preview page
+    assertEquals(PREVIEW_PAGES - 1, PTokenScheduler.getPreviewIndex(spiderInfo, PAGES + 100));
+    spiderInfo.previewPerPage = -1;
+    assertEquals(0, PTokenScheduler.getPreviewIndex(spiderInfo, 100));
+  }
+}
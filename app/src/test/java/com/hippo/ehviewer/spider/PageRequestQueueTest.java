@@ -0,0 +1,185 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+
+public class PageRequestQueueTest {
+
+  private static final int STATE_NONE = 0;
+  private static final int STATE_DOWNLOADING = 1;
+  private static final int STATE_FINISHED = 2;
+
+  @Test
+  public void testOrder() {
+    PageRequestQueue queue = new PageRequestQueue();
+    assertTrue(queue.startDownload());
+    assertFalse(queue.startDownload());
+    queue.setPreloads(Arrays.asList(5, 6));
+    queue.add(3);
+    queue.add(2);
+    queue.addForce(9);
+
+    PageRequestQueue.Request request = queue.poll(8);
+    assertEquals(9, request.index);
+    assertTrue(request.isForce());
+    assertEquals(Arrays.asList(3, 2, 5, 6, 0, 1), pollAll(queue, 6, 8));
+    assertFalse(queue.poll(8).isForce());
+  }
+
+  @Test
+  public void testPreloadsAndCancel() {
+    PageRequestQueue queue = new PageRequestQueue();
+    queue.setPreloads(Arrays.asList(5, 6));
+    queue.setPreloads(Arrays.asList(7, 8));
+    queue.add(3);
+    queue.add(4);
+    queue.cancel(3);
+    queue.addForce(3);
+    queue.cancel(3);
+    assertEquals(Arrays.asList(3, 4, 7, 8), pollAll(queue, 4, 100));
+    assertNull(queue.poll(100));
+    assertFalse(queue.hasRequest(100));
+  }
+
+  @Test
+  public void testDownload() {
+    PageRequestQueue queue = new PageRequestQueue();
+    assertFalse(queue.hasRequest(3));
+    queue.startDownload();
+    assertEquals(Arrays.asList(0, 1, 2), pollAll(queue, 3, 3));
+    assertFalse(queue.hasRequest(3));
+    queue.stopDownload();
+    assertTrue(queue.startDownload());
+    assertTrue(queue.hasRequest(3));
+  }
+
+  /**
+   * Ten workers download a gallery of thousands of pages from a fake provider
+   * while requests, force requests and preloads keep coming.
+   */
+  @Test
+  public void testStress() throws Exception {
+    final int pages = 5000;
+    final int workers = 10;
+    final PageRequestQueue queue = new PageRequestQueue();
+    final AtomicIntegerArray states = new AtomicIntegerArray(pages);
+    final AtomicIntegerArray downloads = new AtomicIntegerArray(pages);
+    final AtomicIntegerArray forced = new AtomicIntegerArray(pages);
+    final AtomicBoolean producing = new AtomicBoolean(true);
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+    queue.startDownload();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      threads.add(new Thread(() -> {
+        try {
+          while (true) {
+            PageRequestQueue.Request request = queue.poll(pages);
+            if (request == null) {
+              if (!producing.get() && !queue.hasRequest(pages)) {
+                return;
+              }
+              Thread.yield();
+              continue;
+            }
+            int index = request.index;
+            if (index < 0 || index >= pages) {
+              continue;
+            }
+            // Like SpiderWorker, only a page in none state is downloaded, force ignores finished
+            boolean start = states.compareAndSet(index, STATE_NONE, STATE_DOWNLOADING) ||
+                (request.isForce() && states.compareAndSet(index, STATE_FINISHED, STATE_DOWNLOADING));
+            if (start) {
+              // Fake provider
+              downloads.incrementAndGet(index);
+              states.set(index, STATE_FINISHED);
+            }
+          }
+        } catch (Throwable e) {
+          errors.add(e);
+        }
+      }));
+    }
+    Thread producer = new Thread(() -> {
+      Random random = new Random(0);
+      for (int i = 0; i < 20000; i++) {
+        int index = random.nextInt(pages + 20) - 10;
+        switch (random.nextInt(4)) {
+          case 0:
+            queue.add(index);
+            break;
+          case 1:
+            if (index >= 0 && index < pages) {
+              forced.incrementAndGet(index);
+            }
+            queue.addForce(index);
+            break;
+          case 2:
+            queue.cancel(index);
+            break;
+          case 3:
+            List<Integer> preloads = new ArrayList<>();
+            for (int j = 1; j <= 5; j++) {
+              preloads.add(index + j);
+            }
+            queue.setPreloads(preloads);
+            break;
+        }
+      }
+      producing.set(false);
+    });
+    threads.add(producer);
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join(60000);
+      assertFalse(thread.isAlive());
+    }
+
+    assertTrue(errors.toString(), errors.isEmpty());
+    for (int i = 0; i < pages; i++) {
+      assertEquals(STATE_FINISHED, states.get(i));
+      assertTrue(downloads.get(i) >= 1);
+      // Only a force request downloads a page again
+      assertTrue(downloads.get(i) <= 1 + forced.get(i));
+    }
+  }
+
+  private static List<Integer> pollAll(PageRequestQueue queue, int count, int size) {
+    List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      list.add(queue.poll(size).index);
+    }
+    return list;
+  }
+}
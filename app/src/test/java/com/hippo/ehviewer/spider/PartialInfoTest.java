@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class PartialInfoTest {
+
+  @Test
+  public void testReadWrite() throws IOException {
+    PartialInfo info = roundTrip(new PartialInfo(4096, "\"abc\"", "Wed, 21 Oct 2015 07:28:00 GMT"));
+    assertEquals(4096, info.total);
+    assertEquals("\"abc\"", info.etag);
+    assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", info.lastModified);
+
+    info = roundTrip(new PartialInfo(-1, null, null));
+    assertEquals(-1, info.total);
+    assertNull(info.etag);
+    assertNull(info.lastModified);
+  }
+
+  @Test(expected = EOFException.class)
+  public void testTruncated() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new PartialInfo(4096, "\"abc\"", null).write(os);
+    byte[] bytes = os.toByteArray();
+    PartialInfo.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+  }
+
+  @Test
+  public void testIfRange() {
+    assertEquals("\"abc\"", new PartialInfo(-1, "\"abc\"", "date").getIfRange());
+    // Weak entity tags can't be used
+    assertEquals("date", new PartialInfo(-1, "W/\"abc\"", "date").getIfRange());
+    assertNull(new PartialInfo(-1, "W/\"abc\"", null).getIfRange());
+  }
+
+  @Test
+  public void testCanResume() {
+    PartialInfo unknown = new PartialInfo(-1, null, null);
+    assertFalse(unknown.canResume(false));
+    assertTrue(unknown.canResume(true));
+    assertTrue(new PartialInfo(4096, null, null).canResume(false));
+    assertTrue(new PartialInfo(-1, "\"abc\"", null).canResume(false));
+  }
+
+  @Test
+  public void testContinues() {
+    ContentRange same = ContentRange.parse("bytes 1024-4095/4096");
+    ContentRange other = ContentRange.parse("bytes 1024-8191/8192");
+    ContentRange noTotal = ContentRange.parse("bytes 1024-4095/*");
+
+    PartialInfo info = new PartialInfo(4096, null, null);
+    assertTrue(info.continues(same, false));
+    // Another image, even if its hash is checked later
+    assertFalse(info.continues(other, true));
+    assertFalse(info.continues(noTotal, false));
+    assertTrue(info.continues(noTotal, true));
+
+    info = new PartialInfo(-1, "\"abc\"", null);
+    assertTrue(info.continues(noTotal, false));
+    assertTrue(info.continues(other, false));
+  }
+
+  private static PartialInfo roundTrip(PartialInfo info) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    info.write(os);
+    return PartialInfo.read(new ByteArrayInputStream(os.toByteArray()));
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PreloadPlannerTest {
+
+  @Test
+  public void testDefault() {
+    PreloadPlanner planner = new PreloadPlanner(3);
+    assertArrayEquals(new int[] {11, 12, 13, 9}, planner.plan(10, 100));
+    assertArrayEquals(new int[] {98, 99, 96}, planner.plan(97, 100));
+    assertArrayEquals(new int[] {1, 2, 3}, planner.plan(0, 100));
+  }
+
+  @Test
+  public void testNoPreload() {
+    PreloadPlanner planner = new PreloadPlanner(0);
+    planner.onPageShown(10, false, 0);
+    planner.onPageShown(11, false, 100);
+    assertArrayEquals(new int[0], planner.plan(11, 100));
+  }
+
+  @Test
+  public void testBackward() {
+    PreloadPlanner planner = new PreloadPlanner(2);
+    planner.onPageShown(50, false, 0);
+    planner.onPageShown(49, false, 5000);
+    planner.onPageShown(48, false, 10000);
+    assertArrayEquals(new int[] {47, 46, 49}, planner.plan(48, 100));
+  }
+
+  @Test
+  public void testLookBack() {
+    PreloadPlanner planner = new PreloadPlanner(2);
+    planner.onPageShown(10, false, 0);
+    planner.onPageShown(11, false, 5000);
+    // A single step back keeps the forward preloads
+    planner.onPageShown(10, false, 10000);
+    assertArrayEquals(new int[] {11, 12, 9}, planner.plan(10, 100));
+    planner.onPageShown(11, false, 15000);
+    // Back and forth doesn't add up to a turn
+    planner.onPageShown(10, false, 20000);
+    assertArrayEquals(new int[] {11, 12, 9}, planner.plan(10, 100));
+    planner.onPageShown(9, false, 25000);
+    assertArrayEquals(new int[] {8, 7, 10}, planner.plan(9, 100));
+  }
+
+  @Test
+  public void testResumedPage() {
+    PreloadPlanner planner = new PreloadPlanner(3);
+    // 500 KB pages in 2 s, one of them resumed for its last 50 KB
+    planner.onPageDownloaded(500 * 1024, 500 * 1024, 2000);
+    planner.onPageDownloaded(50 * 1024, 500 * 1024, 200);
+    long time = 0;
+    for (int i = 0; i < 10; i++) {
+      planner.onPageShown(i, false, time);
+      time += 250;
+    }
+    // Same fetch time as whole pages
+    assertEquals(9, planner.getWindow());
+  }
+
+  @Test
+  public void testFastFlipping() {
+    PreloadPlanner planner = new PreloadPlanner(3);
+    // 500 KB in 2 s
+    planner.onPageDownloaded(500 * 1024, 500 * 1024, 2000);
+    long time = 0;
+    for (int i = 0; i < 10; i++) {
+      planner.onPageShown(i, false, time);
+      time += 250;
+    }
+    // 2 s fetch, a page every 250 ms
+    assertEquals(9, planner.getWindow());
+
+    // Slow reading keeps the setting
+    PreloadPlanner slow = new PreloadPlanner(3);
+    slow.onPageDownloaded(500 * 1024, 500 * 1024, 2000);
+    for (int i = 0; i < 10; i++) {
+      slow.onPageShown(i, false, i * 10000L);
+    }
+    assertEquals(3, slow.getWindow());
+
+    // Never more than the factor
+    PreloadPlanner capped = new PreloadPlanner(2);
+    capped.onPageDownloaded(500 * 1024, 500 * 1024, 20000);
+    for (int i = 0; i < 10; i++) {
+      capped.onPageShown(i, false, i * 100L);
+    }
+    assertEquals(2 * PreloadPlanner.MAX_WINDOW_FACTOR, capped.getWindow());
+  }
+
+  @Test
+  public void testJump() {
+    PreloadPlanner planner = new PreloadPlanner(3);
+    planner.onPageShown(10, false, 0);
+    planner.onPageShown(11, false, 1000);
+    // Jumping back doesn't turn direction
+    planner.onPageShown(2, false, 2000);
+    assertArrayEquals(new int[] {3, 4, 5, 1}, planner.plan(2, 100));
+  }
+
+  @Test
+  public void testHitRate() {
+    PreloadPlanner planner = new PreloadPlanner(3);
+    assertEquals(-1f, planner.getHitRate(), 0f);
+    planner.onPageShown(0, false, 0);
+    planner.onPageShown(1, true, 1000);
+    // Showing the same page again is not counted
+    planner.onPageShown(1, true, 1500);
+    planner.onPageShown(2, true, 2000);
+    planner.onPageShown(3, true, 3000);
+    assertEquals(0.75f, planner.getHitRate(), 0f);
+  }
+}
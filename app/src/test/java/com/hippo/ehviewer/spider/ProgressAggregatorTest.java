@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ProgressAggregatorTest {
+
+  @Test
+  public void testCoalesce() {
+    List<long[]> events = new ArrayList<>();
+    ProgressAggregator aggregator = new ProgressAggregator(
+        (index, contentLength, receivedSize, bytesRead) ->
+            events.add(new long[] {index, contentLength, receivedSize, bytesRead}),
+        Long.MAX_VALUE / 4);
+
+    for (int i = 1; i <= 1000; i++) {
+      aggregator.update(0, 4000, i * 4, 4);
+    }
+    // Only the first read crosses a frame boundary
+    assertEquals(1, events.size());
+
+    aggregator.flush(0);
+    assertEquals(2, events.size());
+    long[] last = events.get(1);
+    assertEquals(0, last[0]);
+    assertEquals(4000, last[1]);
+    assertEquals(4000, last[2]);
+    assertEquals(4000, events.get(0)[3] + last[3]);
+
+    // Nothing pending
+    aggregator.flush(0);
+    assertEquals(2, events.size());
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    int threads = 8;
+    int reads = 20000;
+    AtomicLong bytes = new AtomicLong();
+    AtomicLong events = new AtomicLong();
+    ProgressAggregator aggregator = new ProgressAggregator(
+        (index, contentLength, receivedSize, bytesRead) -> {
+          bytes.addAndGet(bytesRead);
+          events.incrementAndGet();
+        }, 1000000L);
+
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      int index = t;
+      workers[t] = new Thread(() -> {
+        for (int i = 1; i <= reads; i++) {
+          aggregator.update(index, reads * 3L, i * 3L, 3);
+        }
+        aggregator.flush(index);
+      });
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    assertEquals(threads * reads * 3L, bytes.get());
+    assertTrue(events.get() < threads * reads);
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.spider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.util.SparseArray;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class SpiderInfoTest {
+
+  private static final String TOKEN = "0123456789";
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("spider-info", null);
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private static SpiderInfo newInfo(long gid, int pages) {
+    SpiderInfo info = new SpiderInfo();
+    info.startPage = 3;
+    info.gid = gid;
+    info.token = TOKEN;
+    info.pages = pages;
+    info.previewPages = 2;
+    info.previewPerPage = 20;
+    info.pTokenMap = new SparseArray<>();
+    return info;
+  }
+
+  private static SpiderInfo readText(String text) {
+    return SpiderInfo.read(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  public void testReadVersion1() {
+    SpiderInfo info = readText("1a\n123\n" + TOKEN + "\nmode\n2\n20\n40\n0 aaaaaaaaaa\n39 bbbbbbbbbb\n");
+    assertNotNull(info);
+    assertEquals(0x1a, info.startPage);
+    assertEquals(123, info.gid);
+    assertEquals(TOKEN, info.token);
+    assertEquals(2, info.previewPages);
+    // Version 1 has no preview per page
+    assertEquals(-1, info.previewPerPage);
+    assertEquals(40, info.pages);
+    assertEquals(2, info.pTokenMap.size());
+    assertEquals("aaaaaaaaaa", info.pTokenMap.get(0));
+    assertEquals("bbbbbbbbbb", info.pTokenMap.get(39));
+  }
+
+  @Test
+  public void testReadVersion2() {
+    SpiderInfo info = readText("VERSION2\n1a\n123\n" + TOKEN + "\nmode\n2\n20\n40\n5 aaaaaaaaaa\n");
+    assertNotNull(info);
+    assertEquals(0x1a, info.startPage);
+    assertEquals(123, info.gid);
+    assertEquals(TOKEN, info.token);
+    assertEquals(2, info.previewPages);
+    assertEquals(20, info.previewPerPage);
+    assertEquals(40, info.pages);
+    assertEquals(1, info.pTokenMap.size());
+    assertEquals("aaaaaaaaaa", info.pTokenMap.get(5));
+
+    // Unknown version
+    assertNull(readText("VERSION9\n1a\n123\n" + TOKEN + "\nmode\n2\n20\n40\n"));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    SpiderInfo info = newInfo(123, 40);
+    info.pTokenMap.put(0, "aaaaaaaaaa");
+    info.pTokenMap.put(39, "bbbbbbbbbb");
+    // Not stored
+    info.pTokenMap.put(7, SpiderInfo.TOKEN_FAILED);
+    info.write(file);
+    assertEquals(SpiderInfo.HEADER_SIZE + 40 * SpiderInfo.SLOT_SIZE, file.length());
+
+    SpiderInfo read = SpiderInfo.read(file);
+    assertNotNull(read);
+    assertEquals(3, read.startPage);
+    assertEquals(123, read.gid);
+    assertEquals(TOKEN, read.token);
+    assertEquals(2, read.previewPages);
+    assertEquals(20, read.previewPerPage);
+    assertEquals(40, read.pages);
+    assertEquals(2, read.pTokenMap.size());
+    assertEquals("aaaaaaaaaa", read.pTokenMap.get(0));
+    assertEquals("bbbbbbbbbb", read.pTokenMap.get(39));
+
+    // Streams read the same
+    SpiderInfo streamRead = SpiderInfo.read(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+    assertNotNull(streamRead);
+    assertEquals(2, streamRead.pTokenMap.size());
+  }
+
+  @Test
+  public void testPatchSlot() throws IOException {
+    SpiderInfo info = newInfo(123, 40);
+    info.pTokenMap.put(0, "aaaaaaaaaa");
+    info.write(file);
+    byte[] before = Files.readAllBytes(file.toPath());
+
+    info.pTokenMap.put(10, "cccccccccc");
+    info.write(file);
+    byte[] after = Files.readAllBytes(file.toPath());
+
+    // Only the slot of the new token changes
+    assertEquals(before.length, after.length);
+    int slotStart = SpiderInfo.HEADER_SIZE + 10 * SpiderInfo.SLOT_SIZE;
+    int slotEnd = slotStart + SpiderInfo.SLOT_SIZE;
+    for (int i = 0; i < after.length; i++) {
+      if (before[i] != after[i]) {
+        assertTrue("Byte " + i + " changed", i >= slotStart && i < slotEnd);
+      }
+    }
+
+    SpiderInfo read = SpiderInfo.read(file);
+    assertEquals("aaaaaaaaaa", read.pTokenMap.get(0));
+    assertEquals("cccccccccc", read.pTokenMap.get(10));
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    SpiderInfo info = newInfo(123, 40);
+    info.pTokenMap.put(0, "aaaaaaaaaa");
+    info.pTokenMap.put(39, "bbbbbbbbbb");
+    info.write(file);
+
+    // The slots after the end are lost
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(SpiderInfo.HEADER_SIZE + 5 * SpiderInfo.SLOT_SIZE);
+    }
+    SpiderInfo read = SpiderInfo.read(file);
+    assertNotNull(read);
+    assertEquals(40, read.pages);
+    assertEquals(1, read.pTokenMap.size());
+    assertEquals("aaaaaaaaaa", read.pTokenMap.get(0));
+
+    // The header is not complete
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(SpiderInfo.HEADER_SIZE - 1);
+    }
+    assertNull(SpiderInfo.read(file));
+  }
+
+  @Test
+  public void testRewriteOtherGallery() throws IOException {
+    SpiderInfo info = newInfo(123, 40);
+    info.pTokenMap.put(0, "aaaaaaaaaa");
+    info.write(file);
+
+    // Another gid, same size
+    SpiderInfo other = newInfo(456, 40);
+    other.pTokenMap.put(1, "dddddddddd");
+    other.write(file);
+    SpiderInfo read = SpiderInfo.read(file);
+    assertEquals(456, read.gid);
+    assertEquals(1, read.pTokenMap.size());
+    assertEquals("dddddddddd", read.pTokenMap.get(1));
+
+    // Another page count
+    other = newInfo(456, 20);
+    other.pTokenMap.put(2, "eeeeeeeeee");
+    other.write(file);
+    assertEquals(SpiderInfo.HEADER_SIZE + 20 * SpiderInfo.SLOT_SIZE, file.length());
+    read = SpiderInfo.read(file);
+    assertEquals(20, read.pages);
+    assertEquals(1, read.pTokenMap.size());
+    assertEquals("eeeeeeeeee", read.pTokenMap.get(2));
+  }
+
+  @Test
+  public void testRewriteText() throws IOException {
+    Files.write(file.toPath(), ("VERSION2\n1a\n123\n" + TOKEN + "\nmode\n2\n20\n40\n5 aaaaaaaaaa\n")
+        .getBytes(StandardCharsets.US_ASCII));
+    SpiderInfo info = SpiderInfo.read(file);
+    assertNotNull(info);
+
+    // A text file is replaced by the binary one
+    info.write(file);
+    assertEquals(SpiderInfo.HEADER_SIZE + 40 * SpiderInfo.SLOT_SIZE, file.length());
+    SpiderInfo read = SpiderInfo.read(file);
+    assertEquals(123, read.gid);
+    assertEquals("aaaaaaaaaa", read.pTokenMap.get(5));
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.ehviewer.client;
+
+import com.hippo.ehviewer.EhDB;
+import com.hippo.ehviewer.client.data.GalleryInfo;
+import com.hippo.ehviewer.client.parser.GalleryListParser;
+import com.hippo.ehviewer.dao.Filter;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filters one page of the extended layout, which has tags. {@link #linear()}
+ * is the list scan EhFilter did before FilterMatcher, kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EhFilterBenchmark {
+
+    private static final int TITLE_FILTERS = 200;
+    private static final int UPLOADER_FILTERS = 50;
+    private static final int TAG_FILTERS = 300;
+    private static final String[] NAMESPACES = {"artist", "female", "male", "parody"};
+
+    private EhFilter filter;
+    private List<GalleryInfo> list;
+
+    private static String word(Random random) {
+        char[] chars = new char[5 + random.nextInt(6)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        try (InputStream resource = GalleryListParser.class.getResourceAsStream("GalleryListParserTestEExtended.html");
+             BufferedSource source = Okio.buffer(Okio.source(resource))) {
+            list = GalleryListParser.parse(source.readUtf8()).galleryInfoList;
+        }
+
+        Random random = new Random(0);
+        for (int i = 0; i < TITLE_FILTERS; i++) {
+            EhDB.addFilter(new Filter(EhFilter.MODE_TITLE, word(random), true));
+        }
+        for (int i = 0; i < UPLOADER_FILTERS; i++) {
+            EhDB.addFilter(new Filter(EhFilter.MODE_UPLOADER, word(random), true));
+        }
+        for (int i = 0; i < TAG_FILTERS; i++) {
+            String namespace = NAMESPACES[random.nextInt(NAMESPACES.length)];
+            EhDB.addFilter(new Filter(EhFilter.MODE_TAG, namespace + ':' + word(random), true));
+        }
+        EhDB.addFilter(new Filter(EhFilter.MODE_TAG_NAMESPACE, "reclass", true));
+        // Some galleries of the page are filtered out
+        GalleryInfo last = list.get(list.size() - 1);
+        EhDB.addFilter(new Filter(EhFilter.MODE_UPLOADER, last.uploader, true));
+        if (last.simpleTags != null && last.simpleTags.length > 0) {
+            EhDB.addFilter(new Filter(EhFilter.MODE_TAG, last.simpleTags[0], true));
+        }
+
+        filter = EhFilter.getInstance();
+    }
+
+    @Benchmark
+    public int filter() {
+        int count = 0;
+        for (int i = 0, n = list.size(); i < n; i++) {
+            GalleryInfo info = list.get(i);
+            if (filter.filterTitle(info) && filter.filterUploader(info) &&
+                    filter.filterTag(info) && filter.filterTagNamespace(info)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int linear() {
+        int count = 0;
+        for (int i = 0, n = list.size(); i < n; i++) {
+            GalleryInfo info = list.get(i);
+            if (linearTitle(info) && linearUploader(info) && linearTag(info) && linearTagNamespace(info)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean linearTitle(GalleryInfo info) {
+        String title = info.title;
+        List<Filter> filters = filter.getTitleFilterList();
+        if (null != title) {
+            for (int i = 0, n = filters.size(); i < n; i++) {
+                if (filters.get(i).enable && title.toLowerCase().contains(filters.get(i).text)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean linearUploader(GalleryInfo info) {
+        String uploader = info.uploader;
+        List<Filter> filters = filter.getUploaderFilterList();
+        if (null != uploader) {
+            for (int i = 0, n = filters.size(); i < n; i++) {
+                if (filters.get(i).enable && uploader.equals(filters.get(i).text)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchTag(String tag, String filter) {
+        String tagNamespace = null;
+        String tagName = tag;
+        String filterNamespace = null;
+        String filterName = filter;
+        int index = tag.indexOf(':');
+        if (index >= 0) {
+            tagNamespace = tag.substring(0, index);
+            tagName = tag.substring(index + 1);
+        }
+        index = filter.indexOf(':');
+        if (index >= 0) {
+            filterNamespace = filter.substring(0, index);
+            filterName = filter.substring(index + 1);
+        }
+        if (null != tagNamespace && null != filterNamespace && !tagNamespace.equals(filterNamespace)) {
+            return false;
+        }
+        return tagName.equals(filterName);
+    }
+
+    private boolean linearTag(GalleryInfo info) {
+        String[] tags = info.simpleTags;
+        List<Filter> filters = filter.getTagFilterList();
+        if (null != tags) {
+            for (String tag : tags) {
+                for (int i = 0, n = filters.size(); i < n; i++) {
+                    if (filters.get(i).enable && matchTag(tag, filters.get(i).text)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean linearTagNamespace(GalleryInfo info) {
+        String[] tags = info.simpleTags;
+        List<Filter> filters = filter.getTagNamespaceFilterList();
+        if (null != tags) {
+            for (String tag : tags) {
+                int index = tag.indexOf(':');
+                for (int i = 0, n = filters.size(); i < n; i++) {
+                    if (filters.get(i).enable && index >= 0 &&
+                            tag.substring(0, index).equals(filters.get(i).text)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.ehviewer.client;
+
+import androidx.core.util.Pair;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs on a generated database about the size of the real tag translations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EhTagDatabaseBenchmark {
+
+    private static final int ENTRY_COUNT = 20000;
+    // Power of two, see next()
+    private static final int KEY_COUNT = 1024;
+    private static final String[] NAMESPACES = {
+            "artist", "character", "female", "group", "language", "male", "misc", "parody", "reclass"};
+    private static final String[] SYLLABLES = {
+            "ka", "ri", "mo", "na", "shi", "to", "ro", "be", "lu", "xi", "ga", "ne", "po", "da", "yu", "chi"};
+
+    private EhTagDatabase database;
+    private final String[] hitKeys = new String[KEY_COUNT];
+    private final String[] missKeys = new String[KEY_COUNT];
+    private int index;
+
+    private static String word(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 2 + random.nextInt(3); i > 0; i--) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        if (random.nextInt(4) == 0) {
+            sb.append(' ').append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(0);
+        // Tags and translations are both keys, ordered as bytes like the real file
+        TreeMap<String, String> entries = new TreeMap<>();
+        while (entries.size() < ENTRY_COUNT) {
+            String tag = NAMESPACES[random.nextInt(NAMESPACES.length)] + ':' + word(random);
+            String hint = "\u6807\u7b7e " + word(random).toUpperCase();
+            if (!entries.containsKey(tag) && !entries.containsKey(hint)) {
+                entries.put(tag, hint);
+                entries.put(hint, tag);
+            }
+        }
+
+        Buffer buffer = new Buffer();
+        buffer.writeInt(entries.size());
+        for (String tag : entries.keySet()) {
+            String hint = entries.get(tag);
+            buffer.writeUtf8(tag).writeUtf8("\r")
+                    .writeUtf8(Base64.getEncoder().encodeToString(hint.getBytes(StandardCharsets.UTF_8)))
+                    .writeUtf8("\n");
+        }
+        database = new EhTagDatabase("benchmark", buffer);
+
+        List<String> tags = new ArrayList<>(entries.keySet());
+        for (int i = 0; i < KEY_COUNT; i++) {
+            hitKeys[i] = tags.get(random.nextInt(tags.size()));
+            missKeys[i] = hitKeys[i] + 'q';
+        }
+    }
+
+    private int next() {
+        return index++ & (KEY_COUNT - 1);
+    }
+
+    @Benchmark
+    public String getTranslation() {
+        return database.getTranslation(hitKeys[next()]);
+    }
+
+    @Benchmark
+    public String getTranslationMissing() {
+        return database.getTranslation(missKeys[next()]);
+    }
+
+    @Benchmark
+    public List<Pair<String, String>> suggestShort() {
+        // Matches lots of tags, stops at the limit
+        return database.suggest("ka");
+    }
+
+    @Benchmark
+    public List<Pair<String, String>> suggestLong() {
+        return database.suggest(hitKeys[next()]);
+    }
+}
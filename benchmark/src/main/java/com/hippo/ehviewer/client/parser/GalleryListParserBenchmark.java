@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.ehviewer.client.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GalleryListParserBenchmark {
+
+    @Param({"Minimal", "Compat", "Extended", "Thumbnail"})
+    public String layout;
+
+    private String body;
+
+    @Setup
+    public void setup() throws IOException {
+        String name = "GalleryListParserTestE" + layout + ".html";
+        try (InputStream resource = GalleryListParserBenchmark.class.getResourceAsStream(name);
+             BufferedSource source = Okio.buffer(Okio.source(resource))) {
+            body = source.readUtf8();
+        }
+    }
+
+    @Benchmark
+    public GalleryListParser.Result parse() throws Exception {
+        return GalleryListParser.parse(body);
+    }
+
+    @Benchmark
+    public GalleryListParser.Result parseStream() throws Exception {
+        return GalleryListStreamParser.parse(new StringReader(body));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.ehviewer.gallery;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Streams a 256 MB archive worth of entries through the pipe, the way
+ * ArchiveGalleryProvider extracts and decodes. The score is MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PipeBenchmark {
+
+    private static final int ARCHIVE_MB = 256;
+    // Page size of a typical archive
+    private static final int ENTRY_SIZE = 2 * 1024 * 1024;
+    // Block size 7-Zip writes out
+    private static final int WRITE_SIZE = 64 * 1024;
+
+    // 1 for single byte reads, 8192 for the BufferedInputStream of PageDecoder
+    @Param({"1", "8192"})
+    public int readSize;
+
+    private byte[] data;
+    private ExecutorService extractor;
+
+    @Setup
+    public void setup() {
+        data = new byte[ENTRY_SIZE];
+        new Random(0).nextBytes(data);
+        extractor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        extractor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ARCHIVE_MB)
+    public long extract() throws Exception {
+        long sum = 0;
+        byte[] buffer = new byte[readSize];
+        for (int i = 0, n = ARCHIVE_MB * 1024 * 1024 / ENTRY_SIZE; i < n; i++) {
+            Pipe pipe = new Pipe(64 * 1024, 4 * 1024 * 1024);
+            Future<?> future = extractor.submit(() -> {
+                OutputStream os = pipe.getOutputStream();
+                for (int off = 0; off < ENTRY_SIZE; off += WRITE_SIZE) {
+                    os.write(data, off, WRITE_SIZE);
+                }
+                os.close();
+                return null;
+            });
+
+            InputStream is = pipe.getInputStream();
+            if (readSize == 1) {
+                int b;
+                while ((b = is.read()) != -1) {
+                    sum += b;
+                }
+            } else {
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    sum += read;
+                }
+            }
+            is.close();
+            future.get();
+        }
+        return sum;
+    }
+}
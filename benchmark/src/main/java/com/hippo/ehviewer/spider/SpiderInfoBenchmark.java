@@ -0,0 +1,127 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.ehviewer.spider;
+
+import android.util.SparseArray;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpiderInfoBenchmark {
+
+    @Param({"100", "2000"})
+    public int pages;
+
+    private SpiderInfo info;
+    private byte[] data;
+    // The same info in text version 2
+    private byte[] textData;
+    private File file;
+    private int patchIndex;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(0);
+        info = new SpiderInfo();
+        info.gid = 1363978;
+        info.token = "e6fc7d1a8a";
+        info.pages = pages;
+        info.previewPages = (pages + 39) / 40;
+        info.previewPerPage = 40;
+        info.pTokenMap = new SparseArray<>(pages);
+        for (int i = 0; i < pages; i++) {
+            info.pTokenMap.put(i, Long.toHexString(random.nextLong() | 1L << 60).substring(0, 10));
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        info.write(os);
+        data = os.toByteArray();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("VERSION2\n00000000\n").append(info.gid).append('\n').append(info.token).append("\n1\n")
+                .append(info.previewPages).append('\n').append(info.previewPerPage).append('\n')
+                .append(info.pages).append('\n');
+        for (int i = 0; i < pages; i++) {
+            sb.append(i).append(' ').append(info.pTokenMap.get(i)).append('\n');
+        }
+        textData = sb.toString().getBytes(StandardCharsets.US_ASCII);
+
+        file = File.createTempFile("spider_info", null);
+        info.write(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public SpiderInfo readText() {
+        return SpiderInfo.read(new ByteArrayInputStream(textData));
+    }
+
+    @Benchmark
+    public SpiderInfo readFile() {
+        return SpiderInfo.read(file);
+    }
+
+    @Benchmark
+    public SpiderInfo read() {
+        return SpiderInfo.read(new ByteArrayInputStream(data));
+    }
+
+    @Benchmark
+    public byte[] write() {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(data.length);
+        info.write(os);
+        return os.toByteArray();
+    }
+
+    @Benchmark
+    public void patchFile() throws IOException {
+        // One new token, like a page got from the internet
+        patchIndex = (patchIndex + 1) % pages;
+        String pToken = info.pTokenMap.get(patchIndex);
+        info.pTokenMap.put(patchIndex, new StringBuilder(pToken).reverse().toString());
+        info.write(file);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.network;
+
+import com.hippo.ehviewer.client.EhRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cookie;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Builds an image page request and looks up its cookies, like every worker
+ * request does. {@link #baseline(Blackhole)} adds the three common headers
+ * one by one and matches all cookies of the host again, as it was done before
+ * the headers and lookups were cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuilderBenchmark {
+
+    private static final String URL = "https://e-hentai.org/s/0a1b2c3d4e/1363978-7";
+    private static final String REFERER = "https://e-hentai.org";
+
+    private static final String CHROME_USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) " +
+                    "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/86.0.4240.193 Safari/537.36";
+    private static final String CHROME_ACCEPT =
+            "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+    private static final String CHROME_ACCEPT_LANGUAGE =
+            "en-US,en;q=0.5";
+
+    private static final String[] NAMES = {
+            "ipb_member_id", "ipb_pass_hash", "igneous", "sk", "nw", "hath_perks", "sl",
+    };
+    private static final String[] OTHER_DOMAINS = {
+            "exhentai.org", "forums.e-hentai.org", "upld.e-hentai.org", "github.com",
+            "api.github.com", "google.com", "gstatic.com", "cloudflare.com",
+    };
+
+    private CookieSnapshot snapshot;
+
+    private static Cookie cookie(String domain, String path, String name, long expiresAt) {
+        return new Cookie.Builder()
+                .domain(domain)
+                .path(path)
+                .name(name)
+                .value("0123456789abcdef")
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    @Setup
+    public void setup() {
+        long expiresAt = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(365);
+        Map<String, List<Cookie>> cookies = new HashMap<>();
+        List<Cookie> list = new ArrayList<>();
+        for (String name : NAMES) {
+            list.add(cookie("e-hentai.org", "/", name, expiresAt));
+        }
+        cookies.put("e-hentai.org", Collections.unmodifiableList(list));
+        for (String domain : OTHER_DOMAINS) {
+            list = new ArrayList<>();
+            for (String name : NAMES) {
+                list.add(cookie(domain, "/", name, expiresAt));
+            }
+            // Sorted by path like the repository does
+            list.add(0, cookie(domain, "/index.php", "session_id", expiresAt));
+            cookies.put(domain, Collections.unmodifiableList(list));
+        }
+        snapshot = new CookieSnapshot(cookies);
+    }
+
+    @Benchmark
+    public void baseline(Blackhole bh) {
+        Request request = new Request.Builder()
+                .url(URL)
+                .addHeader("User-Agent", CHROME_USER_AGENT)
+                .addHeader("Accept", CHROME_ACCEPT)
+                .addHeader("Accept-Language", CHROME_ACCEPT_LANGUAGE)
+                .addHeader("Referer", REFERER)
+                .build();
+        HttpUrl url = request.url();
+        bh.consume(request);
+        bh.consume(snapshot.match(url, System.currentTimeMillis()).cookies);
+    }
+
+    @Benchmark
+    public void cached(Blackhole bh) {
+        Request request = new EhRequestBuilder(URL, REFERER).build();
+        HttpUrl url = request.url();
+        bh.consume(request);
+        bh.consume(snapshot.get(url, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sorts the file names of a large archive, as the archive reader does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NaturalComparatorBenchmark {
+
+    private static final int NAME_COUNT = 1000;
+
+    private final NaturalComparator comparator = new NaturalComparator();
+    private String[] names;
+
+    @Setup
+    public void setup() {
+        names = new String[NAME_COUNT];
+        for (int i = 0; i < NAME_COUNT; i++) {
+            int chapter = i / 100 + 1;
+            int page = i % 100 + 1;
+            switch (i % 3) {
+                case 0:
+                    names[i] = "Vol " + chapter + " Ch." + chapter * 10 + " - " + page + ".jpg";
+                    break;
+                case 1:
+                    names[i] = String.format("img%05d.png", i);
+                    break;
+                default:
+                    names[i] = "page " + page + " (" + chapter + ").webp";
+                    break;
+            }
+        }
+        List<String> list = Arrays.asList(names);
+        Collections.shuffle(list, new Random(0));
+    }
+
+    @Benchmark
+    public String[] sort() {
+        // The copy is cheap next to the sort
+        String[] array = names.clone();
+        Arrays.sort(array, comparator);
+        return array;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.net;
+
+import java.io.File;
+
+/**
+ * Only file uris.
+ */
+public class Uri {
+
+    private final String mPath;
+
+    private Uri(String path) {
+        mPath = path;
+    }
+
+    public static Uri fromFile(File file) {
+        return new Uri(file.getAbsolutePath());
+    }
+
+    public String getScheme() {
+        return "file";
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Only lets the data classes compile, benchmarks never parcel them.
+ */
+public final class Parcel {
+
+    private Parcel() {
+    }
+
+    public void writeByte(byte val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeInt(int val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeLong(long val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeFloat(float val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeString(String val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeStringArray(String[] val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeStringList(List<String> val) {
+        throw new UnsupportedOperationException();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void writeList(List val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeParcelable(Parcelable p, int parcelableFlags) {
+        throw new UnsupportedOperationException();
+    }
+
+    public <T extends Parcelable> void writeParcelableArray(T[] value, int parcelableFlags) {
+        throw new UnsupportedOperationException();
+    }
+
+    public byte readByte() {
+        throw new UnsupportedOperationException();
+    }
+
+    public int readInt() {
+        throw new UnsupportedOperationException();
+    }
+
+    public long readLong() {
+        throw new UnsupportedOperationException();
+    }
+
+    public float readFloat() {
+        throw new UnsupportedOperationException();
+    }
+
+    public String readString() {
+        throw new UnsupportedOperationException();
+    }
+
+    public String[] createStringArray() {
+        throw new UnsupportedOperationException();
+    }
+
+    public ArrayList<String> createStringArrayList() {
+        throw new UnsupportedOperationException();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public ArrayList readArrayList(ClassLoader loader) {
+        throw new UnsupportedOperationException();
+    }
+
+    public <T extends Parcelable> T readParcelable(ClassLoader loader) {
+        throw new UnsupportedOperationException();
+    }
+
+    public Parcelable[] readParcelableArray(ClassLoader loader) {
+        throw new UnsupportedOperationException();
+    }
+}
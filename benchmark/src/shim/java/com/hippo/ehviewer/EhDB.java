@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.ehviewer;
+
+import com.hippo.ehviewer.dao.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps filters in memory instead of the database. Benchmarks fill
+ * {@link #filters} before EhFilter is created.
+ */
+public class EhDB {
+
+    public static final List<Filter> filters = new ArrayList<>();
+
+    public static List<Filter> getAllFilter() {
+        return new ArrayList<>(filters);
+    }
+
+    public static boolean addFilter(Filter filter) {
+        filters.add(filter);
+        return true;
+    }
+
+    public static void triggerFilter(Filter filter) {
+        filter.enable = !filter.enable;
+    }
+
+    public static void deleteFilter(Filter filter) {
+        filters.remove(filter);
+    }
+
+    public static boolean containLocalFavorites(long gid) {
+        return false;
+    }
+}
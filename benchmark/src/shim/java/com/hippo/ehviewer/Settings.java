@@ -0,0 +1,38 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.ehviewer;
+
+import com.hippo.ehviewer.client.EhUrl;
+
+/**
+ * Defaults of the settings read by the parsers and EhUrl.
+ */
+public class Settings {
+
+    public static int getGallerySite() {
+        return EhUrl.SITE_E;
+    }
+
+    public static boolean getFixThumbUrl() {
+        return false;
+    }
+
+    public static int getThumbResolution() {
+        return 0;
+    }
+}
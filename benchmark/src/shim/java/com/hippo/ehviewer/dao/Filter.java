@@ -0,0 +1,37 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.ehviewer.dao;
+
+/**
+ * Fields of the generated entity, without greenDAO.
+ */
+public class Filter {
+
+    public int mode;
+    public String text;
+    public Boolean enable;
+
+    public Filter() {
+    }
+
+    public Filter(int mode, String text, Boolean enable) {
+        this.mode = mode;
+        this.text = text;
+        this.enable = enable;
+    }
+}
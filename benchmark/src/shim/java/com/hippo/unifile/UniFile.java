@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.unifile;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A plain file, UniFile also covers document trees and assets.
+ */
+public class UniFile {
+
+    private final File mFile;
+
+    private UniFile(File file) {
+        mFile = file;
+    }
+
+    public static UniFile fromFile(File file) {
+        return file != null ? new UniFile(file) : null;
+    }
+
+    public Uri getUri() {
+        return Uri.fromFile(mFile);
+    }
+
+    public InputStream openInputStream() throws IOException {
+        return new FileInputStream(mFile);
+    }
+
+    public OutputStream openOutputStream() throws IOException {
+        return new FileOutputStream(mFile);
+    }
+}
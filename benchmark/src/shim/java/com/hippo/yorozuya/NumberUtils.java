@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 duzhaokun123
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hippo.yorozuya;
+
+public final class NumberUtils {
+
+    private NumberUtils() {
+    }
+
+    public static int parseIntSafely(String str, int defaultValue) {
+        try {
+            return Integer.parseInt(str);
+        } catch (Throwable e) {
+            return defaultValue;
+        }
+    }
+
+    public static long parseLongSafely(String str, long defaultValue) {
+        try {
+            return Long.parseLong(str);
+        } catch (Throwable e) {
+            return defaultValue;
+        }
+    }
+
+    public static float parseFloatSafely(String str, float defaultValue) {
+        try {
+            return Float.parseFloat(str);
+        } catch (Throwable e) {
+            return defaultValue;
+        }
+    }
+}
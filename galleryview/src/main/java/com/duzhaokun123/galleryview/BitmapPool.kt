@@ -0,0 +1,75 @@
+package com.duzhaokun123.galleryview
+
+import android.graphics.Bitmap
+import java.util.*
+
+/**
+ * Keeps evicted page bitmaps so decoders can reuse them through
+ * [android.graphics.BitmapFactory.Options.inBitmap] instead of allocating new ones.
+ *
+ * Only put bitmaps which no view shows, a decoder overwrites them.
+ * Pooled bitmaps are never recycled here, once over [maxSize] the oldest
+ * bitmaps are just dropped and left to the GC.
+ */
+class BitmapPool(maxSize: Long = PageCache.defaultMaxSize() / 4) {
+    private val bitmaps = LinkedList<Bitmap>()
+
+    var maxSize = maxSize
+        @Synchronized set(value) {
+            field = value
+            trimToSize()
+        }
+
+    var size = 0L
+        @Synchronized get
+        private set
+
+    @Synchronized
+    fun put(bitmap: Bitmap) {
+        if (bitmap.isRecycled || !bitmap.isMutable || bitmap.config == Bitmap.Config.HARDWARE)
+            return
+        bitmaps.addLast(bitmap)
+        size += PageCache.sizeOf(bitmap)
+        trimToSize()
+    }
+
+    /**
+     * @return a bitmap which can hold a [width] x [height] [config] image, null if none
+     */
+    @Synchronized
+    fun get(width: Int, height: Int, config: Bitmap.Config): Bitmap? {
+        val byteCount = width.toLong() * height * bytesPerPixel(config)
+        val iterator = bitmaps.iterator()
+        while (iterator.hasNext()) {
+            val bitmap = iterator.next()
+            if (bitmap.isRecycled) {
+                iterator.remove()
+                size -= PageCache.sizeOf(bitmap)
+            } else if (bitmap.config == config && PageCache.sizeOf(bitmap) >= byteCount) {
+                iterator.remove()
+                size -= PageCache.sizeOf(bitmap)
+                return bitmap
+            }
+        }
+        return null
+    }
+
+    @Synchronized
+    fun clear() {
+        bitmaps.clear()
+        size = 0
+    }
+
+    private fun trimToSize() {
+        while (size > maxSize && bitmaps.isNotEmpty()) {
+            size -= PageCache.sizeOf(bitmaps.removeFirst())
+        }
+    }
+
+    private fun bytesPerPixel(config: Bitmap.Config) = when (config) {
+        Bitmap.Config.ALPHA_8 -> 1
+        Bitmap.Config.RGB_565, Bitmap.Config.ARGB_4444 -> 2
+        Bitmap.Config.RGBA_F16 -> 8
+        else -> 4
+    }
+}
@@ -13,6 +13,7 @@ import com.github.chrisbanes.photoview.PhotoView
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
+import java.util.concurrent.atomic.AtomicBoolean
 
 class GalleryPageAdapter(private val context: Context) : RecyclerView.Adapter<GalleryPageAdapter.GalleryPageViewHolder>() {
     companion object {
@@ -32,26 +33,24 @@ class GalleryPageAdapter(private val context: Context) : RecyclerView.Adapter<Ga
     }
 
     override fun onBindViewHolder(holder: GalleryPageViewHolder, position: Int) {
+        // The holder may be bound again without being recycled
+        provider?.removePageListener(holder.index, holder.providerListener)
         holder.page = position + 1
-        provider?.addListener(holder.providerListener)
+        provider?.addPageListener(holder.index, holder.providerListener)
+        holder.sync()
     }
 
     override fun onViewRecycled(holder: GalleryPageViewHolder) {
-        provider?.removeListener(holder.providerListener)
+        provider?.removePageListener(holder.index, holder.providerListener)
+        holder.releaseContent()
     }
 
     override fun onViewAttachedToWindow(holder: GalleryPageViewHolder) {
         provider?.let {
-            holder.state = it.stateOf(holder.index)
-            holder.error = it.errorOf(holder.index)
-            holder.progress = it.progressOf(holder.index)
             if (it.stateOf(holder.index) == GalleryProvider.PageState.WAIT) {
                 it.request(holder.index)
             }
-            try {
-                holder.content = it.get(holder.index)
-            } catch (e: GalleryProvider.CannotGetException) {
-            }
+            holder.sync()
         }
     }
 
@@ -80,50 +79,28 @@ class GalleryPageAdapter(private val context: Context) : RecyclerView.Adapter<Ga
         val index
             get() = page - 1
 
-        var state = GalleryProvider.PageState.WAIT
-            set(value) {
-                field = value
-                onSetState()
-            }
-
-        var error: String? = null
-            set(value) {
-                field = value
-                onSetError()
-            }
+        /**
+         * Bitmap shown in [pv], obtained from [contentProvider]
+         * and released to it once [pv] does not show it.
+         * Only touched on the main thread
+         */
+        private var content: Bitmap? = null
+        private var contentProvider: GalleryProvider? = null
 
-        var progress = 0
-            set(value) {
-                field = value
-                onSetProgress()
-            }
-
-        var content: Bitmap? = null
-            set(value) {
-                field = value
-                onSetContent()
-            }
+        private val syncPending = AtomicBoolean()
 
+        /**
+         * Events of an index may come out of order from different threads,
+         * so any event only makes the holder read the page again on the main thread
+         */
         val providerListener = object : GalleryProvider.Listener {
-            override fun onPageStateChange(index: Int, state: GalleryProvider.PageState) {
-                if (this@GalleryPageViewHolder.index == index)
-                    this@GalleryPageViewHolder.state = state
-            }
+            override fun onPageStateChange(index: Int, state: GalleryProvider.PageState) = requestSync()
 
-            override fun onPageProgressChange(index: Int, progress: Int) {
-                if (this@GalleryPageViewHolder.index == index)
-                    this@GalleryPageViewHolder.progress = progress
-            }
+            override fun onPageProgressChange(index: Int, progress: Int) = requestSync()
 
-            override fun onPageError(index: Int, error: String?) {
-                if (this@GalleryPageViewHolder.index == index)
-                    this@GalleryPageViewHolder.error = error
-            }
+            override fun onPageError(index: Int, error: String?) = requestSync()
 
-            override fun onPageReady(index: Int, bitmap: Bitmap?) {
-                if (this@GalleryPageViewHolder.index == index)
-                    this@GalleryPageViewHolder.content = bitmap
-            }
+            override fun onPageReady(index: Int, bitmap: Bitmap?) = requestSync()
         }
 
         private fun onSetPage() {
@@ -134,62 +111,84 @@ class GalleryPageAdapter(private val context: Context) : RecyclerView.Adapter<Ga
             }
         }
 
-        private fun onSetState() {
-            GlobalScope.launch(Dispatchers.Main) {
-                when (state) {
-                    GalleryProvider.PageState.WAIT -> {
-                        tvPage.visibility = View.VISIBLE
-                        pb.visibility = View.VISIBLE
-                        pb.isIndeterminate = true
-                        tvError.visibility = View.GONE
-                        pv.visibility = View.GONE
-                    }
-                    GalleryProvider.PageState.LOADING -> {
-                        tvPage.visibility = View.VISIBLE
-                        pb.visibility = View.VISIBLE
-                        pb.isIndeterminate = false
-                        tvError.visibility = View.GONE
-                        pv.visibility = View.GONE
-                    }
-                    GalleryProvider.PageState.READY -> {
-                        tvPage.visibility = View.GONE
-                        pb.visibility = View.GONE
-                        tvError.visibility = View.GONE
-                        pv.visibility = View.VISIBLE
-                    }
-                    GalleryProvider.PageState.ERROR -> {
-                        tvPage.visibility = View.VISIBLE
-                        pb.visibility = View.GONE
-                        tvError.visibility = View.VISIBLE
-                        pv.visibility = View.GONE
-                    }
+        /**
+         * Events coming before a pending sync runs are covered by it
+         */
+        private fun requestSync() {
+            if (syncPending.compareAndSet(false, true)) {
+                GlobalScope.launch(Dispatchers.Main) {
+                    syncPending.set(false)
+                    sync()
                 }
             }
         }
 
-        private fun onSetError() {
-            tvError.let {
-                GlobalScope.launch(Dispatchers.Main) {
-                    it.text = error
+        /**
+         * Show what the provider has for the bound index, must be called on the main thread
+         */
+        fun sync() {
+            val info = provider?.pageInfoOf(index) ?: return
+            when (info.state) {
+                GalleryProvider.PageState.WAIT -> {
+                    tvPage.visibility = View.VISIBLE
+                    pb.visibility = View.VISIBLE
+                    pb.isIndeterminate = true
+                    tvError.visibility = View.GONE
+                    pv.visibility = View.GONE
+                    // Page may be evicted from cache, do not keep the bitmap
+                    releaseContent()
+                }
+                GalleryProvider.PageState.LOADING -> {
+                    tvPage.visibility = View.VISIBLE
+                    pb.visibility = View.VISIBLE
+                    pb.isIndeterminate = false
+                    pb.setProgress(info.progress, true)
+                    tvError.visibility = View.GONE
+                    pv.visibility = View.GONE
+                }
+                GalleryProvider.PageState.READY -> {
+                    tvPage.visibility = View.GONE
+                    pb.visibility = View.GONE
+                    tvError.visibility = View.GONE
+                    pv.visibility = View.VISIBLE
+                    updateContent()
+                }
+                GalleryProvider.PageState.ERROR -> {
+                    tvPage.visibility = View.VISIBLE
+                    pb.visibility = View.GONE
+                    tvError.visibility = View.VISIBLE
+                    tvError.text = info.error
+                    pv.visibility = View.GONE
                 }
             }
         }
 
-        private fun onSetProgress() {
-            pb.let {
-                GlobalScope.launch(Dispatchers.Main) {
-                    it.setProgress(progress, true)
-                }
-            }
+        /**
+         * Show the bitmap of the index if it is ready, must be called on the main thread
+         */
+        private fun updateContent() {
+            val provider = provider
+            val bitmap = provider?.obtainBitmap(index)
+            if (bitmap == null) {
+                releaseContent()
+                return
+            }
+            pv.setImageBitmap(bitmap, scaleMode)
+            // pv does not draw the old one any more
+            content?.let { contentProvider?.releaseBitmap(it) }
+            content = bitmap
+            contentProvider = provider
         }
 
-        private fun onSetContent() {
-            pv.let {
-                GlobalScope.launch(Dispatchers.Main) {
-                    content?.let { it1 -> it.setImageBitmap(it1, scaleMode) }
-                }
-            }
+        /**
+         * Must be called on the main thread
+         */
+        fun releaseContent() {
+            pv.setImageDrawable(null)
+            content?.let { contentProvider?.releaseBitmap(it) }
+            content = null
+            contentProvider = null
         }
     }
 
-}
\ No newline at end of file
+}
@@ -2,6 +2,9 @@ package com.duzhaokun123.galleryview
 
 import android.graphics.Bitmap
 import com.hippo.unifile.UniFile
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArraySet
 
 abstract class GalleryProvider {
     companion object {
@@ -33,10 +36,100 @@ abstract class GalleryProvider {
 
     /**
      * K: index
+     *
+     * [PageInfo.content] is always null here, bitmaps live in [pageCache].
+     * Written with the lock held, read without it
      */
-    private val pageInfos = mutableMapOf<Int, PageInfo>()
+    private val pageInfos = ConcurrentHashMap<Int, PageInfo>()
 
-    private val listeners = mutableSetOf<Listener?>()
+    val bitmapPool = BitmapPool()
+
+    val pageCache = PageCache { index, bitmap -> onPageEvicted(index, bitmap) }
+
+    /**
+     * Pages far away from it are evicted first when [pageCache] is full
+     */
+    open var currentIndex
+        get() = pageCache.currentIndex
+        set(value) {
+            synchronized(this) {
+                pageCache.currentIndex = value
+            }
+            dispatchEvictedPages()
+        }
+
+    /**
+     * Get all events
+     */
+    private val listeners = CopyOnWriteArraySet<Listener>()
+
+    /**
+     * K: index
+     *
+     * Page events of an index only go to its listeners besides [listeners].
+     * Written with itself locked, read without the lock
+     */
+    private val pageListeners = ConcurrentHashMap<Int, CopyOnWriteArraySet<Listener>>()
+
+    /**
+     * Pages evicted from [pageCache], notified after the lock is released
+     */
+    private val evictedPages = mutableListOf<Int>()
+
+    /**
+     * K: bitmap shown by views, V: count of views showing it
+     *
+     * Guarded by the lock
+     */
+    private val shownBitmaps = IdentityHashMap<Bitmap, Int>()
+
+    /**
+     * Bitmaps evicted from [pageCache] while still shown,
+     * they go to [bitmapPool] once the last view releases them.
+     *
+     * Guarded by the lock
+     */
+    private val evictedShownBitmaps = Collections.newSetFromMap(IdentityHashMap<Bitmap, Boolean>())
+
+    /**
+     * Size of a page in [GalleryView], 0 for unknown.
+     * Decoders may downsample pages to it.
+     */
+    @Volatile
+    var viewportWidth = 0
+
+    @Volatile
+    var viewportHeight = 0
+
+    @Volatile
+    @GalleryView.ScaleMode
+    var scaleMode = GalleryView.SCALE_FIT
+
+    /**
+     * Hardware bitmaps live in graphics memory but can't be drawn by software,
+     * nor be decoded into, so [bitmapPool] is only used without them.
+     * [pageCache] and [bitmapPool] get the budget of the mode.
+     */
+    @Volatile
+    var allowHardwareBitmap = true
+        set(value) {
+            field = value
+            updateMemoryBudget()
+        }
+
+    /**
+     * Device memory in bytes, 0 for unknown. It bounds hardware bitmaps.
+     */
+    @Volatile
+    var totalMemory = 0L
+        set(value) {
+            field = value
+            updateMemoryBudget()
+        }
+
+    init {
+        updateMemoryBudget()
+    }
 
     var state = State.WAIT
 
@@ -81,12 +174,56 @@ abstract class GalleryProvider {
         val a = pageInfos[index] ?: throw CannotGetException("$index not ready yet")
         when (a.state) {
             PageState.WAIT, PageState.LOADING -> throw CannotGetException("$index not ready yet")
-            PageState.READY -> return a.content
+            PageState.READY -> return pageCache[index]
                     ?: throw CannotGetException("$index ready, but content is null")
             PageState.ERROR -> throw CannotGetException("$index error: ${a.error}")
         }
     }
 
+    /**
+     * Get the bitmap of the index to show it, it must be given back
+     * with [releaseBitmap] once it is not shown any more.
+     *
+     * @return null if the page is not ready
+     */
+    @Synchronized
+    fun obtainBitmap(index: Int): Bitmap? {
+        if (stateOf(index) != PageState.READY)
+            return null
+        val bitmap = pageCache[index] ?: return null
+        shownBitmaps[bitmap] = (shownBitmaps[bitmap] ?: 0) + 1
+        return bitmap
+    }
+
+    /**
+     * A bitmap from [obtainBitmap] is not shown any more
+     */
+    @Synchronized
+    fun releaseBitmap(bitmap: Bitmap) {
+        val count = shownBitmaps[bitmap] ?: return
+        if (count > 1) {
+            shownBitmaps[bitmap] = count - 1
+            return
+        }
+        shownBitmaps.remove(bitmap)
+        if (evictedShownBitmaps.remove(bitmap))
+            bitmapPool.put(bitmap)
+    }
+
+    private fun updateMemoryBudget() {
+        pageCache.maxSize = PageCache.defaultMaxSize(allowHardwareBitmap, totalMemory)
+        if (allowHardwareBitmap) {
+            bitmapPool.maxSize = 0
+        } else {
+            bitmapPool.maxSize = PageCache.defaultMaxSize() / 4
+        }
+    }
+
+    /**
+     * All about the page at once, [PageInfo.content] is always null, get it with [obtainBitmap]
+     */
+    fun pageInfoOf(index: Int) = pageInfos[index] ?: PageInfo(index + 1, PageState.WAIT)
+
     fun stateOf(index: Int) = pageInfos[index]?.state ?: PageState.WAIT
 
     fun errorOf(index: Int) = pageInfos[index]?.error
@@ -101,48 +238,122 @@ abstract class GalleryProvider {
         listeners.remove(listener)
     }
 
+    /**
+     * Page events of the index go to the listener too
+     */
+    fun addPageListener(index: Int, listener: Listener) {
+        synchronized(pageListeners) {
+            pageListeners.getOrPut(index) { CopyOnWriteArraySet() }.add(listener)
+        }
+    }
+
+    fun removePageListener(index: Int, listener: Listener) {
+        synchronized(pageListeners) {
+            val set = pageListeners[index] ?: return
+            set.remove(listener)
+            if (set.isEmpty())
+                pageListeners.remove(index)
+        }
+    }
+
+    /**
+     * Listeners are called without the lock held, so events of an index
+     * from different threads may arrive out of order. A listener which
+     * shows a page should read it again with [pageInfoOf] on one thread
+     * instead of trusting the order of events.
+     */
+    private inline fun dispatchPageEvent(index: Int, event: (Listener) -> Unit) {
+        for (listener in listeners)
+            event(listener)
+        val set = pageListeners[index] ?: return
+        for (listener in set)
+            event(listener)
+    }
+
+    private fun dispatchEvictedPages() {
+        val indexes = synchronized(evictedPages) {
+            if (evictedPages.isEmpty())
+                return
+            evictedPages.toList().also { evictedPages.clear() }
+        }
+        indexes.forEach { index ->
+            dispatchPageEvent(index) { it.onPageStateChange(index, PageState.WAIT) }
+        }
+    }
+
     @JvmOverloads
-    @Synchronized
     protected fun notifyStateChange(state: State, error: String? = null) {
-        this.state = state
-        listeners.forEach { it?.onStateChange(state, error) }
+        synchronized(this) {
+            this.state = state
+        }
+        listeners.forEach { it.onStateChange(state, error) }
     }
 
-    @Synchronized
     protected fun notifyPageWait(index: Int) {
-        pageInfos[index] = PageInfo(index + 1, PageState.WAIT)
-        listeners.forEach { it?.onPageStateChange(index, PageState.WAIT) }
+        synchronized(this) {
+            pageCache.remove(index)
+            pageInfos[index] = PageInfo(index + 1, PageState.WAIT)
+        }
+        dispatchPageEvent(index) { it.onPageStateChange(index, PageState.WAIT) }
     }
 
-    @Synchronized
     protected fun notifyPageFailed(index: Int, error: String? = null) {
-        pageInfos[index] = PageInfo(index + 1, PageState.ERROR, error = error)
-        listeners.forEach {
-            it?.onPageError(index, error)
-            it?.onPageStateChange(index, PageState.ERROR)
+        synchronized(this) {
+            pageCache.remove(index)
+            pageInfos[index] = PageInfo(index + 1, PageState.ERROR, error = error)
+        }
+        dispatchPageEvent(index) {
+            it.onPageError(index, error)
+            it.onPageStateChange(index, PageState.ERROR)
         }
     }
 
-    @Synchronized
     protected fun notifyPagePercent(index: Int, percent: Float) {
-        val stateChanged = stateOf(index) != PageState.LOADING
         val progress = (100 * percent).toInt()
-        pageInfos[index] = PageInfo(index + 1, PageState.LOADING, progress = progress)
-        listeners.forEach {
+        val stateChanged = synchronized(this) {
+            pageCache.remove(index)
+            val changed = stateOf(index) != PageState.LOADING
+            pageInfos[index] = PageInfo(index + 1, PageState.LOADING, progress = progress)
+            changed
+        }
+        dispatchPageEvent(index) {
             if (stateChanged)
-                it?.onPageStateChange(index, PageState.LOADING)
-            it?.onPageProgressChange(index, progress)
+                it.onPageStateChange(index, PageState.LOADING)
+            it.onPageProgressChange(index, progress)
         }
     }
 
     @JvmOverloads
-    @Synchronized
     protected fun notifyPageSucceed(index: Int, content: Bitmap? = null) {
-        pageInfos[index] = PageInfo(index + 1, PageState.READY, content = content)
-        listeners.forEach {
-            it?.onPageReady(index, content)
-            it?.onPageStateChange(index, PageState.READY)
+        synchronized(this) {
+            pageInfos[index] = PageInfo(index + 1, PageState.READY)
+            if (content != null)
+                pageCache.put(index, content)
+            else
+                pageCache.remove(index)
+        }
+        dispatchPageEvent(index) {
+            it.onPageReady(index, content)
+            it.onPageStateChange(index, PageState.READY)
+        }
+        dispatchEvictedPages()
+    }
+
+    /**
+     * Called with the lock held when [pageCache] evicts a page.
+     * The page goes back to [PageState.WAIT] so that it is requested again
+     * when it is shown next time, listeners know it after the lock is released.
+     * The bitmap is only pooled once no view shows it.
+     */
+    protected open fun onPageEvicted(index: Int, bitmap: Bitmap) {
+        pageInfos.remove(index)
+        synchronized(evictedPages) {
+            evictedPages.add(index)
         }
+        if (shownBitmaps.containsKey(bitmap))
+            evictedShownBitmaps.add(bitmap)
+        else
+            bitmapPool.put(bitmap)
     }
 
     interface Listener {
@@ -150,6 +361,10 @@ abstract class GalleryProvider {
 
         fun onPageStateChange(index: Int, state: PageState) {}
 
+        /**
+         * [bitmap] may be pooled and overwritten once evicted,
+         * get it with [obtainBitmap] to show it
+         */
         fun onPageReady(index: Int, bitmap: Bitmap?) {}
 
         fun onPageError(index: Int, error: String? = null) {}
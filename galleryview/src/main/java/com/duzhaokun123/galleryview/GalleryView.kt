@@ -1,5 +1,6 @@
 package com.duzhaokun123.galleryview
 
+import android.app.ActivityManager
 import android.content.Context
 import android.graphics.Color
 import android.util.AttributeSet
@@ -79,6 +80,7 @@ class GalleryView @JvmOverloads constructor(
             adapter = GalleryPageAdapter(context)
             registerOnPageChangeCallback(object : ViewPager2.OnPageChangeCallback() {
                 override fun onPageSelected(position: Int) {
+                    provider?.currentIndex = position
                     listener?.onUpdateCurrentIndex(position)
                 }
             })
@@ -102,6 +104,7 @@ class GalleryView @JvmOverloads constructor(
             if (field != value) {
                 field = value
                 (vp2.adapter as GalleryPageAdapter).scaleMode = value
+                updateProviderViewport()
             }
         }
 
@@ -119,8 +122,12 @@ class GalleryView @JvmOverloads constructor(
             field?.removeListener(this)
             field?.stop()
             value?.addListener(this)
+            value?.totalMemory = ActivityManager.MemoryInfo().also {
+                (context.getSystemService(Context.ACTIVITY_SERVICE) as ActivityManager).getMemoryInfo(it)
+            }.totalMem
             value?.start()
             field = value
+            updateProviderViewport()
 
             value?.let { onStateChange(it.state) }
             (vp2.adapter as GalleryPageAdapter).provider = provider
@@ -129,6 +136,7 @@ class GalleryView @JvmOverloads constructor(
     var doubleItems = false
         set(value) {
             field = value
+            updateProviderViewport()
             if (needSetDoubleItemLater)
                 GlobalScope.launch(Dispatchers.Main) {
                     delay(80)
@@ -148,6 +156,11 @@ class GalleryView @JvmOverloads constructor(
         onSetGalleryLayoutMode()
     }
 
+    override fun onSizeChanged(w: Int, h: Int, oldw: Int, oldh: Int) {
+        super.onSizeChanged(w, h, oldw, oldh)
+        updateProviderViewport()
+    }
+
     override fun onStateChange(state: GalleryProvider.State, error: String?) {
         GlobalScope.launch(Dispatchers.Main) {
             when (state) {
@@ -205,6 +218,15 @@ class GalleryView @JvmOverloads constructor(
         }
     }
 
+    private fun updateProviderViewport() {
+        provider?.let {
+            // Two pages share the view in double items mode
+            it.viewportWidth = if (doubleItems) width / 2 else width
+            it.viewportHeight = height
+            it.scaleMode = scaleMode
+        }
+    }
+
     private fun onSetDoubleItem() {
         vp2.apply {
             offscreenPageLimit = 1
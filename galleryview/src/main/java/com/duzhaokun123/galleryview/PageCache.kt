@@ -0,0 +1,130 @@
+package com.duzhaokun123.galleryview
+
+import android.graphics.Bitmap
+import kotlin.math.abs
+
+/**
+ * Byte-size-bounded page bitmap cache.
+ *
+ * When the cache grows over [maxSize], the page farthest away from the
+ * current index is evicted first, least recently used first on ties. Pages
+ * within [keepRadius] of the current index are never evicted, so the cache
+ * may overshoot its limit rather than drop a visible page, neither is the
+ * page being put.
+ */
+class PageCache(
+        maxSize: Long = defaultMaxSize(),
+        private val keepRadius: Int = 2,
+        private val onEvicted: (index: Int, bitmap: Bitmap) -> Unit = { _, _ -> }
+) {
+    companion object {
+        /**
+         * Software bitmaps live in the Java heap, hardware ones in graphics
+         * memory, which is shared with the whole device.
+         *
+         * @param totalMemory device memory in bytes, 0 for unknown
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun defaultMaxSize(hardware: Boolean = false, totalMemory: Long = 0) =
+                if (hardware && totalMemory > 0) totalMemory / 16
+                else Runtime.getRuntime().maxMemory() / 4
+
+        @JvmStatic
+        fun sizeOf(bitmap: Bitmap) = bitmap.allocationByteCount.toLong()
+    }
+
+    /**
+     * K: index, access ordered
+     */
+    private val map = LinkedHashMap<Int, Bitmap>(0, 0.75f, true)
+
+    var maxSize = maxSize
+        @Synchronized set(value) {
+            field = value
+            trimToSize()
+        }
+
+    var size = 0L
+        @Synchronized get
+        private set
+
+    var currentIndex = GalleryPageAdapter.INVALID_INDEX
+        @Synchronized set(value) {
+            field = value
+            trimToSize()
+        }
+
+    var hitCount = 0
+        @Synchronized get
+        private set
+
+    var missCount = 0
+        @Synchronized get
+        private set
+
+    var evictionCount = 0
+        @Synchronized get
+        private set
+
+    @Synchronized
+    operator fun get(index: Int): Bitmap? {
+        val bitmap = map[index]
+        if (bitmap != null) hitCount++ else missCount++
+        return bitmap
+    }
+
+    @Synchronized
+    operator fun contains(index: Int) = map.containsKey(index)
+
+    @Synchronized
+    fun put(index: Int, bitmap: Bitmap) {
+        val previous = map.put(index, bitmap)
+        size += sizeOf(bitmap)
+        if (previous != null)
+            size -= sizeOf(previous)
+        trimToSize(index)
+    }
+
+    @Synchronized
+    fun remove(index: Int): Bitmap? {
+        val bitmap = map.remove(index) ?: return null
+        size -= sizeOf(bitmap)
+        return bitmap
+    }
+
+    @Synchronized
+    fun clear() {
+        map.clear()
+        size = 0
+    }
+
+    /**
+     * @param keepIndex evicted never, the page which is just put
+     */
+    @Synchronized
+    private fun trimToSize(keepIndex: Int = GalleryPageAdapter.INVALID_INDEX) {
+        while (size > maxSize) {
+            var victim = -1
+            var victimDistance = -1
+            // Iterates from least recently used, so the first hit wins on ties
+            for (index in map.keys) {
+                if (index == keepIndex) continue
+                val distance = if (currentIndex == GalleryPageAdapter.INVALID_INDEX)
+                    Int.MAX_VALUE else abs(index - currentIndex)
+                if (distance > keepRadius && distance > victimDistance) {
+                    victim = index
+                    victimDistance = distance
+                }
+            }
+            if (victimDistance == -1) return
+            val bitmap = remove(victim) ?: return
+            evictionCount++
+            onEvicted(victim, bitmap)
+        }
+    }
+
+    @Synchronized
+    override fun toString() =
+            "PageCache[size=$size,maxSize=$maxSize,count=${map.size},hits=$hitCount,misses=$missCount,evictions=$evictionCount]"
+}